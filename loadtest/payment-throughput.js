@@ -0,0 +1,107 @@
+// Пропускная способность оплат: все платежи зачисляются на один счет РЖД.
+//
+//   k6 run -e BASE_URL=http://localhost:8080 -e EMAIL=... -e PASSWORD=... -e INN=... \
+//          -e BIK=... -e ACCOUNT_NUMBERS=<счет>,<счет>,... loadtest/payment-throughput.js
+//
+// ACCOUNT_NUMBERS - счета плательщика (ИНН пользователя EMAIL); строка счета плательщика
+// блокируется на время перевода, поэтому счетов нужно не меньше, чем VUS, иначе
+// измеряется очередь на счете плательщика, а не на счете РЖД.
+// Прогнать дважды на одной БД: с --account-sharding.shards=1 (одна строка счета РЖД)
+// и с --account-sharding.shards=16, сравнить payments_succeeded/с и p(99) по тегу
+// endpoint:payments_create.
+import http from 'k6/http';
+import { check } from 'k6';
+import exec from 'k6/execution';
+import { Counter } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const ACCOUNT_NUMBERS = (__ENV.ACCOUNT_NUMBERS || '').split(',').filter((n) => n.length > 0);
+const ITERATIONS = parseInt(__ENV.ITERATIONS || '2000', 10);
+
+const succeeded = new Counter('payments_succeeded');
+
+export const options = {
+    scenarios: {
+        payments: {
+            executor: 'shared-iterations',
+            vus: parseInt(__ENV.VUS || '50', 10),
+            iterations: ITERATIONS,
+            maxDuration: '5m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        'http_req_failed{endpoint:payments_create}': ['rate<0.01'],
+        'http_req_duration{endpoint:payments_create}': ['p(99)<2000'],
+    },
+};
+
+function headers(token, endpoint) {
+    return {
+        headers: {
+            'Content-Type': 'application/json',
+            Authorization: `Bearer ${token}`,
+        },
+        tags: { endpoint },
+    };
+}
+
+export function setup() {
+    if (ACCOUNT_NUMBERS.length === 0 || !__ENV.INN || !__ENV.BIK) {
+        throw new Error('ACCOUNT_NUMBERS, INN and BIK are required');
+    }
+
+    const login = http.post(`${BASE_URL}/api/auth/login`, JSON.stringify({
+        email: __ENV.EMAIL,
+        password: __ENV.PASSWORD,
+    }), { headers: { 'Content-Type': 'application/json' } });
+    check(login, { 'login 200': (r) => r.status === 200 });
+    const token = login.json('accessToken');
+
+    // Заявка на каждую оплату: повторная оплата заявки отклоняется
+    const body = JSON.stringify({
+        departureStation: __ENV.DEPARTURE || 'Москва-Товарная',
+        destinationStation: __ENV.ARRIVAL || 'Санкт-Петербург-Главный',
+        requestedWagonType: 'крытый',
+        cargo: {
+            cargoType: 'Металл',
+            weightKg: 40000,
+            volumeM3: 60,
+            packagingType: 'Паллеты',
+        },
+    });
+    const orderIds = [];
+    while (orderIds.length < ITERATIONS) {
+        const size = Math.min(100, ITERATIONS - orderIds.length);
+        const requests = [];
+        for (let i = 0; i < size; i++) {
+            requests.push(['POST', `${BASE_URL}/api/orders`, body, headers(token, 'orders_create')]);
+        }
+        for (const res of http.batch(requests)) {
+            check(res, { 'order 200': (r) => r.status === 200 });
+            orderIds.push(res.json('orderId'));
+        }
+    }
+
+    return { token, orderIds };
+}
+
+export default function (data) {
+    const iteration = exec.scenario.iterationInTest;
+    const res = http.post(`${BASE_URL}/api/dispatcher/payments/corporate`, JSON.stringify({
+        orderId: data.orderIds[iteration],
+        amount: 100.00,
+        paymentPurpose: `Нагрузочный тест оплаты ${iteration}`,
+        companyName: __ENV.COMPANY_NAME || 'Нагрузочный тест',
+        inn: __ENV.INN,
+        bik: __ENV.BIK,
+        accountNumber: ACCOUNT_NUMBERS[iteration % ACCOUNT_NUMBERS.length],
+        bankName: __ENV.BANK_NAME || 'Тестовый банк',
+        paymentMethod: 'BANK_TRANSFER',
+    }), headers(data.token, 'payments_create'));
+
+    check(res, { 'payment 200': (r) => r.status === 200 });
+    if (res.status === 200) {
+        succeeded.add(1);
+    }
+}
@@ -0,0 +1,114 @@
+// Стресс-тест резервирования: тысячи конкурирующих попыток занять одни и те же вагоны.
+//
+//   k6 run -e BASE_URL=http://localhost:8080 -e EMAIL=... -e PASSWORD=... \
+//          -e WAGON_IDS=<uuid>,<uuid>,... loadtest/reservation-contention.js
+//
+// WAGON_IDS - свободные вагоны. Каждая итерация бронирует от имени собственного заказа,
+// а вагон может выиграть только один заказ, поэтому порог reservations_won <= числа
+// вагонов проверяет отсутствие двойных броней.
+// Пропускная способность - http_reqs и p(99) по тегу endpoint:wagons_reserve.
+// После прогона teardown снимает все резервы.
+import http from 'k6/http';
+import { check } from 'k6';
+import exec from 'k6/execution';
+import { Counter } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const WAGON_IDS = (__ENV.WAGON_IDS || '').split(',').filter((id) => id.length > 0);
+const ITERATIONS = parseInt(__ENV.ITERATIONS || '5000', 10);
+
+const won = new Counter('reservations_won');
+const lost = new Counter('reservations_lost');
+
+export const options = {
+    scenarios: {
+        contention: {
+            executor: 'shared-iterations',
+            vus: parseInt(__ENV.VUS || '200', 10),
+            iterations: ITERATIONS,
+            maxDuration: '5m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        reservations_won: [`count<=${WAGON_IDS.length}`],
+        'http_req_failed{endpoint:wagons_reserve}': ['rate<0.01'],
+        'http_req_duration{endpoint:wagons_reserve}': ['p(99)<1000'],
+    },
+};
+
+function headers(token, endpoint) {
+    return {
+        headers: {
+            'Content-Type': 'application/json',
+            Authorization: `Bearer ${token}`,
+        },
+        tags: { endpoint },
+        // 400 - штатный ответ проигравшему, не ошибка транспорта
+        responseCallback: http.expectedStatuses(200, 400),
+    };
+}
+
+export function setup() {
+    if (WAGON_IDS.length === 0) {
+        throw new Error('WAGON_IDS is required');
+    }
+
+    const login = http.post(`${BASE_URL}/api/auth/login`, JSON.stringify({
+        email: __ENV.EMAIL,
+        password: __ENV.PASSWORD,
+    }), { headers: { 'Content-Type': 'application/json' } });
+    check(login, { 'login 200': (r) => r.status === 200 });
+    const token = login.json('accessToken');
+
+    // По черновику заявки на итерацию: wagon_schedule.order_id ссылается на orders
+    const body = JSON.stringify({
+        departureStation: __ENV.DEPARTURE || 'Москва-Товарная',
+        destinationStation: __ENV.ARRIVAL || 'Санкт-Петербург-Главный',
+        requestedWagonType: 'крытый',
+        cargo: {
+            cargoType: 'Металл',
+            weightKg: 40000,
+            volumeM3: 60,
+            packagingType: 'Паллеты',
+        },
+    });
+    const orderIds = [];
+    while (orderIds.length < ITERATIONS) {
+        const size = Math.min(100, ITERATIONS - orderIds.length);
+        const requests = [];
+        for (let i = 0; i < size; i++) {
+            requests.push(['POST', `${BASE_URL}/api/orders`, body, headers(token, 'orders_create')]);
+        }
+        for (const res of http.batch(requests)) {
+            check(res, { 'order 200': (r) => r.status === 200 });
+            orderIds.push(res.json('orderId'));
+        }
+    }
+
+    return { token, orderIds };
+}
+
+export default function (data) {
+    const wagonId = WAGON_IDS[Math.floor(Math.random() * WAGON_IDS.length)];
+    const orderId = data.orderIds[exec.scenario.iterationInTest];
+
+    const res = http.post(
+        `${BASE_URL}/api/dispatcher/wagons/${wagonId}/reserve?orderId=${orderId}&minutes=30`,
+        null,
+        headers(data.token, 'wagons_reserve'));
+
+    check(res, { 'reserve 200/400': (r) => r.status === 200 || r.status === 400 });
+    if (res.status === 200) {
+        won.add(1, { wagon: wagonId });
+    } else {
+        lost.add(1);
+    }
+}
+
+export function teardown(data) {
+    for (const wagonId of WAGON_IDS) {
+        http.post(`${BASE_URL}/api/dispatcher/wagons/${wagonId}/release`, null,
+            headers(data.token, 'wagons_release'));
+    }
+}
@@ -0,0 +1,80 @@
+// Нагрузочный тест: сравнение worker-пула Undertow и виртуальных потоков.
+//
+//   k6 run -e BASE_URL=http://localhost:8080 -e EMAIL=... -e PASSWORD=... loadtest/search-and-orders.js
+//
+// Прогнать дважды на одной и той же БД: без профиля и с --spring.profiles.active=virtual,
+// сравнить http_reqs (rps) и p(99) по тегам endpoint.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+
+export const options = {
+    scenarios: {
+        wagon_search: {
+            executor: 'ramping-vus',
+            exec: 'wagonSearch',
+            startVUs: 10,
+            stages: [
+                { duration: '30s', target: 100 },
+                { duration: '1m', target: 400 },
+                { duration: '1m', target: 400 },
+                { duration: '20s', target: 0 },
+            ],
+        },
+        orders: {
+            executor: 'ramping-vus',
+            exec: 'orders',
+            startVUs: 10,
+            stages: [
+                { duration: '30s', target: 100 },
+                { duration: '1m', target: 400 },
+                { duration: '1m', target: 400 },
+                { duration: '20s', target: 0 },
+            ],
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        'http_req_duration{endpoint:wagons_search}': ['p(99)<2000'],
+        'http_req_duration{endpoint:orders}': ['p(99)<2000'],
+    },
+};
+
+export function setup() {
+    const res = http.post(`${BASE_URL}/api/auth/login`, JSON.stringify({
+        email: __ENV.EMAIL,
+        password: __ENV.PASSWORD,
+    }), { headers: { 'Content-Type': 'application/json' } });
+
+    check(res, { 'login 200': (r) => r.status === 200 });
+    return { token: res.json('accessToken') };
+}
+
+function headers(token, endpoint) {
+    return {
+        headers: {
+            'Content-Type': 'application/json',
+            Authorization: `Bearer ${token}`,
+        },
+        tags: { endpoint },
+    };
+}
+
+export function wagonSearch(data) {
+    const res = http.post(`${BASE_URL}/api/dispatcher/wagons/search`, JSON.stringify({
+        departureStation: __ENV.DEPARTURE || 'Москва-Товарная',
+        arrivalStation: __ENV.ARRIVAL || 'Санкт-Петербург-Главный',
+        weightKg: 40000,
+        volumeM3: 60,
+        cargoType: 'Металл',
+    }), headers(data.token, 'wagons_search'));
+
+    check(res, { 'search 200': (r) => r.status === 200 });
+}
+
+export function orders(data) {
+    const res = http.get(`${BASE_URL}/api/orders`, headers(data.token, 'orders'));
+
+    check(res, { 'orders 200': (r) => r.status === 200 });
+}
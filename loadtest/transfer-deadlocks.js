@@ -0,0 +1,106 @@
+// Стресс-тест встречных переводов: тысячи переводов между несколькими счетами в обе стороны.
+//
+//   k6 run -e BASE_URL=http://localhost:8080 -e EMAIL=... -e PASSWORD=... \
+//          -e ACCOUNT_NUMBERS=<счет>,<счет>,... loadtest/transfer-deadlocks.js
+//
+// ACCOUNT_NUMBERS - не меньше двух счетов; чем их меньше, тем чаще переводы встречаются
+// на одной паре. Взаимная блокировка в Postgres завершает перевод ошибкой (500), поэтому
+// порог http_req_failed = 0 означает отсутствие deadlock'ов. Перевод только между
+// перечисленными счетами, так что teardown проверяет, что их суммарный баланс не изменился.
+import http from 'k6/http';
+import { check } from 'k6';
+import exec from 'k6/execution';
+import { Counter } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const ACCOUNT_NUMBERS = (__ENV.ACCOUNT_NUMBERS || '').split(',').filter((n) => n.length > 0);
+const ITERATIONS = parseInt(__ENV.ITERATIONS || '5000', 10);
+
+const completed = new Counter('transfers_completed');
+const declined = new Counter('transfers_declined');
+
+export const options = {
+    scenarios: {
+        crossing: {
+            executor: 'shared-iterations',
+            vus: parseInt(__ENV.VUS || '100', 10),
+            iterations: ITERATIONS,
+            maxDuration: '5m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        'http_req_failed{endpoint:accounts_transfer}': ['rate==0'],
+        'checks{check:balance conserved}': ['rate==1'],
+    },
+};
+
+function headers(token, endpoint) {
+    return {
+        headers: {
+            'Content-Type': 'application/json',
+            Authorization: `Bearer ${token}`,
+        },
+        tags: { endpoint },
+    };
+}
+
+// Сумма в копейках, чтобы не накапливать ошибку округления
+function totalBalance(token) {
+    let total = 0;
+    for (const accountNumber of ACCOUNT_NUMBERS) {
+        const res = http.get(`${BASE_URL}/api/accounts/${accountNumber}/balance`,
+            headers(token, 'accounts_balance'));
+        check(res, { 'balance 200': (r) => r.status === 200 });
+        total += Math.round(parseFloat(res.body) * 100);
+    }
+    return total;
+}
+
+export function setup() {
+    if (ACCOUNT_NUMBERS.length < 2) {
+        throw new Error('ACCOUNT_NUMBERS must contain at least two accounts');
+    }
+
+    const login = http.post(`${BASE_URL}/api/auth/login`, JSON.stringify({
+        email: __ENV.EMAIL,
+        password: __ENV.PASSWORD,
+    }), { headers: { 'Content-Type': 'application/json' } });
+    check(login, { 'login 200': (r) => r.status === 200 });
+    const token = login.json('accessToken');
+
+    return { token, total: totalBalance(token) };
+}
+
+export default function (data) {
+    // Соседние итерации переводят по одной паре в противоположные стороны
+    const iteration = exec.scenario.iterationInTest;
+    const pair = Math.floor(iteration / 2);
+    let from = ACCOUNT_NUMBERS[pair % ACCOUNT_NUMBERS.length];
+    let to = ACCOUNT_NUMBERS[(pair + 1) % ACCOUNT_NUMBERS.length];
+    if (iteration % 2 === 1) {
+        [from, to] = [to, from];
+    }
+
+    const res = http.post(`${BASE_URL}/api/accounts/transfer`, JSON.stringify({
+        fromAccountNumber: from,
+        toAccountNumber: to,
+        amount: (1 + (iteration % 100)).toFixed(2),
+        description: `Встречный перевод ${iteration}`,
+    }), headers(data.token, 'accounts_transfer'));
+
+    check(res, { 'transfer 200': (r) => r.status === 200 });
+    if (res.status === 200) {
+        // Отказ по остатку - штатный ответ с success = false
+        if (res.json('success')) {
+            completed.add(1);
+        } else {
+            declined.add(1);
+        }
+    }
+}
+
+export function teardown(data) {
+    const total = totalBalance(data.token);
+    check(total, { 'balance conserved': (t) => t === data.total });
+}
@@ -0,0 +1,25 @@
+package com.rzd.dispatcher.model.dto.response;
+
+import com.rzd.dispatcher.model.entity.Order;
+import com.rzd.dispatcher.service.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderResponseBenchmark {
+
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        order = BenchmarkFixtures.order();
+    }
+
+    @Benchmark
+    public OrderResponse fromOrder() {
+        return OrderResponse.fromOrder(order);
+    }
+}
@@ -0,0 +1,47 @@
+package com.rzd.dispatcher.security;
+
+import com.rzd.dispatcher.model.entity.User;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JwtServiceBenchmark {
+
+    private static final String EMAIL = "bench@example.com";
+
+    private JwtService jwtService;
+    private String token;
+
+    // Токен живет 15 минут, поэтому выпускается заново на каждую итерацию
+    @Setup(Level.Iteration)
+    public void setUp() {
+        jwtService = new JwtService();
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail(EMAIL);
+        token = jwtService.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public String extractEmail() {
+        return jwtService.extractEmail(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return jwtService.isTokenValid(token, EMAIL);
+    }
+
+    /**
+     * Полная проверка подписи без кэша проверенных токенов
+     */
+    @Benchmark
+    public String parseWithoutCache() {
+        return jwtService.extractClaim(token, Claims::getSubject);
+    }
+}
@@ -0,0 +1,200 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.*;
+import com.rzd.dispatcher.model.enums.*;
+import com.rzd.dispatcher.repository.StationDistanceRepository;
+import com.rzd.dispatcher.repository.WagonTariffRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Данные и заглушки для бенчмарков: все зависимости в памяти, без Postgres и Redis
+ */
+public final class BenchmarkFixtures {
+
+    public static final String[] STATIONS = {
+            "Москва-Товарная", "Санкт-Петербург-Сортировочный", "Екатеринбург-Сортировочный",
+            "Новосибирск-Главный", "Казань-Товарная", "Нижний Новгород-Сортировочный"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Репозиторий-заглушка: любой вызов, кроме методов Object, завершается ошибкой,
+     * чтобы бенчмарк не мог незаметно зависеть от БД
+     */
+    public static <T> T unusedRepository(Class<T> type) {
+        return stub(type, Map.of());
+    }
+
+    /**
+     * Заглушка интерфейса с ответами на перечисленные методы (по имени); остальные
+     * вызовы, кроме методов Object, завершаются ошибкой, как у unusedRepository
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("Обращение к БД в бенчмарке: " + method.getName());
+            }
+        });
+    }
+
+    /**
+     * Redis без резервов: MGET ключей wagon:reserved:* возвращает одни null
+     */
+    public static RedisTemplate<String, String> emptyRedis() {
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> values = stub(ValueOperations.class, Map.of(
+                "multiGet", args -> Arrays.asList(new String[((Collection<?>) args[0]).size()])));
+        return new RedisTemplate<>() {
+            @Override
+            public ValueOperations<String, String> opsForValue() {
+                return values;
+            }
+        };
+    }
+
+    public static TariffMatrix tariffMatrix() {
+        TariffMatrix matrix = new TariffMatrix(unusedRepository(WagonTariffRepository.class), null,
+                new SimpleMeterRegistry());
+        matrix.replace(tariffs(), "benchmark");
+        return matrix;
+    }
+
+    public static StationGraph stationGraph() {
+        StationGraph graph = new StationGraph(unusedRepository(StationDistanceRepository.class));
+        graph.replace(distances());
+        return graph;
+    }
+
+    public static List<WagonTariff> tariffs() {
+        List<WagonTariff> tariffs = new ArrayList<>();
+        for (WagonType wagonType : WagonType.values()) {
+            for (CargoType cargoType : CargoType.values()) {
+                tariffs.add(tariff(wagonType.name(), cargoType.name(), "12.50", "1.15", "4500.00"));
+            }
+            tariffs.add(tariff(wagonType.name(), "общий", "12.00", "1.00", "4000.00"));
+        }
+        return tariffs;
+    }
+
+    public static List<StationDistance> distances() {
+        List<StationDistance> distances = new ArrayList<>();
+        // Цепочка соседних станций: дальние пары считаются через маршрут
+        for (int i = 0; i + 1 < STATIONS.length; i++) {
+            distances.add(distance(STATIONS[i], STATIONS[i + 1], 400 + i * 150));
+        }
+        return distances;
+    }
+
+    public static Wagon wagon(int index) {
+        Wagon wagon = new Wagon();
+        wagon.setId(UUID.nameUUIDFromBytes(("wagon-" + index).getBytes()));
+        wagon.setWagonNumber(String.format("%08d", 50000000 + index));
+        wagon.setWagonType(WagonType.values()[index % 5]);
+        wagon.setMaxWeightKg(60000 + (index % 4) * 5000);
+        wagon.setMaxVolumeM3(90 + (index % 3) * 10);
+        wagon.setCurrentStation(STATIONS[index % STATIONS.length]);
+        wagon.setStatus(WagonStatus.свободен);
+        return wagon;
+    }
+
+    public static Order order() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail("bench@example.com");
+        user.setCompanyName("ООО Бенчмарк");
+
+        Cargo cargo = new Cargo();
+        cargo.setId(UUID.randomUUID());
+        cargo.setCargoType(CargoType.Металл);
+        cargo.setWeightKg(42000);
+        cargo.setVolumeM3(60);
+        cargo.setPackagingType(PackagingType.Паллеты);
+
+        Order order = new Order();
+        order.setId(UUID.randomUUID());
+        order.setUser(user);
+        order.setDepartureStation(STATIONS[0]);
+        order.setDestinationStation(STATIONS[3]);
+        order.setRequestedWagonType(WagonType.полувагон);
+        order.setWagon(wagon(1));
+        order.setStatus(OrderStatus.ожидает_оплаты);
+        order.setTotalPrice(new BigDecimal("512340.00"));
+        order.setCarbonFootprintKg(new BigDecimal("1407.84"));
+        order.setCreatedAt(OffsetDateTime.now());
+        order.setCargo(cargo);
+
+        for (ServiceName serviceName : ServiceName.values()) {
+            OrderExtra extra = new OrderExtra();
+            extra.setId(UUID.randomUUID());
+            extra.setServiceName(serviceName);
+            extra.setPrice(new BigDecimal("15000.00"));
+            order.getServices().add(extra);
+        }
+        return order;
+    }
+
+    public static Payment payment() {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setOrderId(UUID.randomUUID());
+        payment.setAmount(new BigDecimal("512340.00"));
+        payment.setCompanyName("ООО Бенчмарк");
+        payment.setInn("7701234567");
+        payment.setKpp("770101001");
+        payment.setBik("044525225");
+        payment.setBankName("ПАО Сбербанк");
+        payment.setPaymentPurpose("Оплата перевозки по заявке");
+        payment.setPaymentDocument("СЧ-000001");
+        payment.setCreatedAt(OffsetDateTime.now());
+        return payment;
+    }
+
+    private static WagonTariff tariff(String wagonType, String cargoType, String rate,
+                                      String coefficient, String minPrice) {
+        WagonTariff tariff = new WagonTariff();
+        tariff.setId(UUID.randomUUID());
+        tariff.setWagonType(wagonType);
+        tariff.setCargoType(cargoType);
+        tariff.setBaseRatePerKm(new BigDecimal(rate));
+        tariff.setCoefficient(new BigDecimal(coefficient));
+        tariff.setMinPrice(new BigDecimal(minPrice));
+        return tariff;
+    }
+
+    private static StationDistance distance(String from, String to, int km) {
+        StationDistance distance = new StationDistance();
+        distance.setId(UUID.randomUUID());
+        distance.setFromStation(from);
+        distance.setToStation(to);
+        distance.setDistanceKm(km);
+        distance.setUpdatedAt(OffsetDateTime.now());
+        return distance;
+    }
+}
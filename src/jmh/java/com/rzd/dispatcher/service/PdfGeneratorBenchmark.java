@@ -0,0 +1,26 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.Payment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PdfGeneratorBenchmark {
+
+    private PdfGeneratorService pdfGeneratorService;
+    private Payment payment;
+
+    @Setup
+    public void setUp() {
+        pdfGeneratorService = new PdfGeneratorService();
+        payment = BenchmarkFixtures.payment();
+    }
+
+    @Benchmark
+    public byte[] generateInvoicePdf() throws Exception {
+        return pdfGeneratorService.generateInvoicePdf(payment);
+    }
+}
@@ -0,0 +1,103 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.dto.request.PriceCalculationRequest;
+import com.rzd.dispatcher.model.dto.response.PriceResponse;
+import com.rzd.dispatcher.model.entity.WagonTariff;
+import com.rzd.dispatcher.repository.OrderRepository;
+import com.rzd.dispatcher.repository.WagonRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет цены целиком и сравнение ядра в копейках с прежней цепочкой BigDecimal.
+ * Для оценки аллокаций на котировку запускать с профилировщиком gc (включен в build.gradle).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PricingBenchmark {
+
+    @Param({"42000", "68500"})
+    public int weightKg;
+
+    private PricingService pricingService;
+    private AdditionalServicesService additionalServicesService;
+    private PriceCalculationRequest request;
+    private WagonTariff tariff;
+    private int distanceKm;
+    private BigDecimal basePrice;
+
+    @Setup
+    public void setUp() {
+        StationGraph stationGraph = BenchmarkFixtures.stationGraph();
+        TariffMatrix tariffMatrix = BenchmarkFixtures.tariffMatrix();
+        additionalServicesService = new AdditionalServicesService();
+        pricingService = new PricingService(
+                BenchmarkFixtures.unusedRepository(OrderRepository.class),
+                BenchmarkFixtures.unusedRepository(WagonRepository.class),
+                tariffMatrix,
+                stationGraph,
+                additionalServicesService);
+
+        request = new PriceCalculationRequest();
+        request.setCargoType("Металл");
+        request.setWagonType("полувагон");
+        request.setWeightKg(weightKg);
+        request.setDepartureStation(BenchmarkFixtures.STATIONS[0]);
+        request.setDestinationStation(BenchmarkFixtures.STATIONS[3]);
+        request.setSelectedServices(Set.of("INSURANCE", "EXPRESS", "TERMINAL", "TRACKING"));
+
+        tariff = tariffMatrix.find("полувагон", "Металл").orElseThrow();
+        distanceKm = stationGraph.distanceKm(request.getDepartureStation(), request.getDestinationStation());
+        basePrice = PricingKernel.freightPrice(weightKg, distanceKm, tariff);
+    }
+
+    @Benchmark
+    public PriceResponse calculatePrice() {
+        return pricingService.calculatePrice(request);
+    }
+
+    @Benchmark
+    public BigDecimal freightPriceKernel() {
+        return PricingKernel.freightPrice(weightKg, distanceKm, tariff);
+    }
+
+    /**
+     * Прежняя реализация базовой цены - точка отсчета "до"
+     */
+    @Benchmark
+    public BigDecimal freightPriceBigDecimal() {
+        BigDecimal weightTons = new BigDecimal(weightKg)
+                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
+
+        BigDecimal price = weightTons
+                .multiply(new BigDecimal(distanceKm))
+                .multiply(tariff.getBaseRatePerKm())
+                .multiply(tariff.getCoefficient())
+                .setScale(2, RoundingMode.HALF_UP);
+
+        if (tariff.getMinPrice() != null && price.compareTo(tariff.getMinPrice()) < 0) {
+            price = tariff.getMinPrice();
+        }
+        return price;
+    }
+
+    @Benchmark
+    public BigDecimal calculateServicesPrice() {
+        return additionalServicesService.calculateServicesPrice(
+                request.getSelectedServices(), request.getCargoType(), weightKg, basePrice, distanceKm,
+                request.getDepartureStation(), request.getDestinationStation());
+    }
+
+    @Benchmark
+    public List<PriceResponse.AdditionalServiceDto> getAllAvailableServices() {
+        return additionalServicesService.getAllAvailableServices(
+                request.getCargoType(), weightKg, basePrice, distanceKm,
+                request.getDepartureStation(), request.getDestinationStation());
+    }
+}
@@ -0,0 +1,63 @@
+package com.rzd.dispatcher.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка конфликтов расписания для пачки вагонов по индексу в памяти
+ * (раньше — запрос к БД на каждый вагон)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScheduleIndexBenchmark {
+
+    @Param({"50", "500"})
+    public int batchSize;
+
+    private ScheduleIntervalIndex index;
+    private List<UUID> batch;
+    private OffsetDateTime start;
+    private OffsetDateTime end;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        OffsetDateTime base = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHours(3));
+
+        List<UUID> wagons = new ArrayList<>();
+        List<ScheduleIntervalIndex.Interval> intervals = new ArrayList<>();
+        for (int w = 0; w < 10_000; w++) {
+            UUID wagonId = UUID.randomUUID();
+            wagons.add(wagonId);
+            long departure = base.toEpochSecond();
+            for (int trip = 0; trip < 20; trip++) {
+                departure += (1 + random.nextInt(10)) * 86_400L;
+                long arrival = departure + (1 + random.nextInt(5)) * 86_400L;
+                intervals.add(new ScheduleIntervalIndex.Interval(UUID.randomUUID(), wagonId, departure, arrival));
+                departure = arrival;
+            }
+        }
+
+        index = new ScheduleIntervalIndex(null, new SimpleMeterRegistry());
+        index.replace(intervals);
+
+        batch = wagons.subList(0, batchSize);
+        start = base.plusDays(90);
+        end = start.plusDays(2);
+    }
+
+    @Benchmark
+    public Set<UUID> findConflicting() {
+        return index.findConflicting(batch, start, end);
+    }
+}
@@ -0,0 +1,119 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.dto.request.WagonSearchRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.WagonAvailabilityResponse;
+import com.rzd.dispatcher.model.entity.Wagon;
+import com.rzd.dispatcher.repository.WagonRepository;
+import com.rzd.dispatcher.repository.WagonScheduleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WagonSearchBenchmark {
+
+    private WagonSearchService searchService;
+    private WagonSearchRequest request;
+    private WagonSearchService.PriceEstimateContext priceContext;
+    private Wagon[] wagons;
+    private int cursor;
+
+    /**
+     * Полный поиск по станции с stationSize свободными вагонами: репозиторий отдаёт их
+     * из памяти, в Redis резервов нет. Отдельное состояние, чтобы размер станции не
+     * умножал прогоны остальных бенчмарков
+     */
+    @State(Scope.Benchmark)
+    public static class Station {
+
+        @Param({"10", "100", "1000", "10000"})
+        public int stationSize;
+
+        private WagonSearchService searchService;
+        private WagonSearchRequest request;
+
+        @Setup
+        public void setUp() {
+            List<Wagon> wagons = new ArrayList<>(stationSize);
+            for (int i = 0; i < stationSize; i++) {
+                Wagon wagon = BenchmarkFixtures.wagon(i);
+                wagon.setCurrentStation(BenchmarkFixtures.STATIONS[0]);
+                wagons.add(wagon);
+            }
+            WagonRepository wagonRepository = BenchmarkFixtures.stub(WagonRepository.class, Map.of(
+                    "findAvailableWagons", args -> wagons,
+                    "findAvailableWagonsAtStations", args -> List.of()));
+
+            searchService = searchService(wagonRepository, BenchmarkFixtures.stationGraph());
+            request = searchRequest();
+        }
+    }
+
+    private static WagonSearchService searchService(WagonRepository wagonRepository, StationGraph stationGraph) {
+        RedisTemplate<String, String> redis = BenchmarkFixtures.emptyRedis();
+        return new WagonSearchService(
+                wagonRepository,
+                BenchmarkFixtures.unusedRepository(WagonScheduleRepository.class),
+                BenchmarkFixtures.tariffMatrix(),
+                stationGraph,
+                redis,
+                new WagonReservationEngine(redis),
+                new ScheduleIntervalIndex(null, new SimpleMeterRegistry()),
+                event -> {
+                });
+    }
+
+    private static WagonSearchRequest searchRequest() {
+        WagonSearchRequest request = new WagonSearchRequest();
+        request.setDepartureStation(BenchmarkFixtures.STATIONS[0]);
+        request.setArrivalStation(BenchmarkFixtures.STATIONS[3]);
+        request.setWeightKg(42000);
+        request.setVolumeM3(60);
+        request.setCargoType("Металл");
+        return request;
+    }
+
+    @Setup
+    public void setUp() {
+        StationGraph stationGraph = BenchmarkFixtures.stationGraph();
+        searchService = searchService(BenchmarkFixtures.unusedRepository(WagonRepository.class), stationGraph);
+
+        request = searchRequest();
+
+        priceContext = new WagonSearchService.PriceEstimateContext(
+                stationGraph.distanceKm(request.getDepartureStation(), request.getArrivalStation()),
+                request.getCargoType());
+
+        wagons = new Wagon[64];
+        for (int i = 0; i < wagons.length; i++) {
+            wagons[i] = BenchmarkFixtures.wagon(i);
+        }
+    }
+
+    private Wagon nextWagon() {
+        return wagons[cursor++ & (wagons.length - 1)];
+    }
+
+    @Benchmark
+    public int calculateMatchPercentage() {
+        return searchService.calculateMatchPercentage(nextWagon(), request);
+    }
+
+    @Benchmark
+    public WagonAvailabilityResponse buildWagonResponse() {
+        return searchService.buildWagonResponse(nextWagon(), request, priceContext);
+    }
+
+    @Benchmark
+    public CursorPage<WagonAvailabilityResponse> findAvailableWagons(Station station) {
+        return station.searchService.findAvailableWagons(station.request);
+    }
+}
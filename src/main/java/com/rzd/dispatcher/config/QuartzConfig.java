@@ -2,6 +2,7 @@ package com.rzd.dispatcher.config;
 
 import com.rzd.dispatcher.job.AutoDeliveryJob;
 import org.quartz.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -19,13 +20,17 @@ public class QuartzConfig {
 
     // 2. Настраиваем триггер (расписание)
     @Bean
-    public Trigger autoDeliveryJobTrigger(JobDetail autoDeliveryJobDetail) {
+    public Trigger autoDeliveryJobTrigger(JobDetail autoDeliveryJobDetail,
+                                          @Value("${auto-delivery.interval-minutes:10}") int intervalMinutes) {
         return TriggerBuilder.newTrigger()
                 .forJob(autoDeliveryJobDetail)
                 .withIdentity("autoDeliveryTrigger")
                 .withSchedule(SimpleScheduleBuilder.simpleSchedule()
-                        .withIntervalInMinutes(1) // Запуск каждую 1 минуту
-                        .repeatForever())
+                        // Страховочный проход; доставку в срок выполняет ArrivalScheduler
+                        .withIntervalInMinutes(intervalMinutes)
+                        .repeatForever()
+                        // Пропущенные за время простоя кластера запуски не догоняются пачкой
+                        .withMisfireHandlingInstructionNextWithRemainingCount())
                 .build();
     }
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package com.rzd.dispatcher.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.KeyExpirationEventMessageListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -22,4 +25,22 @@ public class RedisConfig {
         template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
         return template;
     }
-}
\ No newline at end of file
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    // Публикует RedisKeyExpiredEvent для истекших ключей; notify-keyspace-events
+    // выставляется при старте, пустое значение оставляет конфигурацию сервера как есть
+    @Bean
+    public KeyExpirationEventMessageListener keyExpirationEventMessageListener(
+            RedisMessageListenerContainer container,
+            @Value("${reservation-expiry.keyspace-events-config:Ex}") String keyspaceEventsConfig) {
+        KeyExpirationEventMessageListener listener = new KeyExpirationEventMessageListener(container);
+        listener.setKeyspaceNotificationsConfigParameter(keyspaceEventsConfig);
+        return listener;
+    }
+}
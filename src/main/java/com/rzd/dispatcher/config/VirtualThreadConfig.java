@@ -0,0 +1,40 @@
+package com.rzd.dispatcher.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+/**
+ * Режим виртуальных потоков (Java 21+, spring.threads.virtual.enabled=true).
+ * Запросы Undertow и задачи Quartz выполняются на виртуальных потоках,
+ * задачи @Scheduled Spring Boot переводит на них сам.
+ * Ограничителем параллелизма становится пул соединений HikariCP (см. README).
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public WebServerFactoryCustomizer<UndertowServletWebServerFactory> undertowVirtualThreadCustomizer() {
+        return factory -> factory.addDeploymentInfoCustomizers(deploymentInfo -> {
+            // Вместо worker-пула XNIO каждый запрос сервлета получает свой виртуальный поток
+            deploymentInfo.setExecutor(new VirtualThreadTaskExecutor("undertow-vt-"));
+            log.info("Undertow: обработка запросов на виртуальных потоках");
+        });
+    }
+
+    @Bean
+    public SchedulerFactoryBeanCustomizer quartzVirtualThreadCustomizer() {
+        return schedulerFactoryBean -> {
+            schedulerFactoryBean.setTaskExecutor(new VirtualThreadTaskExecutor("quartz-vt-"));
+            log.info("Quartz: задачи выполняются на виртуальных потоках");
+        };
+    }
+}
@@ -3,6 +3,8 @@ package com.rzd.dispatcher.controller;
 import com.rzd.dispatcher.model.dto.request.CreateAccountRequest;
 import com.rzd.dispatcher.model.dto.request.TransferRequest;
 import com.rzd.dispatcher.model.dto.response.AccountResponse;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.LedgerEntryResponse;
 import com.rzd.dispatcher.model.dto.response.TransferResponse;
 import com.rzd.dispatcher.model.entity.CompanyAccount;
 import com.rzd.dispatcher.service.AccountService;
@@ -55,6 +57,14 @@ public class AccountController {
         return ResponseEntity.ok(balance);
     }
 
+    @GetMapping("/{accountNumber}/ledger")
+    public ResponseEntity<CursorPage<LedgerEntryResponse>> getLedger(
+            @PathVariable String accountNumber,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(accountService.getLedger(accountNumber, cursor, limit));
+    }
+
     @PostMapping("/transfer")
     public ResponseEntity<TransferResponse> transferMoney(@RequestBody TransferRequest request) {
         AccountService.TransferResult result = accountService.transferMoney(
@@ -1,18 +1,23 @@
 package com.rzd.dispatcher.controller;
 
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.OrderResponse;
 import com.rzd.dispatcher.model.dto.response.PaymentResponse;
+import com.rzd.dispatcher.model.entity.Payment.PaymentStatus;
 import com.rzd.dispatcher.model.entity.User;
 import com.rzd.dispatcher.model.entity.Wagon;
 import com.rzd.dispatcher.model.enums.OrderStatus;
+import com.rzd.dispatcher.model.enums.Role;
 import com.rzd.dispatcher.model.enums.WagonStatus;
+import com.rzd.dispatcher.model.enums.WagonType;
 import com.rzd.dispatcher.service.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -25,10 +30,15 @@ public class AdminController {
     private final OrderService orderService;
     private final WagonAdminService wagonAdminService;
     private final PaymentService paymentService;
+    private final AdminExportService adminExportService;
 
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<CursorPage<User>> getAllUsers(
+            @RequestParam(required = false) Role role,
+            @RequestParam(required = false) String userType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(userService.getUsersPage(role, userType, cursor, limit));
     }
 
     @DeleteMapping("/users/{id}")
@@ -38,8 +48,21 @@ public class AdminController {
     }
 
     @GetMapping("/orders")
-    public ResponseEntity<List<OrderResponse>> getAllOrders() {
-        return ResponseEntity.ok(orderService.getAllOrders());
+    public ResponseEntity<CursorPage<OrderResponse>> getAllOrders(
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) UUID userId,
+            @RequestParam(required = false) String station,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(orderService.getOrdersPage(status, userId, station, cursor, limit));
+    }
+
+    @GetMapping(value = "/orders/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam(required = false) OrderStatus status) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> adminExportService.exportOrders(status, out));
     }
 
     @PutMapping("/orders/{id}/status")
@@ -51,8 +74,13 @@ public class AdminController {
     }
 
     @GetMapping("/wagons")
-    public ResponseEntity<List<Wagon>> getAllWagons() {
-        return ResponseEntity.ok(wagonAdminService.getAllWagons());
+    public ResponseEntity<CursorPage<Wagon>> getAllWagons(
+            @RequestParam(required = false) WagonStatus status,
+            @RequestParam(required = false) WagonType wagonType,
+            @RequestParam(required = false) String station,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(wagonAdminService.getWagonsPage(status, wagonType, station, cursor, limit));
     }
 
     @PostMapping("/wagons")
@@ -75,8 +103,21 @@ public class AdminController {
     }
     
     @GetMapping("/payments")
-    public ResponseEntity<List<PaymentResponse>> getAllPayments() {
-        return ResponseEntity.ok(paymentService.getAllPayments());
+    public ResponseEntity<CursorPage<PaymentResponse>> getAllPayments(
+            @RequestParam(required = false) PaymentStatus status,
+            @RequestParam(required = false) String inn,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(paymentService.getPaymentsPage(status, inn, cursor, limit));
+    }
+
+    @GetMapping(value = "/payments/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPayments(
+            @RequestParam(required = false) PaymentStatus status,
+            @RequestParam(required = false) String inn) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> adminExportService.exportPayments(status, inn, out));
     }
 
     @PostMapping("/payments/{id}/refund")
@@ -2,6 +2,7 @@ package com.rzd.dispatcher.controller;
 
 import com.rzd.dispatcher.model.dto.request.CreateOrderRequest;
 import com.rzd.dispatcher.model.dto.request.CreateOrderWithReservationRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.OrderResponse;
 import com.rzd.dispatcher.model.entity.Order;
 import com.rzd.dispatcher.model.enums.OrderStatus;
@@ -93,12 +94,11 @@ public class OrderController {
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<OrderResponse>> getAllOrdersForAdmin() {
-        List<Order> allOrders = orderRepository.findAll();
-        List<OrderResponse> responseList = allOrders.stream()
-                .map(OrderResponse::fromOrder)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responseList);
+    public ResponseEntity<CursorPage<OrderResponse>> getAllOrdersForAdmin(
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(orderService.getOrdersPage(status, null, null, cursor, limit));
     }
 
     @PatchMapping("/{orderId}/status")
@@ -106,12 +106,7 @@ public class OrderController {
             @PathVariable UUID orderId,
             @RequestParam String newStatus
     ) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new RuntimeException("Заказ не найден с ID: " + orderId));
-        order.setStatus(OrderStatus.valueOf(newStatus));
-        orderRepository.save(order);
-
-        return ResponseEntity.ok(OrderResponse.fromOrder(order));
+        return ResponseEntity.ok(orderService.updateOrderStatus(orderId, OrderStatus.valueOf(newStatus)));
     }
     @PostMapping("/complete-with-reservation")
     public ResponseEntity<?> createCompleteOrder(
@@ -2,8 +2,11 @@ package com.rzd.dispatcher.controller;
 
 import com.rzd.dispatcher.model.dto.request.PaymentRequest;
 import com.rzd.dispatcher.model.dto.request.PaymentWebhookRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.LedgerEntryResponse;
 import com.rzd.dispatcher.model.dto.response.PaymentResponse;
 import com.rzd.dispatcher.model.entity.Payment;
+import com.rzd.dispatcher.service.PaymentIdempotency;
 import com.rzd.dispatcher.service.PaymentService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -23,16 +26,24 @@ import java.util.UUID;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final PaymentIdempotency paymentIdempotency;
 
     @PostMapping("/corporate")
     public ResponseEntity<PaymentResponse> createCorporatePayment(
             @Valid @RequestBody PaymentRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @AuthenticationPrincipal UserDetails userDetails) {
 
-        com.rzd.dispatcher.model.entity.Payment payment =
-                paymentService.createCorporatePayment(request, userDetails.getUsername());
+        if (idempotencyKey == null) {
+            com.rzd.dispatcher.model.entity.Payment payment =
+                    paymentService.createCorporatePayment(request, userDetails.getUsername());
+            return ResponseEntity.ok(convertToResponse(payment));
+        }
 
-        return ResponseEntity.ok(convertToResponse(payment));
+        // Транзакция платежа фиксируется внутри action, до записи ответа в хранилище ключей
+        PaymentResponse response = paymentIdempotency.execute(userDetails.getUsername(), idempotencyKey, request,
+                () -> convertToResponse(paymentService.createCorporatePayment(request, userDetails.getUsername())));
+        return ResponseEntity.ok(response);
     }
     @PostMapping("/individual/confirm")
     public ResponseEntity<PaymentResponse> confirmIndividualPayment(
@@ -45,10 +56,11 @@ public class PaymentController {
     }
 
     @GetMapping("/search/by-inn")
-    public ResponseEntity<List<PaymentResponse>> findPaymentsByInn(
-            @RequestParam String inn) {
-        List<PaymentResponse> payments = paymentService.findPaymentsByInn(inn);
-        return ResponseEntity.ok(payments);
+    public ResponseEntity<CursorPage<PaymentResponse>> findPaymentsByInn(
+            @RequestParam String inn,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(paymentService.findPaymentsByInn(inn, cursor, limit));
     }
 
     @GetMapping("/{paymentId}/invoice")
@@ -74,6 +86,12 @@ public class PaymentController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/{paymentId}/ledger")
+    public ResponseEntity<List<LedgerEntryResponse>> getPaymentLedger(
+            @PathVariable UUID paymentId) {
+        return ResponseEntity.ok(paymentService.getPaymentLedger(paymentId));
+    }
+
     @GetMapping("/order/{orderId}")
     public ResponseEntity<List<PaymentResponse>> getOrderPayments(
             @PathVariable UUID orderId) {
@@ -1,6 +1,8 @@
 package com.rzd.dispatcher.controller;
 
+import com.rzd.dispatcher.model.dto.request.BatchPriceRequest;
 import com.rzd.dispatcher.model.dto.request.PriceCalculationRequest;
+import com.rzd.dispatcher.model.dto.response.BatchPriceResponse;
 import com.rzd.dispatcher.model.dto.response.PriceResponse;
 import com.rzd.dispatcher.service.PricingService;
 import jakarta.validation.Valid;
@@ -32,6 +34,13 @@ public class PricingController {
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<BatchPriceResponse> calculateBatch(
+            @Valid @RequestBody BatchPriceRequest request) {
+        BatchPriceResponse response = pricingService.calculateBatch(request);
+        return ResponseEntity.ok(response);
+    }
+
     @PostMapping("/full")
     public ResponseEntity<PriceResponse> calculateFullPrice(
             @RequestParam UUID orderId,
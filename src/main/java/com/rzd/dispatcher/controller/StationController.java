@@ -1,10 +1,10 @@
 package com.rzd.dispatcher.controller;
 
+import com.rzd.dispatcher.model.dto.response.StationSuggestionResponse;
 import com.rzd.dispatcher.service.StationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/stations")
@@ -15,7 +15,7 @@ public class StationController {
     private StationService stationService;
 
     @GetMapping("/search-free")
-    public List<Map<String, Object>> searchStationsWithFreeWagons(@RequestParam String query) {
+    public List<StationSuggestionResponse> searchStationsWithFreeWagons(@RequestParam String query) {
         return stationService.searchStationsWithFreeWagons(query);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.rzd.dispatcher.controller;
 
 import com.rzd.dispatcher.model.dto.request.WagonSearchRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.WagonAvailabilityResponse;
 import com.rzd.dispatcher.service.WagonSearchService;
 import jakarta.validation.Valid;
@@ -8,7 +9,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -19,10 +19,10 @@ public class WagonController {
     private final WagonSearchService wagonSearchService;
 
     @PostMapping("/search")
-    public ResponseEntity<List<WagonAvailabilityResponse>> searchWagons(
+    public ResponseEntity<CursorPage<WagonAvailabilityResponse>> searchWagons(
             @Valid @RequestBody WagonSearchRequest request) {
 
-        List<WagonAvailabilityResponse> wagons = wagonSearchService.findAvailableWagons(request);
+        CursorPage<WagonAvailabilityResponse> wagons = wagonSearchService.findAvailableWagons(request);
         return ResponseEntity.ok(wagons);
     }
 
@@ -41,9 +41,9 @@ public class WagonController {
         }
     }
     @PostMapping("/search-temporary")
-    public ResponseEntity<List<WagonAvailabilityResponse>> searchWagonsTemporary(
+    public ResponseEntity<CursorPage<WagonAvailabilityResponse>> searchWagonsTemporary(
             @Valid @RequestBody WagonSearchRequest request) {
-        List<WagonAvailabilityResponse> wagons = wagonSearchService.findAvailableWagons(request);
+        CursorPage<WagonAvailabilityResponse> wagons = wagonSearchService.findAvailableWagons(request);
         return ResponseEntity.ok(wagons);
     }
 
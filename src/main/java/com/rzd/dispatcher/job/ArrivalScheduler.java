@@ -0,0 +1,287 @@
+package com.rzd.dispatcher.job;
+
+import com.rzd.dispatcher.model.event.OrderInTransitEvent;
+import com.rzd.dispatcher.model.event.WagonScheduleChangedEvent;
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Доставка по времени прибытия: очередь с приоритетом по wagon_schedule.arrival_date
+ * и один таймер на ближайшее прибытие. Прибытия одного тика доставляются одной пачкой,
+ * delivered_at получает точное время прибытия из расписания.
+ * При старте в очередь попадают все заявки "в_пути", в том числе просроченные
+ * за время простоя узла, — они доставляются сразу.
+ * Таймер работает в собственном потоке: общий планировщик занят задачами @Scheduled,
+ * и долгая задача задержала бы доставку.
+ */
+@Component
+@Slf4j
+public class ArrivalScheduler {
+
+    private static final long RETRY_DELAY_MS = 5_000;
+
+    // Время прибытия заявки — самое позднее arrival_date её неотменённых рейсов;
+    // у заявки без расписания прибытие считается наступившим
+    private static final String ARRIVALS_SQL =
+            "SELECT o.id, MAX(ws.arrival_date) AS arrival_date " +
+            "FROM orders o " +
+            "LEFT JOIN wagon_schedule ws ON ws.order_id = o.id AND ws.status <> 'отменен' " +
+            "WHERE o.status = 'в_пути'";
+
+    private static final String DELIVER_SQL =
+            "WITH due AS (" +
+            "  SELECT o.id FROM orders o " +
+            "  WHERE o.id = ANY (?) AND o.status = 'в_пути' " +
+            "  FOR UPDATE SKIP LOCKED" +
+            "), arrival AS (" +
+            "  SELECT ws.order_id, MAX(ws.arrival_date) AS arrival_date " +
+            "  FROM wagon_schedule ws JOIN due d ON d.id = ws.order_id " +
+            "  WHERE ws.status <> 'отменен' GROUP BY ws.order_id" +
+            "), delivered AS (" +
+            "  UPDATE orders o SET status = 'доставлен', delivered_at = COALESCE(a.arrival_date, now()) " +
+            "  FROM due d LEFT JOIN arrival a ON a.order_id = d.id " +
+            "  WHERE o.id = d.id AND (a.arrival_date IS NULL OR a.arrival_date <= now()) " +
+            "  RETURNING o.id, o.wagon_id, o.destination_station" +
+            "), moved AS (" +
+            "  UPDATE wagons w SET status = 'свободен', current_station = d.destination_station " +
+            "  FROM delivered d WHERE w.id = d.wagon_id" +
+            ") " +
+            "SELECT id, wagon_id FROM delivered";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ThreadPoolTaskScheduler taskScheduler;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long tickMs;
+    private final int batchSize;
+
+    private final PriorityQueue<Arrival> queue =
+            new PriorityQueue<>(Comparator.comparingLong(Arrival::dueAtMillis));
+    // Актуальная запись по заявке; устаревшие элементы очереди пропускаются при выборке
+    private final Map<UUID, Arrival> latest = new HashMap<>();
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpAt = Long.MAX_VALUE;
+
+    private final Counter delivered;
+    private final Timer lag;
+
+    public ArrivalScheduler(JdbcTemplate jdbcTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            MeterRegistry meterRegistry,
+                            @Value("${arrival-scheduler.tick-ms:1000}") long tickMs,
+                            @Value("${arrival-scheduler.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = new ThreadPoolTaskScheduler();
+        this.taskScheduler.setPoolSize(1);
+        this.taskScheduler.setThreadNamePrefix("arrival-");
+        this.taskScheduler.initialize();
+        this.eventPublisher = eventPublisher;
+        this.tickMs = tickMs;
+        this.batchSize = batchSize;
+        this.delivered = meterRegistry.counter("delivery.arrivals.delivered");
+        this.lag = meterRegistry.timer("delivery.arrivals.lag");
+        meterRegistry.gauge("delivery.arrivals.pending", latest, Map::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        taskScheduler.shutdown();
+    }
+
+    private record Arrival(UUID orderId, long dueAtMillis) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<Arrival> arrivals = loadArrivals(ARRIVALS_SQL + " GROUP BY o.id");
+        long now = System.currentTimeMillis();
+        long overdue = arrivals.stream().filter(a -> a.dueAtMillis() <= now).count();
+        synchronized (this) {
+            arrivals.forEach(this::add);
+            rearm();
+        }
+        log.info("Очередь прибытий загружена: {} заявок в пути, просрочено за время простоя: {}",
+                arrivals.size(), overdue);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderInTransit(OrderInTransitEvent event) {
+        schedule(List.of(event.orderId()));
+    }
+
+    /**
+     * Рейс заявки в пути перенесли или отменили: прибытие заявки (MAX arrival_date её
+     * рейсов) пересчитывается. Заявки, которых нет в очереди, ещё не в пути или уже
+     * доставлены; заявку, ушедшую в путь, ставит в очередь OrderInTransitEvent.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleChanged(WagonScheduleChangedEvent event) {
+        if (event.orderId() == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!latest.containsKey(event.orderId())) {
+                return;
+            }
+        }
+        schedule(List.of(event.orderId()));
+    }
+
+    /**
+     * Перечитывает время прибытия заявок из БД и ставит их в очередь заново.
+     */
+    public void schedule(List<UUID> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        List<Arrival> arrivals = loadArrivals(ARRIVALS_SQL + " AND o.id = ANY (?) GROUP BY o.id",
+                orderIds.toArray());
+        synchronized (this) {
+            arrivals.forEach(this::add);
+            rearm();
+        }
+    }
+
+    private void fire() {
+        List<Arrival> batch = new ArrayList<>();
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpAt = Long.MAX_VALUE;
+            long now = System.currentTimeMillis();
+            while (batch.size() < batchSize && !queue.isEmpty() && queue.peek().dueAtMillis() <= now) {
+                Arrival arrival = queue.poll();
+                if (latest.get(arrival.orderId()) == arrival) {
+                    latest.remove(arrival.orderId());
+                    batch.add(arrival);
+                }
+            }
+        }
+
+        try {
+            deliver(batch);
+        } finally {
+            synchronized (this) {
+                rearm();
+            }
+        }
+    }
+
+    private void deliver(List<Arrival> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<UUID> orderIds = batch.stream().map(Arrival::orderId).toList();
+        try {
+            List<UUID> deliveredIds = new ArrayList<>();
+            List<UUID> freedWagonIds = new ArrayList<>();
+            jdbcTemplate.query(DELIVER_SQL,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", orderIds.toArray())),
+                    rs -> {
+                        deliveredIds.add(rs.getObject("id", UUID.class));
+                        UUID wagonId = rs.getObject("wagon_id", UUID.class);
+                        if (wagonId != null) {
+                            freedWagonIds.add(wagonId);
+                        }
+                    });
+            if (!freedWagonIds.isEmpty()) {
+                eventPublisher.publishEvent(new WagonsChangedEvent(freedWagonIds));
+            }
+
+            long now = System.currentTimeMillis();
+            Set<UUID> done = new HashSet<>(deliveredIds);
+            List<UUID> leftovers = new ArrayList<>();
+            for (Arrival arrival : batch) {
+                if (done.contains(arrival.orderId())) {
+                    lag.record(Duration.ofMillis(Math.max(0, now - arrival.dueAtMillis())));
+                } else {
+                    leftovers.add(arrival.orderId());
+                }
+            }
+            delivered.increment(deliveredIds.size());
+            log.info("🚂 Прибытие: доставлено заявок {} из {}", deliveredIds.size(), batch.size());
+
+            // Прибытие перенесли, заявку забрал другой узел или статус уже сменили
+            if (!leftovers.isEmpty()) {
+                retry(loadArrivals(ARRIVALS_SQL + " AND o.id = ANY (?) GROUP BY o.id", leftovers.toArray()));
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка доставки по прибытию, повтор через {} мс: {}", RETRY_DELAY_MS, e.getMessage());
+            retry(batch);
+        }
+    }
+
+    private void retry(List<Arrival> arrivals) {
+        long notBefore = System.currentTimeMillis() + RETRY_DELAY_MS;
+        synchronized (this) {
+            for (Arrival arrival : arrivals) {
+                add(new Arrival(arrival.orderId(), Math.max(arrival.dueAtMillis(), notBefore)));
+            }
+        }
+    }
+
+    private List<Arrival> loadArrivals(String sql, Object... orderIds) {
+        long now = System.currentTimeMillis();
+        return jdbcTemplate.query(sql,
+                ps -> {
+                    if (orderIds.length > 0) {
+                        ps.setArray(1, ps.getConnection().createArrayOf("uuid", orderIds));
+                    }
+                },
+                (rs, rowNum) -> {
+                    Timestamp arrivalDate = rs.getTimestamp("arrival_date");
+                    return new Arrival(rs.getObject("id", UUID.class),
+                            arrivalDate != null ? arrivalDate.getTime() : now);
+                });
+    }
+
+    // Вызывается под монитором this
+    private void add(Arrival arrival) {
+        latest.put(arrival.orderId(), arrival);
+        queue.add(arrival);
+    }
+
+    // Вызывается под монитором this: один таймер на границу тика ближайшего прибытия
+    private void rearm() {
+        while (!queue.isEmpty() && latest.get(queue.peek().orderId()) != queue.peek()) {
+            queue.poll();
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        long due = queue.peek().dueAtMillis();
+        long tick = Math.max(System.currentTimeMillis(), ((due + tickMs - 1) / tickMs) * tickMs);
+        if (wakeUp != null && wakeUpAt <= tick) {
+            return;
+        }
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        wakeUpAt = tick;
+        wakeUp = taskScheduler.schedule(this::fire, Instant.ofEpochMilli(tick));
+    }
+}
@@ -1,57 +1,101 @@
 package com.rzd.dispatcher.job;
 
-import com.rzd.dispatcher.model.entity.Order;
-import com.rzd.dispatcher.model.entity.Wagon;
-import com.rzd.dispatcher.model.enums.OrderStatus;
-import com.rzd.dispatcher.model.enums.WagonStatus;
-import com.rzd.dispatcher.repository.OrderRepository;
-import com.rzd.dispatcher.repository.WagonRepository;
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.quartz.QuartzJobBean;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
+/**
+ * Страховочный проход для доставки: точное время прибытия обслуживает {@link ArrivalScheduler},
+ * здесь подбираются прибытия, которые он пропустил (правки расписания напрямую в БД и т.п.).
+ * Заявки "в_пути" с наступившим arrival_date переводятся в "доставлен", вагоны освобождаются
+ * на станции назначения. Заявки обрабатываются пачками по id, каждая пачка —
+ * один оператор и своя короткая транзакция, поэтому блокировки строк не копятся.
+ * FOR UPDATE SKIP LOCKED не даёт двум узлам кластера взять одни и те же заявки.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@DisallowConcurrentExecution
 public class AutoDeliveryJob extends QuartzJobBean {
 
-    private final OrderRepository orderRepository;
-    private final WagonRepository wagonRepository;
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private static final String DELIVER_CHUNK_SQL =
+            "WITH batch AS (" +
+            "  SELECT o.id FROM orders o " +
+            "  WHERE o.status = 'в_пути' AND o.id > ? " +
+            "    AND NOT EXISTS (SELECT 1 FROM wagon_schedule ws WHERE ws.order_id = o.id " +
+            "                    AND ws.status <> 'отменен' AND ws.arrival_date > now()) " +
+            "  ORDER BY o.id LIMIT ? " +
+            "  FOR UPDATE SKIP LOCKED" +
+            "), delivered AS (" +
+            "  UPDATE orders o SET status = 'доставлен', delivered_at = COALESCE(" +
+            "    (SELECT MAX(ws.arrival_date) FROM wagon_schedule ws " +
+            "     WHERE ws.order_id = o.id AND ws.status <> 'отменен'), now()) " +
+            "  FROM batch b WHERE o.id = b.id " +
+            "  RETURNING o.id, o.wagon_id, o.destination_station" +
+            "), moved AS (" +
+            "  UPDATE wagons w SET status = 'свободен', current_station = d.destination_station " +
+            "  FROM delivered d WHERE w.id = d.wagon_id" +
+            ") " +
+            "SELECT id, wagon_id FROM delivered ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${auto-delivery.chunk-size:500}")
+    private int chunkSize;
 
     @Override
-    @Transactional
     protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
         log.info("⏳ Запуск планировщика Quartz: проверка прибывающих поездов...");
 
-        // 1. Находим все заявки, которые сейчас в пути
-        List<Order> ordersInTransit = orderRepository.findByStatus(OrderStatus.в_пути);
+        UUID afterId = MIN_ID;
+        int chunks = 0;
+        long delivered = 0;
 
-        if (ordersInTransit.isEmpty()) {
-            log.info("✅ Нет поездов в пути. Планировщик завершил работу.");
-            return;
-        }
+        while (true) {
+            List<UUID> ids = new ArrayList<>();
+            List<UUID> freedWagonIds = new ArrayList<>();
+            jdbcTemplate.query(DELIVER_CHUNK_SQL, rs -> {
+                ids.add(rs.getObject("id", UUID.class));
+                UUID wagonId = rs.getObject("wagon_id", UUID.class);
+                if (wagonId != null) {
+                    freedWagonIds.add(wagonId);
+                }
+            }, afterId, chunkSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            if (!freedWagonIds.isEmpty()) {
+                eventPublisher.publishEvent(new WagonsChangedEvent(freedWagonIds));
+            }
+            chunks++;
+            delivered += ids.size();
+            afterId = ids.get(ids.size() - 1);
+            log.info("🚂 Пачка {}: завершено рейсов {}", chunks, ids.size());
 
-        for (Order order : ordersInTransit) {
-            // 2. Меняем статус заявки на "доставлен"
-            order.setStatus(OrderStatus.доставлен);
-            orderRepository.save(order);
-
-            // 3. Освобождаем привязанный вагон и меняем его станцию
-            Wagon wagon = order.getWagon(); // <-- Проверь, как у тебя называется связь заказа с вагоном
-            if (wagon != null) {
-                wagon.setStatus(WagonStatus.свободен);
-                wagon.setCurrentStation(order.getDestinationStation()); // Вагон остается на станции назначения
-                wagonRepository.save(wagon);
+            if (ids.size() < chunkSize) {
+                break;
             }
+        }
 
-            log.info("🚂 Рейс для заявки {} завершен! Вагон прибыл на станцию {}.", 
-                    order.getId(), order.getDestinationStation());
+        if (delivered == 0) {
+            log.info("✅ Нет поездов в пути. Планировщик завершил работу.");
+        } else {
+            log.info("✅ Завершено рейсов: {} (пачек: {})", delivered, chunks);
         }
     }
-}
\ No newline at end of file
+}
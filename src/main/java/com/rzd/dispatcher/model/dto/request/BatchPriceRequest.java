@@ -0,0 +1,43 @@
+package com.rzd.dispatcher.model.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Data
+public class BatchPriceRequest {
+
+    @Valid
+    @NotEmpty(message = "Список позиций не может быть пустым")
+    @Size(max = 200, message = "Не более 200 позиций в одном запросе")
+    private List<Item> items;
+
+    /**
+     * Позиция пакета: либо конкретный вагон (wagonId), либо тип вагона (wagonType)
+     */
+    @Data
+    public static class Item {
+
+        private UUID wagonId;
+
+        private String wagonType;
+
+        @NotBlank(message = "Тип груза обязателен")
+        private String cargoType;
+
+        @NotNull(message = "Вес груза обязателен")
+        @Min(value = 1, message = "Вес должен быть больше 0")
+        private Integer weightKg;
+
+        @NotBlank(message = "Станция отправления обязательна")
+        private String departureStation;
+
+        @NotBlank(message = "Станция назначения обязательна")
+        private String destinationStation;
+
+        private Set<String> selectedServices;
+    }
+}
@@ -29,4 +29,15 @@ public class WagonSearchRequest {
     private LocalDateTime requiredDepartureDate;
 
     private boolean allowAlternativeStations = true;
-}
\ No newline at end of file
+
+    // Радиус поиска по соседним станциям, км (по умолчанию wagon-search.nearby-radius-km)
+    @Min(1)
+    private Integer maxDistanceKm;
+
+    // Размер страницы результатов (по умолчанию 10) и курсор "показать ещё" из nextCursor
+    @Min(1)
+    @Max(100)
+    private Integer limit;
+
+    private String cursor;
+}
@@ -0,0 +1,24 @@
+package com.rzd.dispatcher.model.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+public class BatchPriceResponse {
+    private List<Item> items;
+    private int successCount;
+    private int errorCount;
+
+    @Data
+    @Builder
+    public static class Item {
+        private int index;
+        private UUID wagonId;
+        private String wagonType;
+        private PriceResponse price;
+        private String error;
+    }
+}
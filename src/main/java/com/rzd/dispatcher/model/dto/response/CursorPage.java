@@ -0,0 +1,136 @@
+package com.rzd.dispatcher.model.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Страница keyset-пагинации: элементы и непрозрачный курсор для следующего запроса.
+ * Курсор кодирует ключ сортировки последнего элемента (created_at + id либо только id;
+ * в поиске вагонов — балл, расстояние и id; в журнале проводок — номер проводки).
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    // created_at в курсоре строки, у которой он не заполнен
+    private static final String NO_CREATED_AT = "-";
+
+    private List<T> items;
+    private String nextCursor;
+    private boolean hasMore;
+
+    /**
+     * Собирает страницу из выборки размером limit + 1: лишняя строка только
+     * сигнализирует, что дальше есть данные, и в ответ не попадает.
+     */
+    public static <E, T> CursorPage<T> of(List<E> rows, int limit,
+                                          Function<E, T> mapper,
+                                          Function<E, String> cursorOf) {
+        boolean hasMore = rows.size() > limit;
+        List<E> page = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = hasMore ? cursorOf.apply(page.get(page.size() - 1)) : null;
+        return new CursorPage<>(page.stream().map(mapper).toList(), nextCursor, hasMore);
+    }
+
+    public static int normalizeLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Курсор по (created_at, id). Строки без created_at в ORDER BY created_at DESC
+     * Postgres ставит первыми (NULLS FIRST); их курсор хранит отметку вместо даты.
+     */
+    public static String encode(OffsetDateTime createdAt, UUID id) {
+        return encode((createdAt != null ? createdAt.toInstant().toString() : NO_CREATED_AT) + "|" + id);
+    }
+
+    public static String encode(UUID id) {
+        return encode(id.toString());
+    }
+
+    public static String encode(long sequence) {
+        return encode("#" + sequence);
+    }
+
+    public static String encode(int rank, int distanceKm, UUID id) {
+        return encode(rank + ":" + distanceKm + ":" + id);
+    }
+
+    /**
+     * Позиция (created_at, id), после которой продолжается выдача; null — с начала.
+     * createdAt позиции пуст у курсора только по id и у строки без created_at.
+     */
+    public static Position decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                return new Position(null, UUID.fromString(raw));
+            }
+            String createdAt = raw.substring(0, separator);
+            return new Position(
+                    NO_CREATED_AT.equals(createdAt) ? null : OffsetDateTime.parse(createdAt),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Некорректный курсор пагинации");
+        }
+    }
+
+    /** Позиция в ранжированной выдаче (балл, расстояние, id); null — с начала. */
+    public static RankPosition decodeRank(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            return new RankPosition(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Некорректный курсор пагинации");
+        }
+    }
+
+    /** Номер последнего элемента в последовательной выдаче; null — с начала. */
+    public static Long decodeSequence(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith("#")) {
+                throw new IllegalArgumentException(raw);
+            }
+            return Long.parseLong(raw.substring(1));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Некорректный курсор пагинации");
+        }
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public record Position(OffsetDateTime createdAt, UUID id) {
+    }
+
+    public record RankPosition(int rank, int distanceKm, UUID id) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.rzd.dispatcher.model.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+public class LedgerEntryResponse {
+
+    private long id;
+    private UUID transferId;
+    private String accountNumber;
+    // Списание с минусом, зачисление с плюсом
+    private BigDecimal amount;
+    private String reference;
+    private String description;
+    private OffsetDateTime createdAt;
+}
@@ -33,6 +33,7 @@ public class OrderResponse {
     private BigDecimal totalPrice;
     private BigDecimal carbonFootprintKg;
     private OffsetDateTime createdAt;
+    private OffsetDateTime deliveredAt;
     private CargoDto cargo;
     private List<ServiceDto> services;
 
@@ -63,7 +64,8 @@ public class OrderResponse {
                 .status(order.getStatus())
                 .totalPrice(order.getTotalPrice())
                 .carbonFootprintKg(order.getCarbonFootprintKg())
-                .createdAt(order.getCreatedAt());
+                .createdAt(order.getCreatedAt())
+                .deliveredAt(order.getDeliveredAt());
 
         if (order.getWagon() != null) {
             builder.wagonId(order.getWagon().getId())
@@ -0,0 +1,16 @@
+package com.rzd.dispatcher.model.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class StationSuggestionResponse {
+
+    private String name;
+    private int freeWagons;
+    // Свободные вагоны по типу (тип в нижнем регистре)
+    private Map<String, Integer> freeByType;
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.GenericGenerator;
 
 import java.math.BigDecimal;
@@ -57,9 +58,14 @@ public class Order {
     @Column(name = "created_at")
     private OffsetDateTime createdAt;
 
+    @Column(name = "delivered_at")
+    private OffsetDateTime deliveredAt;
+
     @OneToOne(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Cargo cargo;
 
+    // Услуги страницы заказов догружаются одним IN-запросом вместо запроса на каждый заказ
+    @BatchSize(size = 100)
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<OrderExtra> services = new ArrayList<>();
 
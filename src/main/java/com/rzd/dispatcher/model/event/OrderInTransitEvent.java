@@ -0,0 +1,9 @@
+package com.rzd.dispatcher.model.event;
+
+import java.util.UUID;
+
+/**
+ * Заявка переведена в статус "в_пути": её прибытие нужно поставить в очередь доставки.
+ */
+public record OrderInTransitEvent(UUID orderId) {
+}
@@ -0,0 +1,10 @@
+package com.rzd.dispatcher.model.event;
+
+import com.rzd.dispatcher.model.dto.response.PaymentResponse;
+
+/**
+ * Платеж создан или сменил статус: после коммита его проекция
+ * попадает в индекс платежей ИНН в Redis.
+ */
+public record PaymentChangedEvent(PaymentResponse payment) {
+}
@@ -0,0 +1,23 @@
+package com.rzd.dispatcher.model.event;
+
+import com.rzd.dispatcher.model.entity.WagonSchedule;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Строка wagon_schedule создана или изменена: после коммита индекс занятости вагонов
+ * пересчитывает интервалы этого рейса, а очередь прибытий - время прибытия заявки.
+ */
+public record WagonScheduleChangedEvent(UUID scheduleId,
+                                        UUID wagonId,
+                                        UUID orderId,
+                                        String status,
+                                        OffsetDateTime departureDate,
+                                        OffsetDateTime arrivalDate) {
+
+    public static WagonScheduleChangedEvent of(WagonSchedule schedule) {
+        return new WagonScheduleChangedEvent(schedule.getId(), schedule.getWagon().getId(),
+                schedule.getOrderId(), schedule.getStatus(), schedule.getDepartureDate(), schedule.getArrivalDate());
+    }
+}
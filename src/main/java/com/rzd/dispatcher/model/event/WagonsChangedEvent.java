@@ -0,0 +1,15 @@
+package com.rzd.dispatcher.model.event;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * У вагонов сменились статус, станция или тип (либо вагоны добавлены/удалены):
+ * после коммита индекс свободного парка перечитывает их из БД.
+ */
+public record WagonsChangedEvent(List<UUID> wagonIds) {
+
+    public static WagonsChangedEvent of(UUID wagonId) {
+        return new WagonsChangedEvent(List.of(wagonId));
+    }
+}
@@ -0,0 +1,175 @@
+package com.rzd.dispatcher.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Перевод между счетами одним запросом: блокировка, проверка остатка, списание и
+ * зачисление. Порядок блокировок единый для всех переводов: сначала строки
+ * company_accounts по возрастанию номера счета, затем строки account_balance_shards,
+ * поэтому встречные переводы (оплата и возврат) не могут взаимно заблокироваться.
+ * Строка результата отсутствует, если одного из счетов нет.
+ */
+@Repository
+public class AccountTransferRepository {
+
+    // Параметры объявлены один раз, дальше запрос ссылается на них по имени
+    private static final String PARAMS =
+            "WITH params AS (" +
+            "  SELECT ?::varchar AS from_account, ?::varchar AS to_account, ?::numeric AS amount" +
+            "), ";
+
+    private static final String LOCK_BOTH =
+            "locked AS (" +
+            "  SELECT a.account_number, a.inn, a.company_name, a.balance " +
+            "  FROM company_accounts a, params p " +
+            "  WHERE a.account_number IN (p.from_account, p.to_account) " +
+            "  ORDER BY a.account_number " +
+            "  FOR UPDATE OF a" +
+            "), ";
+
+    private static final String RESULT =
+            "SELECT l.from_inn, l.from_name, l.from_before, l.to_inn, l.to_name, l.to_before, ";
+
+    private static final String TRANSFER_SQL = PARAMS + LOCK_BOTH +
+            "legs AS (" +
+            "  SELECT f.inn AS from_inn, f.company_name AS from_name, f.balance AS from_before, " +
+            "         t.inn AS to_inn, t.company_name AS to_name, t.balance AS to_before, " +
+            "         f.balance >= p.amount AS enough " +
+            "  FROM params p " +
+            "  JOIN locked f ON f.account_number = p.from_account " +
+            "  JOIN locked t ON t.account_number = p.to_account" +
+            "), moved AS (" +
+            "  UPDATE company_accounts a " +
+            "  SET balance = a.balance + CASE WHEN a.account_number = p.from_account " +
+            "      THEN -p.amount ELSE p.amount END, updated_at = now() " +
+            "  FROM params p, legs l " +
+            "  WHERE l.enough AND a.account_number IN (p.from_account, p.to_account) " +
+            "  RETURNING a.account_number" +
+            ") " +
+            RESULT + "l.enough, (SELECT count(*) FROM moved) AS moved FROM legs l";
+
+    // Зачисление на шардированный счет: его основная строка не блокируется
+    private static final String TRANSFER_TO_SHARD_SQL =
+            "WITH params AS (" +
+            "  SELECT ?::varchar AS from_account, ?::varchar AS to_account, ?::numeric AS amount, " +
+            "         ?::smallint AS shard" +
+            "), locked AS (" +
+            "  SELECT a.account_number, a.inn, a.company_name, a.balance " +
+            "  FROM company_accounts a, params p " +
+            "  WHERE a.account_number = p.from_account " +
+            "  FOR UPDATE OF a" +
+            "), target AS (" +
+            "  SELECT a.inn, a.company_name, a.balance + (" +
+            "      SELECT COALESCE(SUM(s.balance), 0) FROM account_balance_shards s " +
+            "      WHERE s.account_number = a.account_number) AS balance " +
+            "  FROM company_accounts a, params p " +
+            "  WHERE a.account_number = p.to_account" +
+            "), legs AS (" +
+            "  SELECT f.inn AS from_inn, f.company_name AS from_name, f.balance AS from_before, " +
+            "         t.inn AS to_inn, t.company_name AS to_name, t.balance AS to_before, " +
+            "         f.balance >= p.amount AS enough " +
+            "  FROM params p, locked f, target t" +
+            "), debit AS (" +
+            "  UPDATE company_accounts a SET balance = a.balance - p.amount, updated_at = now() " +
+            "  FROM params p, legs l " +
+            "  WHERE l.enough AND a.account_number = p.from_account " +
+            "  RETURNING a.account_number" +
+            "), credit AS (" +
+            "  UPDATE account_balance_shards s SET balance = s.balance + p.amount, updated_at = now() " +
+            "  FROM params p, legs l " +
+            "  WHERE l.enough AND s.account_number = p.to_account AND s.shard = p.shard " +
+            "  RETURNING s.shard" +
+            ") " +
+            RESULT + "l.enough, (SELECT count(*) FROM debit) + (SELECT count(*) FROM credit) AS moved " +
+            "FROM legs l";
+
+    // Списание с шардированного счета: с основной строки, если хватает, иначе с любого
+    // свободного шарда с достаточным остатком (занятые шарды пропускаются, не ожидаются)
+    private static final String TRANSFER_FROM_SHARDS_SQL = PARAMS + LOCK_BOTH +
+            "legs AS (" +
+            "  SELECT f.inn AS from_inn, f.company_name AS from_name, " +
+            "         f.balance + (SELECT COALESCE(SUM(s.balance), 0) FROM account_balance_shards s " +
+            "             WHERE s.account_number = p.from_account) AS from_before, " +
+            "         t.inn AS to_inn, t.company_name AS to_name, t.balance AS to_before, " +
+            "         f.balance >= p.amount AS from_main " +
+            "  FROM params p " +
+            "  JOIN locked f ON f.account_number = p.from_account " +
+            "  JOIN locked t ON t.account_number = p.to_account" +
+            "), shard AS (" +
+            "  SELECT s.shard FROM account_balance_shards s, params p, legs l " +
+            "  WHERE NOT l.from_main AND s.account_number = p.from_account AND s.balance >= p.amount " +
+            "  LIMIT 1 " +
+            "  FOR UPDATE OF s SKIP LOCKED" +
+            "), debit AS (" +
+            "  UPDATE company_accounts a SET balance = a.balance - p.amount, updated_at = now() " +
+            "  FROM params p, legs l " +
+            "  WHERE l.from_main AND a.account_number = p.from_account " +
+            "  RETURNING a.account_number" +
+            "), debit_shard AS (" +
+            "  UPDATE account_balance_shards s SET balance = s.balance - p.amount, updated_at = now() " +
+            "  FROM params p, shard x " +
+            "  WHERE s.account_number = p.from_account AND s.shard = x.shard " +
+            "  RETURNING s.shard" +
+            "), credit AS (" +
+            "  UPDATE company_accounts a SET balance = a.balance + p.amount, updated_at = now() " +
+            "  FROM params p " +
+            "  WHERE a.account_number = p.to_account " +
+            "    AND (EXISTS (SELECT 1 FROM debit) OR EXISTS (SELECT 1 FROM debit_shard)) " +
+            "  RETURNING a.account_number" +
+            ") " +
+            RESULT + "(l.from_main OR EXISTS (SELECT 1 FROM shard)) AS enough, " +
+            "(SELECT count(*) FROM debit) + (SELECT count(*) FROM debit_shard) " +
+            "+ (SELECT count(*) FROM credit) AS moved " +
+            "FROM legs l";
+
+    private static final RowMapper<TransferRow> ROW_MAPPER = (rs, rowNum) -> new TransferRow(
+            rs.getString("from_inn"),
+            rs.getString("from_name"),
+            rs.getBigDecimal("from_before"),
+            rs.getString("to_inn"),
+            rs.getString("to_name"),
+            rs.getBigDecimal("to_before"),
+            rs.getBoolean("enough"),
+            rs.getInt("moved"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Балансы до операции и итог: enough - хватило ли средств, moved - сколько строк
+     * изменено (при успехе - по одной на списание и зачисление)
+     */
+    public record TransferRow(String fromInn, String fromName, BigDecimal fromBefore,
+                              String toInn, String toName, BigDecimal toBefore,
+                              boolean enough, int moved) {
+
+        public boolean completed() {
+            return enough && moved == 2;
+        }
+    }
+
+    public Optional<TransferRow> transfer(String fromAccount, String toAccount, BigDecimal amount) {
+        return single(jdbcTemplate.query(TRANSFER_SQL, ROW_MAPPER, fromAccount, toAccount, amount));
+    }
+
+    public Optional<TransferRow> transferToShard(String fromAccount, String toAccount,
+                                                 int shard, BigDecimal amount) {
+        return single(jdbcTemplate.query(TRANSFER_TO_SHARD_SQL, ROW_MAPPER,
+                fromAccount, toAccount, amount, shard));
+    }
+
+    public Optional<TransferRow> transferFromShards(String fromAccount, String toAccount, BigDecimal amount) {
+        return single(jdbcTemplate.query(TRANSFER_FROM_SHARDS_SQL, ROW_MAPPER, fromAccount, toAccount, amount));
+    }
+
+    private static Optional<TransferRow> single(List<TransferRow> rows) {
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+}
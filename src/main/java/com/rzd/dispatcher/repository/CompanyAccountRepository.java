@@ -2,13 +2,11 @@ package com.rzd.dispatcher.repository;
 
 import com.rzd.dispatcher.model.entity.CompanyAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import jakarta.persistence.LockModeType;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
@@ -33,19 +31,51 @@ public interface CompanyAccountRepository extends JpaRepository<CompanyAccount,
     boolean existsByAccountNumber(String accountNumber);
 
     
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT a FROM CompanyAccount a WHERE a.accountNumber = :accountNumber")
-    Optional<CompanyAccount> findByAccountNumberForUpdate(@Param("accountNumber") String accountNumber);
-
-    
-    @Modifying
-    @Query("UPDATE CompanyAccount a SET a.balance = a.balance - :amount " +
-            "WHERE a.accountNumber = :accountNumber AND a.balance >= :amount")
-    int withdraw(@Param("accountNumber") String accountNumber, @Param("amount") BigDecimal amount);
-
-    
     @Modifying
     @Query("UPDATE CompanyAccount a SET a.balance = a.balance + :amount " +
             "WHERE a.accountNumber = :accountNumber")
     int deposit(@Param("accountNumber") String accountNumber, @Param("amount") BigDecimal amount);
-}
\ No newline at end of file
+
+    // Шарды баланса горячего счёта (account_balance_shards, миграция V7)
+
+    @Modifying
+    @Query(value = "INSERT INTO account_balance_shards (account_number, shard) " +
+            "SELECT :accountNumber, s FROM generate_series(0, :shards - 1) s " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int createShards(@Param("accountNumber") String accountNumber, @Param("shards") int shards);
+
+    @Modifying
+    @Query(value = "UPDATE account_balance_shards SET balance = balance + :amount, updated_at = now() " +
+            "WHERE account_number = :accountNumber AND shard = :shard", nativeQuery = true)
+    int depositToShard(@Param("accountNumber") String accountNumber,
+                       @Param("shard") int shard,
+                       @Param("amount") BigDecimal amount);
+
+    @Query(value = "SELECT COALESCE(SUM(balance), 0) FROM account_balance_shards " +
+            "WHERE account_number = :accountNumber", nativeQuery = true)
+    BigDecimal sumShards(@Param("accountNumber") String accountNumber);
+
+    // Счета, у которых в шардах остались деньги (например, после отключения шардирования)
+    @Query(value = "SELECT DISTINCT account_number FROM account_balance_shards WHERE balance > 0",
+            nativeQuery = true)
+    List<String> findAccountNumbersWithShardBalance();
+
+    // Переносит накопленное в шардах на основную строку счёта; занятые шарды пропускаются.
+    // Основная строка блокируется первой - тот же порядок, что у переводов (AccountTransferRepository)
+    @Modifying
+    @Query(value = "WITH main AS (" +
+            "  SELECT account_number FROM company_accounts WHERE account_number = :accountNumber FOR UPDATE" +
+            "), taken AS (" +
+            "  SELECT shard, balance FROM account_balance_shards " +
+            "  WHERE account_number = :accountNumber AND balance > 0 AND EXISTS (SELECT 1 FROM main) " +
+            "  FOR UPDATE SKIP LOCKED" +
+            "), moved AS (" +
+            "  UPDATE account_balance_shards s SET balance = 0, updated_at = now() " +
+            "  FROM taken t WHERE s.account_number = :accountNumber AND s.shard = t.shard " +
+            "  RETURNING t.balance" +
+            ") " +
+            "UPDATE company_accounts SET balance = balance + (SELECT COALESCE(SUM(balance), 0) FROM moved), " +
+            "updated_at = now() " +
+            "WHERE account_number = :accountNumber AND EXISTS (SELECT 1 FROM moved)", nativeQuery = true)
+    int consolidateShards(@Param("accountNumber") String accountNumber);
+}
@@ -0,0 +1,150 @@
+package com.rzd.dispatcher.repository;
+
+import com.rzd.dispatcher.model.dto.response.LedgerEntryResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Журнал проводок ledger_entries и снимки балансов ledger_snapshots (миграция V8).
+ * Баланс счета - снимок плюс проводки его хвоста: одно чтение строки снимка и
+ * диапазон индекса idx_ledger_entries_account_tx, длина которого ограничена компактором.
+ */
+@Repository
+public class LedgerRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO ledger_entries (transfer_id, account_number, amount, reference, description) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    // Строка на каждый существующий счет из списка
+    private static final String BALANCES_SQL =
+            "SELECT a.account_number, COALESCE(s.balance, 0) + COALESCE((" +
+            "    SELECT SUM(e.amount) FROM ledger_entries e " +
+            "    WHERE e.account_number = a.account_number " +
+            "      AND e.tx >= COALESCE(s.horizon, '0'::xid8)), 0) AS balance " +
+            "FROM company_accounts a " +
+            "LEFT JOIN ledger_snapshots s ON s.account_number = a.account_number " +
+            "WHERE a.account_number = ANY (?)";
+
+    private static final String ENTRIES_BY_ACCOUNT_SQL =
+            "SELECT id, transfer_id, account_number, amount, reference, description, created_at " +
+            "FROM ledger_entries " +
+            "WHERE account_number = ? AND (?::bigint IS NULL OR id < ?::bigint) " +
+            "ORDER BY id DESC LIMIT ?";
+
+    private static final String ENTRIES_BY_REFERENCE_SQL =
+            "SELECT id, transfer_id, account_number, amount, reference, description, created_at " +
+            "FROM ledger_entries WHERE reference = ? ORDER BY id";
+
+    // Переносит в снимки проводки завершившихся транзакций (tx < xmin текущего снимка БД):
+    // проводок с таким tx больше не появится, поэтому граница не пропустит позднюю запись
+    private static final String COMPACT_SQL =
+            "WITH bound AS (" +
+            "  SELECT pg_snapshot_xmin(pg_current_snapshot()) AS horizon" +
+            "), tail AS (" +
+            "  SELECT e.account_number, SUM(e.amount) AS amount " +
+            "  FROM ledger_entries e " +
+            "  LEFT JOIN ledger_snapshots s ON s.account_number = e.account_number " +
+            "  CROSS JOIN bound b " +
+            "  WHERE e.tx >= COALESCE(s.horizon, '0'::xid8) AND e.tx < b.horizon " +
+            "  GROUP BY e.account_number" +
+            ") " +
+            "INSERT INTO ledger_snapshots (account_number, balance, horizon, taken_at) " +
+            "SELECT t.account_number, t.amount, b.horizon, now() FROM tail t, bound b " +
+            "ON CONFLICT (account_number) DO UPDATE " +
+            "SET balance = ledger_snapshots.balance + EXCLUDED.balance, " +
+            "    horizon = EXCLUDED.horizon, taken_at = EXCLUDED.taken_at";
+
+    // Счета, у которых баланс строки (с шардами) расходится с журналом. Обе стороны
+    // читаются одним запросом, а проводки пишутся в той же транзакции, что и баланс
+    private static final String MISMATCHES_SQL =
+            "SELECT account_number, stored, ledger FROM (" +
+            "  SELECT a.account_number, " +
+            "         COALESCE(a.balance, 0) + COALESCE((SELECT SUM(sh.balance) FROM account_balance_shards sh " +
+            "             WHERE sh.account_number = a.account_number), 0) AS stored, " +
+            "         COALESCE(s.balance, 0) + COALESCE((SELECT SUM(e.amount) FROM ledger_entries e " +
+            "             WHERE e.account_number = a.account_number " +
+            "               AND e.tx >= COALESCE(s.horizon, '0'::xid8)), 0) AS ledger " +
+            "  FROM company_accounts a " +
+            "  LEFT JOIN ledger_snapshots s ON s.account_number = a.account_number" +
+            ") r WHERE stored <> ledger";
+
+    private static final RowMapper<LedgerEntryResponse> ENTRY_MAPPER = (rs, rowNum) -> LedgerEntryResponse.builder()
+            .id(rs.getLong("id"))
+            .transferId(rs.getObject("transfer_id", UUID.class))
+            .accountNumber(rs.getString("account_number"))
+            .amount(rs.getBigDecimal("amount"))
+            .reference(rs.getString("reference"))
+            .description(rs.getString("description"))
+            .createdAt(rs.getObject("created_at", OffsetDateTime.class))
+            .build();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public record Entry(UUID transferId, String accountNumber, BigDecimal amount,
+                        String reference, String description) {
+    }
+
+    public record Mismatch(String accountNumber, BigDecimal stored, BigDecimal ledger) {
+    }
+
+    public void insertBatch(List<Entry> entries) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setObject(1, entry.transferId());
+            ps.setString(2, entry.accountNumber());
+            ps.setBigDecimal(3, entry.amount());
+            ps.setString(4, entry.reference());
+            ps.setString(5, entry.description());
+        });
+    }
+
+    public Map<String, BigDecimal> balances(Collection<String> accountNumbers) {
+        Map<String, BigDecimal> result = new HashMap<>();
+        if (accountNumbers.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(BALANCES_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", accountNumbers.toArray())),
+                rs -> {
+                    result.put(rs.getString("account_number"), rs.getBigDecimal("balance"));
+                });
+        return result;
+    }
+
+    public Optional<BigDecimal> balance(String accountNumber) {
+        return Optional.ofNullable(balances(List.of(accountNumber)).get(accountNumber));
+    }
+
+    /** Выписка по счету от новых проводок к старым; afterId - id последней проводки предыдущей страницы */
+    public List<LedgerEntryResponse> findByAccount(String accountNumber, Long afterId, int limit) {
+        return jdbcTemplate.query(ENTRIES_BY_ACCOUNT_SQL, ENTRY_MAPPER, accountNumber, afterId, afterId, limit);
+    }
+
+    public List<LedgerEntryResponse> findByReference(String reference) {
+        return jdbcTemplate.query(ENTRIES_BY_REFERENCE_SQL, ENTRY_MAPPER, reference);
+    }
+
+    public int compact() {
+        return jdbcTemplate.update(COMPACT_SQL);
+    }
+
+    /** Неблокирующая блокировка компактора на транзакцию: несколько экземпляров не сожмут хвост дважды */
+    public boolean tryLockCompactor() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext('ledger_compactor'))", Boolean.class));
+    }
+
+    public List<Mismatch> findMismatches() {
+        return jdbcTemplate.query(MISMATCHES_SQL, (rs, rowNum) -> new Mismatch(
+                rs.getString("account_number"),
+                rs.getBigDecimal("stored"),
+                rs.getBigDecimal("ledger")));
+    }
+}
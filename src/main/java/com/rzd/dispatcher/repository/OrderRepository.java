@@ -2,15 +2,20 @@ package com.rzd.dispatcher.repository;
 
 import com.rzd.dispatcher.model.entity.Order;
 import com.rzd.dispatcher.model.enums.OrderStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -35,6 +40,12 @@ public interface OrderRepository extends JpaRepository<Order, UUID> {
     
     List<Order> findByWagonId(UUID wagonId);
 
+    // SELECT ... FOR UPDATE: оплаты и возвраты одного заказа выполняются по очереди.
+    // Строку заказа берут до строк счетов, чтобы порядок блокировок был один для всех
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id = :orderId")
+    Optional<Order> findByIdForUpdate(@Param("orderId") UUID orderId);
+
     
     @Modifying
     @Query("UPDATE Order o SET o.status = :status WHERE o.id = :orderId")
@@ -55,4 +66,54 @@ public interface OrderRepository extends JpaRepository<Order, UUID> {
             "AND o.status = 'доставлен'")
     BigDecimal getTotalRevenue(@Param("start") OffsetDateTime start,
                                @Param("end") OffsetDateTime end);
+
+    // Фильтры страниц заявок; при null фильтр не применяется
+    String PAGE_FILTER =
+            "(:status IS NULL OR o.status = :status) AND " +
+            "(CAST(:userId AS String) IS NULL OR o.user.id = :userId) AND " +
+            "(:station IS NULL OR o.departureStation = :station OR o.destinationStation = :station) ";
+
+    // Keyset-страница для админки: user, wagon и cargo подтягиваются тем же запросом,
+    // услуги — пачками через @BatchSize на Order.services. Курсор — сравнение строк
+    // (created_at, id) < (...), которое Postgres берёт границей скана idx_orders_created_at_id.
+    // Заявки без created_at идут первыми (NULLS FIRST): после курсора на такой заявке —
+    // отдельный запрос по оставшимся из них и всем заявкам с датой
+    default List<Order> findPage(OrderStatus status, UUID userId, String station,
+                                 OffsetDateTime afterCreatedAt, UUID afterId, Limit limit) {
+        if (afterId == null) {
+            return findFirstPage(status, userId, station, limit);
+        }
+        if (afterCreatedAt == null) {
+            return findPageAfterUndated(status, userId, station, afterId, limit);
+        }
+        return findPageAfter(status, userId, station, afterCreatedAt, afterId, limit);
+    }
+
+    @EntityGraph(attributePaths = {"user", "wagon", "cargo"})
+    @Query("SELECT o FROM Order o WHERE " + PAGE_FILTER + "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findFirstPage(@Param("status") OrderStatus status,
+                              @Param("userId") UUID userId,
+                              @Param("station") String station,
+                              Limit limit);
+
+    @EntityGraph(attributePaths = {"user", "wagon", "cargo"})
+    @Query("SELECT o FROM Order o WHERE " + PAGE_FILTER +
+            "AND (o.createdAt, o.id) < (:afterCreatedAt, :afterId) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findPageAfter(@Param("status") OrderStatus status,
+                              @Param("userId") UUID userId,
+                              @Param("station") String station,
+                              @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+                              @Param("afterId") UUID afterId,
+                              Limit limit);
+
+    @EntityGraph(attributePaths = {"user", "wagon", "cargo"})
+    @Query("SELECT o FROM Order o WHERE " + PAGE_FILTER +
+            "AND (o.createdAt IS NOT NULL OR o.id < :afterId) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findPageAfterUndated(@Param("status") OrderStatus status,
+                                     @Param("userId") UUID userId,
+                                     @Param("station") String station,
+                                     @Param("afterId") UUID afterId,
+                                     Limit limit);
 }
\ No newline at end of file
@@ -2,12 +2,14 @@ package com.rzd.dispatcher.repository;
 
 import com.rzd.dispatcher.model.entity.Payment;
 import com.rzd.dispatcher.model.entity.Payment.PaymentStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -60,4 +62,44 @@ public interface PaymentRepository extends JpaRepository<Payment, UUID> {
     
     @Query("SELECT p FROM Payment p WHERE p.status = 'PENDING' AND p.createdAt < CURRENT_DATE - 3")
     List<Payment> findOverduePayments();
+
+    // Фильтры страниц; при null фильтр не применяется
+    String PAGE_FILTER =
+            "(:status IS NULL OR p.status = :status) AND " +
+            "(:inn IS NULL OR p.inn = :inn) ";
+
+    // Keyset-страница платежей, курсор — сравнение строк по idx_payments_created_at_id,
+    // как в OrderRepository.findPage
+    default List<Payment> findPage(PaymentStatus status, String inn,
+                                   OffsetDateTime afterCreatedAt, UUID afterId, Limit limit) {
+        if (afterId == null) {
+            return findFirstPage(status, inn, limit);
+        }
+        if (afterCreatedAt == null) {
+            return findPageAfterUndated(status, inn, afterId, limit);
+        }
+        return findPageAfter(status, inn, afterCreatedAt, afterId, limit);
+    }
+
+    @Query("SELECT p FROM Payment p WHERE " + PAGE_FILTER + "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Payment> findFirstPage(@Param("status") PaymentStatus status,
+                                @Param("inn") String inn,
+                                Limit limit);
+
+    @Query("SELECT p FROM Payment p WHERE " + PAGE_FILTER +
+            "AND (p.createdAt, p.id) < (:afterCreatedAt, :afterId) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Payment> findPageAfter(@Param("status") PaymentStatus status,
+                                @Param("inn") String inn,
+                                @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+                                @Param("afterId") UUID afterId,
+                                Limit limit);
+
+    @Query("SELECT p FROM Payment p WHERE " + PAGE_FILTER +
+            "AND (p.createdAt IS NOT NULL OR p.id < :afterId) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Payment> findPageAfterUndated(@Param("status") PaymentStatus status,
+                                       @Param("inn") String inn,
+                                       @Param("afterId") UUID afterId,
+                                       Limit limit);
 }
\ No newline at end of file
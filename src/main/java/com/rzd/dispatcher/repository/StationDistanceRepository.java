@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -33,4 +34,7 @@ public interface StationDistanceRepository extends JpaRepository<StationDistance
             "sd.fromStation = :station AND sd.distanceKm <= :maxDistance")
     List<StationDistance> findNearbyStations(@Param("station") String station,
                                              @Param("maxDistance") Integer maxDistance);
+
+    
+    List<StationDistance> findByUpdatedAtGreaterThanEqual(OffsetDateTime updatedAt);
 }
\ No newline at end of file
@@ -1,30 +1,62 @@
 package com.rzd.dispatcher.repository;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rzd.dispatcher.model.dto.response.StationSuggestionResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Поиск станций в БД: справочник stations с триграммным индексом и
+ * материализованное представление station_free_fleet (миграция V6)
+ */
 @Repository
 public class StationRepository {
 
+    private static final TypeReference<Map<String, Integer>> BY_TYPE = new TypeReference<>() {
+    };
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    public List<Map<String, Object>> findStationsWithFreeWagons(String query) {
-        
-        String sql = "SELECT DISTINCT current_station as name " +
-                "FROM wagons " +
-                "WHERE current_station ILIKE ? " +
-                "AND status = 'свободен' " +
-                "ORDER BY current_station " +
-                "LIMIT 10";
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Шаблон ILIKE и similarity() обслуживает GIN-индекс idx_stations_name_trgm
+    public List<StationSuggestionResponse> findStationsWithFreeWagons(String query, int limit) {
 
-        String searchPattern = "%" + query + "%";
+        String sql = "SELECT s.name, f.free_wagons, f.free_by_type::text AS free_by_type " +
+                "FROM stations s " +
+                "JOIN station_free_fleet f ON f.station = s.name " +
+                "WHERE s.name ILIKE ? " +
+                "ORDER BY similarity(s.name, ?) DESC, f.free_wagons DESC, s.name " +
+                "LIMIT ?";
 
-        System.out.println("Searching with pattern: " + searchPattern);
+        String searchPattern = "%" + escapeLike(query) + "%";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> StationSuggestionResponse.builder()
+                .name(rs.getString("name"))
+                .freeWagons(rs.getInt("free_wagons"))
+                .freeByType(parseByType(rs.getString("free_by_type")))
+                .build(), searchPattern, query, limit);
+    }
+
+    public void refreshFreeFleetView() {
+        jdbcTemplate.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY station_free_fleet");
+    }
+
+    private Map<String, Integer> parseByType(String json) {
+        try {
+            return objectMapper.readValue(json, BY_TYPE);
+        } catch (Exception e) {
+            return Map.of();
+        }
+    }
 
-        return jdbcTemplate.queryForList(sql, searchPattern);
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,14 @@
 package com.rzd.dispatcher.repository;
 
 import com.rzd.dispatcher.model.entity.User;
+import com.rzd.dispatcher.model.enums.Role;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,4 +26,44 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     boolean existsByEmail(String email);
 
     boolean existsByInn(String inn);
+
+    // Фильтры страниц; при null фильтр не применяется
+    String PAGE_FILTER =
+            "(:role IS NULL OR u.role = :role) AND " +
+            "(:userType IS NULL OR u.userType = :userType) ";
+
+    // Keyset-страница пользователей, курсор — сравнение строк по idx_users_created_at_id,
+    // как в OrderRepository.findPage
+    default List<User> findPage(Role role, String userType,
+                                OffsetDateTime afterCreatedAt, UUID afterId, Limit limit) {
+        if (afterId == null) {
+            return findFirstPage(role, userType, limit);
+        }
+        if (afterCreatedAt == null) {
+            return findPageAfterUndated(role, userType, afterId, limit);
+        }
+        return findPageAfter(role, userType, afterCreatedAt, afterId, limit);
+    }
+
+    @Query("SELECT u FROM User u WHERE " + PAGE_FILTER + "ORDER BY u.createdAt DESC, u.id DESC")
+    List<User> findFirstPage(@Param("role") Role role,
+                             @Param("userType") String userType,
+                             Limit limit);
+
+    @Query("SELECT u FROM User u WHERE " + PAGE_FILTER +
+            "AND (u.createdAt, u.id) < (:afterCreatedAt, :afterId) " +
+            "ORDER BY u.createdAt DESC, u.id DESC")
+    List<User> findPageAfter(@Param("role") Role role,
+                             @Param("userType") String userType,
+                             @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+                             @Param("afterId") UUID afterId,
+                             Limit limit);
+
+    @Query("SELECT u FROM User u WHERE " + PAGE_FILTER +
+            "AND (u.createdAt IS NOT NULL OR u.id < :afterId) " +
+            "ORDER BY u.createdAt DESC, u.id DESC")
+    List<User> findPageAfterUndated(@Param("role") Role role,
+                                    @Param("userType") String userType,
+                                    @Param("afterId") UUID afterId,
+                                    Limit limit);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.rzd.dispatcher.repository;
 import com.rzd.dispatcher.model.entity.Wagon;
 import com.rzd.dispatcher.model.enums.WagonStatus;
 import com.rzd.dispatcher.model.enums.WagonType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
@@ -11,6 +12,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import jakarta.persistence.LockModeType;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -36,6 +39,45 @@ public interface WagonRepository extends JpaRepository<Wagon, UUID> {
                                     @Param("weight") Integer weight,
                                     @Param("volume") Integer volume);
 
+    // Свободные вагоны сразу на нескольких станциях (поиск по соседним станциям)
+    @Query("SELECT w FROM Wagon w WHERE w.status = 'свободен' " +
+            "AND w.maxWeightKg >= :weight " +
+            "AND w.maxVolumeM3 >= :volume " +
+            "AND w.currentStation IN :stations")
+    List<Wagon> findAvailableWagonsAtStations(@Param("stations") Collection<String> stations,
+                                              @Param("weight") Integer weight,
+                                              @Param("volume") Integer volume);
+
+    
+    @Query("SELECT w FROM Wagon w WHERE w.status = 'свободен' " +
+            "AND w.maxWeightKg >= :weight " +
+            "AND w.maxVolumeM3 >= :volume " +
+            "AND w.currentStation = :station " +
+            "AND NOT EXISTS (SELECT ws.id FROM WagonSchedule ws WHERE " +
+            "ws.wagon = w AND " +
+            "ws.status IN ('запланирован', 'в_пути') AND " +
+            "ws.departureDate <= :end AND ws.arrivalDate >= :start)")
+    List<Wagon> findAvailableWagonsWithoutConflicts(@Param("station") String station,
+                                                    @Param("weight") Integer weight,
+                                                    @Param("volume") Integer volume,
+                                                    @Param("start") OffsetDateTime start,
+                                                    @Param("end") OffsetDateTime end);
+
+    // То же по нескольким станциям, пока индекс расписания в памяти не загружен
+    @Query("SELECT w FROM Wagon w WHERE w.status = 'свободен' " +
+            "AND w.maxWeightKg >= :weight " +
+            "AND w.maxVolumeM3 >= :volume " +
+            "AND w.currentStation IN :stations " +
+            "AND NOT EXISTS (SELECT ws.id FROM WagonSchedule ws WHERE " +
+            "ws.wagon = w AND " +
+            "ws.status IN ('запланирован', 'в_пути') AND " +
+            "ws.departureDate <= :end AND ws.arrivalDate >= :start)")
+    List<Wagon> findAvailableWagonsAtStationsWithoutConflicts(@Param("stations") Collection<String> stations,
+                                                              @Param("weight") Integer weight,
+                                                              @Param("volume") Integer volume,
+                                                              @Param("start") OffsetDateTime start,
+                                                              @Param("end") OffsetDateTime end);
+
     
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT w FROM Wagon w WHERE w.id = :id")
@@ -46,8 +88,29 @@ public interface WagonRepository extends JpaRepository<Wagon, UUID> {
     @Query("UPDATE Wagon w SET w.status = :status WHERE w.id = :id")
     int updateStatus(@Param("id") UUID id, @Param("status") WagonStatus status);
 
+    // Смена статуса только из ожидаемого: 0 строк означает, что вагон уже занят или не найден
+    @Modifying
+    @Query("UPDATE Wagon w SET w.status = :status WHERE w.id = :id AND w.status = :expected")
+    int updateStatusIfCurrent(@Param("id") UUID id,
+                              @Param("expected") WagonStatus expected,
+                              @Param("status") WagonStatus status);
+
     
     @Query("SELECT w.status, COUNT(w) FROM Wagon w GROUP BY w.status")
     List<Object[]> getWagonStatistics();
 
+    // У вагонов нет created_at, поэтому ключ keyset-пагинации — первичный ключ.
+    // null для uuid Postgres не типизирует сам: проверка на null идет через CAST к строке
+    @Query("SELECT w FROM Wagon w WHERE " +
+            "(:status IS NULL OR w.status = :status) AND " +
+            "(:wagonType IS NULL OR w.wagonType = :wagonType) AND " +
+            "(:station IS NULL OR w.currentStation = :station) AND " +
+            "(CAST(:afterId AS String) IS NULL OR w.id > :afterId) " +
+            "ORDER BY w.id")
+    List<Wagon> findPage(@Param("status") WagonStatus status,
+                         @Param("wagonType") WagonType wagonType,
+                         @Param("station") String station,
+                         @Param("afterId") UUID afterId,
+                         Limit limit);
+
 }
\ No newline at end of file
@@ -19,11 +19,11 @@ public interface WagonScheduleRepository extends JpaRepository<WagonSchedule, UU
 
     List<WagonSchedule> findByStatus(String status);
 
+    // Пересечение интервалов: рейс, целиком накрывающий окно, тоже конфликт
     @Query("SELECT ws FROM WagonSchedule ws WHERE " +
             "ws.wagon.id = :wagonId AND " +
             "ws.status IN ('запланирован', 'в_пути') AND " +
-            "((ws.departureDate BETWEEN :start AND :end) OR " +
-            "(ws.arrivalDate BETWEEN :start AND :end))")
+            "ws.departureDate <= :end AND ws.arrivalDate >= :start")
     List<WagonSchedule> findConflictingSchedules(@Param("wagonId") UUID wagonId,
                                                  @Param("start") OffsetDateTime start,
                                                  @Param("end") OffsetDateTime end);
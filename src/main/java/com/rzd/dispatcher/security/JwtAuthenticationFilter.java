@@ -1,27 +1,37 @@
 package com.rzd.dispatcher.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import io.jsonwebtoken.ExpiredJwtException;
 @Component
-@RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final PrincipalResolver principalResolver;
+    private final Timer filterTimer;
+
+    public JwtAuthenticationFilter(JwtService jwtService, PrincipalResolver principalResolver,
+                                   MeterRegistry meterRegistry) {
+        this.jwtService = jwtService;
+        this.principalResolver = principalResolver;
+        this.filterTimer = Timer.builder("security.jwt.filter")
+                .description("Время проверки токена и определения пользователя в фильтре")
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(
@@ -40,13 +50,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
+        long startedAt = System.nanoTime();
         try {
-            userEmail = jwtService.extractEmail(jwt);
+            // Подпись и срок проверяются один раз, повторно - из кэша проверенных токенов
+            VerifiedClaims claims = jwtService.validate(jwt);
+            userEmail = claims.email();
             
             if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+                // Для токенов с uid и role principal строится без запроса в БД
+                UserDetails userDetails = principalResolver.resolve(claims);
                 
-                if (jwtService.isTokenValid(jwt, userDetails.getUsername())) {
+                if (userDetails != null && userEmail.equals(userDetails.getUsername())) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
                             null,
@@ -57,13 +71,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                 }
             }
-            filterChain.doFilter(request, response);
         }catch (ExpiredJwtException e) {
+            filterTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
             
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED); 
             response.setContentType("application/json;charset=UTF-8");
             response.getWriter().write("{\"status\": 401, \"message\": \"Время действия токена истекло\"}");
             return; 
         }
+        filterTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+        filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+}
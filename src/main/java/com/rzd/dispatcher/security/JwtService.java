@@ -1,16 +1,29 @@
 package com.rzd.dispatcher.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.rzd.dispatcher.model.entity.User;
+import com.rzd.dispatcher.model.enums.Role;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Service
@@ -18,10 +31,45 @@ public class JwtService {
 
     private static final String SECRET_KEY = "VGhpc0lzQVZlcnlTZWNcmV0S2V5Rm9ySldUR2VuZXJhdGlvblVzaW5nU3ByaW5nQm9vdA==";
     
-    private static final long ACCESS_TOKEN_EXPIRATION = 1000 * 60 * 15;
+    static final long ACCESS_TOKEN_EXPIRATION = 1000 * 60 * 15;
+
+    private static final long VERIFIED_CACHE_MAX_SIZE = 10_000;
+
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLE_CLAIM = "role";
+
+    private final Key signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_KEY));
+
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(signInKey)
+            .build();
+
+    // Ключ - SHA-256 токена, запись живет ровно до истечения токена
+    private final Cache<String, VerifiedClaims> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(VERIFIED_CACHE_MAX_SIZE)
+            .expireAfter(new Expiry<String, VerifiedClaims>() {
+                @Override
+                public long expireAfterCreate(String key, VerifiedClaims claims, long currentTime) {
+                    long ttlMillis = Math.max(0, claims.expiresAtMillis() - System.currentTimeMillis());
+                    return TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, VerifiedClaims claims, long currentTime,
+                                              long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String key, VerifiedClaims claims, long currentTime,
+                                            long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
 
     public String extractEmail(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return validate(token).email();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -29,21 +77,62 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
-    public String generateAccessToken(String email) {
-        return generateToken(new HashMap<>(), email, ACCESS_TOKEN_EXPIRATION);
+    /**
+     * id и роль пользователя кладутся в токен, чтобы фильтр не загружал User из БД
+     */
+    public String generateAccessToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, user.getId().toString());
+        claims.put(ROLE_CLAIM, user.getRole().name());
+        return generateToken(claims, user.getEmail(), ACCESS_TOKEN_EXPIRATION);
     }
 
     public boolean isTokenValid(String token, String userEmail) {
-        final String email = extractEmail(token);
-        return (email.equals(userEmail)) && !isTokenExpired(token);
+        final VerifiedClaims claims = validate(token);
+        return claims.email().equals(userEmail) && !claims.isExpired();
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Проверка токена с разбором один раз: повторные запросы с тем же токеном
+     * берут результат из кэша без HMAC. Для просроченного токена - ExpiredJwtException.
+     */
+    public VerifiedClaims validate(String token) {
+        String tokenHash = hash(token);
+
+        VerifiedClaims cached = verifiedTokens.getIfPresent(tokenHash);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        Claims claims = extractAllClaims(token);
+        VerifiedClaims verified = toVerifiedClaims(claims);
+        if (verified.isExpired()) {
+            throw new ExpiredJwtException(null, claims, "Время действия токена истекло");
+        }
+
+        verifiedTokens.put(tokenHash, verified);
+        return verified;
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private VerifiedClaims toVerifiedClaims(Claims claims) {
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        String role = claims.get(ROLE_CLAIM, String.class);
+
+        Role parsedRole = null;
+        if (role != null) {
+            try {
+                parsedRole = Role.valueOf(role);
+            } catch (IllegalArgumentException e) {
+                parsedRole = null;
+            }
+        }
+
+        return new VerifiedClaims(
+                claims.getSubject(),
+                userId != null ? UUID.fromString(userId) : null,
+                parsedRole,
+                claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L,
+                claims.getExpiration().getTime());
     }
 
     private String generateToken(Map<String, Object> extraClaims, String subject, long expiration) {
@@ -52,20 +141,21 @@ public class JwtService {
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(SECRET_KEY);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.rzd.dispatcher.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rzd.dispatcher.model.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Определяет principal запроса без обращения к БД, если в токене есть uid и role.
+ * Для старых токенов без этих claims - загрузка через UserDetailsService,
+ * при security.principal-cache.enabled=true результат кэшируется на короткий TTL.
+ *
+ * При удалении пользователя или смене роли токены, выпущенные до этого момента,
+ * отклоняются до истечения их срока. Отметка хранится в Redis (jwt:revoked:{uid})
+ * и видна всем экземплярам; живет столько же, сколько access-токен.
+ */
+@Component
+@Slf4j
+public class PrincipalResolver {
+
+    static final String REVOKED_KEY_PREFIX = "jwt:revoked:";
+
+    // Позже отметки не может быть жив ни один токен, выпущенный до отзыва
+    private static final Duration REVOCATION_TTL = Duration.ofMillis(JwtService.ACCESS_TOKEN_EXPIRATION);
+
+    private final UserDetailsService userDetailsService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final boolean cacheEnabled;
+    private final Cache<String, AuthenticatedUser> principals;
+
+    public PrincipalResolver(UserDetailsService userDetailsService,
+                             RedisTemplate<String, String> redisTemplate,
+                             @Value("${security.principal-cache.enabled:false}") boolean cacheEnabled,
+                             @Value("${security.principal-cache.ttl-seconds:60}") long ttlSeconds,
+                             @Value("${security.principal-cache.max-size:1000}") long maxSize) {
+        this.userDetailsService = userDetailsService;
+        this.redisTemplate = redisTemplate;
+        this.cacheEnabled = cacheEnabled;
+        this.principals = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @return principal или null, если пользователь отозван
+     */
+    public UserDetails resolve(VerifiedClaims claims) {
+        if (claims.hasPrincipal()) {
+            if (isRevoked(claims.userId(), claims.issuedAtMillis())) {
+                return null;
+            }
+            return new AuthenticatedUser(claims.userId(), claims.email(), claims.role());
+        }
+
+        if (!cacheEnabled) {
+            return userDetailsService.loadUserByUsername(claims.email());
+        }
+
+        // После evict запись удалена, и данные перечитываются из БД
+        return principals.get(claims.email(), this::load);
+    }
+
+    /**
+     * Сброс кэша и отзыв principal - при удалении пользователя или смене роли
+     */
+    public void evict(UUID userId) {
+        // Значение - момент отзыва в миллисекундах
+        redisTemplate.opsForValue().set(REVOKED_KEY_PREFIX + userId,
+                String.valueOf(System.currentTimeMillis()), REVOCATION_TTL);
+        principals.asMap().values().removeIf(principal -> principal.id().equals(userId));
+        log.info("Principal пользователя {} отозван", userId);
+    }
+
+    // iat в токене округлен до секунды вниз, поэтому токен той же секунды, что и отзыв,
+    // тоже отклоняется: лишний повторный вход безопаснее пропущенного отзыва
+    private boolean isRevoked(UUID userId, long issuedAtMillis) {
+        String revokedAtMillis = redisTemplate.opsForValue().get(REVOKED_KEY_PREFIX + userId);
+        return revokedAtMillis != null && issuedAtMillis <= Long.parseLong(revokedAtMillis);
+    }
+
+    private AuthenticatedUser load(String email) {
+        UserDetails details = userDetailsService.loadUserByUsername(email);
+        User user = (User) details;
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getRole());
+    }
+}
@@ -0,0 +1,20 @@
+package com.rzd.dispatcher.security;
+
+import com.rzd.dispatcher.model.enums.Role;
+
+import java.util.UUID;
+
+/**
+ * Проверенные (подпись и срок) данные access токена.
+ * userId и role пусты у токенов, выпущенных до появления этих claims.
+ */
+public record VerifiedClaims(String email, UUID userId, Role role, long issuedAtMillis, long expiresAtMillis) {
+
+    public boolean isExpired() {
+        return expiresAtMillis <= System.currentTimeMillis();
+    }
+
+    public boolean hasPrincipal() {
+        return userId != null && role != null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.CompanyAccount;
+import com.rzd.dispatcher.repository.CompanyAccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Шардированный баланс счёта РЖД: все оплаты зачисляются на него, и блокировка
+ * одной строки company_accounts выстраивала платежи в очередь. Зачисление идёт
+ * в случайную строку account_balance_shards, полный баланс — основная строка
+ * плюс сумма шардов, фоновая консолидация переносит шарды на основную строку.
+ */
+@Component
+@Slf4j
+public class AccountBalanceShards {
+
+    private final CompanyAccountRepository accountRepository;
+    private final int shards;
+
+    private volatile Set<String> shardedAccounts = Set.of();
+
+    private final Counter consolidated;
+    private final Counter withdrawFallbacks;
+
+    public AccountBalanceShards(CompanyAccountRepository accountRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${account-sharding.shards:16}") int shards) {
+        this.accountRepository = accountRepository;
+        this.shards = shards;
+        this.consolidated = meterRegistry.counter("account.shards.consolidated");
+        this.withdrawFallbacks = meterRegistry.counter("account.shards.withdraw.fallbacks");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void init() {
+        if (shards <= 1) {
+            log.info("Шардирование счёта РЖД отключено (account-sharding.shards={})", shards);
+            consolidateLeftovers();
+            return;
+        }
+        accountRepository.findByIsRzdAccountTrue().ifPresentOrElse(rzd -> {
+            accountRepository.createShards(rzd.getAccountNumber(), shards);
+            shardedAccounts = Set.of(rzd.getAccountNumber());
+            log.info("Баланс счёта РЖД {} разнесён на {} шардов", rzd.getAccountNumber(), shards);
+        }, () -> log.warn("Счёт РЖД не найден, шардирование баланса не включено"));
+    }
+
+    /**
+     * Без шардирования шарды никто не читает: деньги, зачисленные туда при прежней
+     * настройке, выпали бы из баланса, поэтому при старте переносим их на основные строки
+     */
+    private void consolidateLeftovers() {
+        for (String accountNumber : accountRepository.findAccountNumbersWithShardBalance()) {
+            accountRepository.consolidateShards(accountNumber);
+            BigDecimal left = accountRepository.sumShards(accountNumber);
+            if (left.signum() > 0) {
+                throw new RuntimeException("Не удалось перенести шарды счёта " + accountNumber
+                        + " на основную строку, осталось " + left);
+            }
+            log.info("Шарды счёта {} перенесены на основную строку: шардирование отключено", accountNumber);
+        }
+    }
+
+    public boolean isSharded(String accountNumber) {
+        return shardedAccounts.contains(accountNumber);
+    }
+
+    public void deposit(String accountNumber, BigDecimal amount) {
+        if (accountRepository.depositToShard(accountNumber, pickShard(), amount) == 0
+                && accountRepository.deposit(accountNumber, amount) == 0) {
+            throw new RuntimeException("Ошибка зачисления на счет " + accountNumber);
+        }
+    }
+
+    // Случайный шард размазывает конкурирующие зачисления по строкам
+    public int pickShard() {
+        return ThreadLocalRandom.current().nextInt(shards);
+    }
+
+    /**
+     * Списание не уложилось ни в основную строку, ни в один шард: сумма разнесена
+     * по нескольким шардам, переносим их на основную строку перед повтором
+     */
+    public void consolidateForWithdraw(String accountNumber) {
+        withdrawFallbacks.increment();
+        accountRepository.consolidateShards(accountNumber);
+    }
+
+    public BigDecimal totalBalance(CompanyAccount account) {
+        BigDecimal main = account.getBalance() != null ? account.getBalance() : BigDecimal.ZERO;
+        return main.add(accountRepository.sumShards(account.getAccountNumber()));
+    }
+
+    @Scheduled(fixedDelayString = "${account-sharding.consolidate-interval-ms:60000}",
+            initialDelayString = "${account-sharding.consolidate-interval-ms:60000}")
+    @Transactional
+    public void consolidate() {
+        for (String accountNumber : shardedAccounts) {
+            if (accountRepository.consolidateShards(accountNumber) > 0) {
+                consolidated.increment();
+                log.debug("Шарды счёта {} перенесены на основную строку", accountNumber);
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package com.rzd.dispatcher.service;
 
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.LedgerEntryResponse;
 import com.rzd.dispatcher.model.entity.CompanyAccount;
+import com.rzd.dispatcher.repository.AccountTransferRepository;
+import com.rzd.dispatcher.repository.AccountTransferRepository.TransferRow;
 import com.rzd.dispatcher.repository.CompanyAccountRepository;
+import com.rzd.dispatcher.repository.LedgerRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
@@ -12,7 +17,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -20,10 +26,15 @@ import java.util.UUID;
 public class AccountService {
 
     private final CompanyAccountRepository accountRepository;
+    private final AccountTransferRepository transferRepository;
+    private final AccountBalanceShards balanceShards;
+    private final LedgerRepository ledgerRepository;
+    private final LedgerWriter ledgerWriter;
     @PersistenceContext
     private EntityManager entityManager;
 
 
+    @Transactional
     public CompanyAccount createAccount(String inn, String companyName,
                                         String bik, String bankName,
                                         boolean isMain) {
@@ -53,6 +64,7 @@ public class AccountService {
         account.setUpdatedAt(OffsetDateTime.now());
 
         CompanyAccount savedAccount = accountRepository.save(account);
+        ledgerWriter.external(accountNumber, savedAccount.getBalance(), null, "Открытие счета");
         log.info("Счет создан: {} для ИНН: {} с балансом {} руб",
                 savedAccount.getAccountNumber(), inn, savedAccount.getBalance());
 
@@ -61,81 +73,166 @@ public class AccountService {
 
     @Transactional(readOnly = true)
     public List<CompanyAccount> getAccountsByInn(String inn) {
-        return accountRepository.findAllByInnOrderByIsMainDescCreatedAtDesc(inn);
+        List<CompanyAccount> accounts = accountRepository.findAllByInnOrderByIsMainDescCreatedAtDesc(inn);
+        showLedgerBalances(accounts);
+        return accounts;
     }
 
     @Transactional(readOnly = true)
     public CompanyAccount getAccountByNumber(String accountNumber) {
-        return accountRepository.findByAccountNumber(accountNumber)
+        CompanyAccount account = accountRepository.findByAccountNumber(accountNumber)
                 .orElseThrow(() -> new RuntimeException("Счет не найден: " + accountNumber));
+        showLedgerBalances(List.of(account));
+        return account;
     }
 
+    /**
+     * Баланс по журналу: снимок плюс проводки после него
+     */
     @Transactional(readOnly = true)
     public BigDecimal getBalance(String accountNumber) {
-        return accountRepository.findByAccountNumber(accountNumber)
-                .map(CompanyAccount::getBalance)
+        return ledgerRepository.balance(accountNumber)
                 .orElseThrow(() -> new RuntimeException("Счет не найден: " + accountNumber));
     }
 
+    /**
+     * Выписка по счету из журнала, от новых проводок к старым
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<LedgerEntryResponse> getLedger(String accountNumber, String cursor, Integer limit) {
+        if (!accountRepository.existsByAccountNumber(accountNumber)) {
+            throw new RuntimeException("Счет не найден: " + accountNumber);
+        }
+        int pageSize = CursorPage.normalizeLimit(limit);
+        List<LedgerEntryResponse> rows = ledgerRepository.findByAccount(accountNumber,
+                CursorPage.decodeSequence(cursor), pageSize + 1);
+        return CursorPage.of(rows, pageSize, entry -> entry, entry -> CursorPage.encode(entry.getId()));
+    }
+
+    /**
+     * Баланс счета в текущей транзакции (с ее незафиксированными изменениями):
+     * у шардированного счета РЖД - основная строка плюс шарды
+     */
+    public BigDecimal balanceOf(CompanyAccount account) {
+        return balanceShards.isSharded(account.getAccountNumber())
+                ? balanceShards.totalBalance(account)
+                : account.getBalance();
+    }
+
+    /**
+     * Зачисление без перевода (подтверждение оплаты банком); на счет РЖД - в шард
+     */
+    @Transactional
+    public void deposit(String accountNumber, BigDecimal amount, String reference, String description) {
+        if (balanceShards.isSharded(accountNumber)) {
+            balanceShards.deposit(accountNumber, amount);
+        } else if (accountRepository.deposit(accountNumber, amount) == 0) {
+            throw new RuntimeException("Ошибка зачисления на счет " + accountNumber);
+        }
+        ledgerWriter.external(accountNumber, amount, reference, description);
+    }
 
+    // Отсоединенные копии с балансом по журналу, чтобы он не попал в строку счета при flush
+    private void showLedgerBalances(List<CompanyAccount> accounts) {
+        Map<String, BigDecimal> balances = ledgerRepository.balances(
+                accounts.stream().map(CompanyAccount::getAccountNumber).toList());
+        for (CompanyAccount account : accounts) {
+            entityManager.detach(account);
+            account.setBalance(balances.getOrDefault(account.getAccountNumber(), account.getBalance()));
+        }
+    }
+
+
+    /**
+     * Перевод одним запросом (AccountTransferRepository): блокировки в едином порядке,
+     * балансы до и после берутся из того же запроса, счета после перевода не перечитываются
+     */
+    @Transactional
     public TransferResult transferMoney(String fromAccountNumber, String toAccountNumber,
                                         BigDecimal amount, String description) {
+        return transferMoney(fromAccountNumber, toAccountNumber, amount, null, description);
+    }
+
+    /**
+     * @param reference бизнес-ссылка проводок в журнале (payment_id платежа), может быть null
+     */
+    @Transactional
+    public TransferResult transferMoney(String fromAccountNumber, String toAccountNumber,
+                                        BigDecimal amount, String reference, String description) {
         log.info("Счет отправителя: {}", fromAccountNumber);
         log.info("Счет получателя: {}", toAccountNumber);
         log.info("Сумма перевода: {} руб", amount);
 
-        CompanyAccount fromAccount = accountRepository.findByAccountNumberForUpdate(fromAccountNumber)
-                .orElseThrow(() -> new RuntimeException("Счет отправителя не найден: " + fromAccountNumber));
-        CompanyAccount toAccount = accountRepository.findByAccountNumberForUpdate(toAccountNumber)
-                .orElseThrow(() -> new RuntimeException("Счет получателя не найден: " + toAccountNumber));
-
-        BigDecimal beforeFrom = fromAccount.getBalance();
-        BigDecimal beforeTo = toAccount.getBalance();
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            throw new RuntimeException("Счета отправителя и получателя совпадают");
+        }
 
-        log.info("До операции");
-        log.info("Отправитель ({}): {} руб", fromAccount.getCompanyName(), beforeFrom);
-        log.info("Получатель ({}): {} руб", toAccount.getCompanyName(), beforeTo);
+        // Запрос идет мимо Hibernate: несохраненные изменения вызывающего должны попасть в БД раньше
+        entityManager.flush();
 
-        if (beforeFrom.compareTo(amount) < 0) {
-            String errorMsg = String.format("Недостаточно средств. Доступно: %.2f руб", beforeFrom);
-            log.error("Ошибка: {}", errorMsg);
-            return TransferResult.failed(fromAccount, toAccount, amount, errorMsg, description);
+        TransferRow row = executeTransfer(fromAccountNumber, toAccountNumber, amount);
+        if (!row.enough() && balanceShards.isSharded(fromAccountNumber)
+                && row.fromBefore().compareTo(amount) >= 0) {
+            balanceShards.consolidateForWithdraw(fromAccountNumber);
+            row = executeTransfer(fromAccountNumber, toAccountNumber, amount);
         }
 
-        int withdrawn = accountRepository.withdraw(fromAccountNumber, amount);
-        if (withdrawn == 0) {
-            String errorMsg = "Не удалось списать средства";
+        if (!row.enough()) {
+            String errorMsg = String.format("Недостаточно средств. Доступно: %.2f руб", row.fromBefore());
             log.error("Ошибка: {}", errorMsg);
-            return TransferResult.failed(fromAccount, toAccount, amount, errorMsg, description);
+            return toResult(row, false, errorMsg, fromAccountNumber, toAccountNumber, amount, description);
         }
-
-        int deposited = accountRepository.deposit(toAccountNumber, amount);
-        if (deposited == 0) {
-            accountRepository.deposit(fromAccountNumber, amount);
+        if (!row.completed()) {
+            // Исключение откатывает и уже выполненное списание
             throw new RuntimeException("Ошибка зачисления");
         }
 
-        entityManager.flush();
-        entityManager.clear();
-
-        CompanyAccount updatedFromAccount = accountRepository.findByAccountNumber(fromAccountNumber)
-                .orElseThrow(() -> new RuntimeException("Счет отправителя не найден"));
-        CompanyAccount updatedToAccount = accountRepository.findByAccountNumber(toAccountNumber)
-                .orElseThrow(() -> new RuntimeException("Счет получателя не найден"));
-
-        log.info("После операции");
-        log.info("Отправитель ({}):", updatedFromAccount.getCompanyName());
-        log.info("Было: {} руб", beforeFrom);
-        log.info("Списано: {} руб", amount);
-        log.info("Стало: {} руб ", updatedFromAccount.getBalance());
-        log.info("");
-        log.info("Получатель ({}):", updatedToAccount.getCompanyName());
-        log.info("Было: {} руб", beforeTo);
-        log.info("Зачислено: {} руб", amount);
-        log.info("Стало: {} руб ", updatedToAccount.getBalance());
-
-        return TransferResult.success(updatedFromAccount, updatedToAccount, amount,
-                beforeFrom, beforeTo, description);
+        ledgerWriter.transfer(fromAccountNumber, toAccountNumber, amount, reference, description);
+
+        TransferResult result = toResult(row, true, "Перевод выполнен успешно",
+                fromAccountNumber, toAccountNumber, amount, description);
+        log.info("Отправитель ({}): было {} руб, списано {} руб, стало {} руб",
+                result.getFromName(), result.getFromBalanceBefore(), amount, result.getFromBalanceAfter());
+        log.info("Получатель ({}): было {} руб, зачислено {} руб, стало {} руб",
+                result.getToName(), result.getToBalanceBefore(), amount, result.getToBalanceAfter());
+        return result;
+    }
+
+    private TransferRow executeTransfer(String fromAccountNumber, String toAccountNumber, BigDecimal amount) {
+        Optional<TransferRow> row;
+        if (balanceShards.isSharded(toAccountNumber)) {
+            row = transferRepository.transferToShard(fromAccountNumber, toAccountNumber,
+                    balanceShards.pickShard(), amount);
+        } else if (balanceShards.isSharded(fromAccountNumber)) {
+            row = transferRepository.transferFromShards(fromAccountNumber, toAccountNumber, amount);
+        } else {
+            row = transferRepository.transfer(fromAccountNumber, toAccountNumber, amount);
+        }
+        return row.orElseThrow(() -> new RuntimeException(accountRepository.existsByAccountNumber(fromAccountNumber)
+                ? "Счет получателя не найден: " + toAccountNumber
+                : "Счет отправителя не найден: " + fromAccountNumber));
+    }
+
+    private static TransferResult toResult(TransferRow row, boolean success, String message,
+                                           String fromAccountNumber, String toAccountNumber,
+                                           BigDecimal amount, String description) {
+        BigDecimal moved = success ? amount : BigDecimal.ZERO;
+        return TransferResult.builder()
+                .success(success)
+                .message(message)
+                .fromAccountNumber(fromAccountNumber)
+                .fromInn(row.fromInn())
+                .fromName(row.fromName())
+                .toAccountNumber(toAccountNumber)
+                .toInn(row.toInn())
+                .toName(row.toName())
+                .fromBalanceBefore(row.fromBefore())
+                .fromBalanceAfter(row.fromBefore().subtract(moved))
+                .toBalanceBefore(row.toBefore())
+                .toBalanceAfter(row.toBefore().add(moved))
+                .amount(amount)
+                .description(description)
+                .build();
     }
 
     private String generateUniqueAccountNumber() {
@@ -166,28 +263,5 @@ public class AccountService {
         private BigDecimal toBalanceAfter;
         private BigDecimal amount;
         private String description;
-
-        public static TransferResult success(CompanyAccount from, CompanyAccount to,
-                                             BigDecimal amount,
-                                             BigDecimal beforeFrom, BigDecimal beforeTo,
-                                             String description) {
-            return new TransferResult(true, "Перевод выполнен успешно",
-                    from.getAccountNumber(), from.getInn(), from.getCompanyName(),
-                    to.getAccountNumber(), to.getInn(), to.getCompanyName(),
-                    beforeFrom, from.getBalance(),
-                    beforeTo, to.getBalance(),
-                    amount, description);
-        }
-
-        public static TransferResult failed(CompanyAccount from, CompanyAccount to,
-                                            BigDecimal amount, String error,
-                                            String description) {
-            return new TransferResult(false, error,
-                    from.getAccountNumber(), from.getInn(), from.getCompanyName(),
-                    to.getAccountNumber(), to.getInn(), to.getCompanyName(),
-                    from.getBalance(), from.getBalance(),
-                    to.getBalance(), to.getBalance(),
-                    amount, description);
-        }
     }
 }
\ No newline at end of file
@@ -6,7 +6,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -16,75 +15,43 @@ import java.util.Set;
 public class AdditionalServicesService {
 
 
-    private static final BigDecimal INSURANCE_RATE = new BigDecimal("0.02");
-    private static final BigDecimal MIN_INSURANCE = new BigDecimal("3000.00");
-    private static final BigDecimal BASE_CARGO_VALUE_PER_TON = new BigDecimal("100000");
+    private static final BigDecimal MIN_INSURANCE = PricingKernel.toRubles(PricingKernel.MIN_INSURANCE_KOPECKS);
 
+    // Коэффициенты стоимости груза в десятых долях
+    private static final int ELECTRONICS_COEFF = 20;
+    private static final int DANGEROUS_COEFF = 15;
+    private static final int PERISHABLE_COEFF = 13;
+    private static final int MACHINERY_COEFF = 18;
+    private static final int METAL_COEFF = 8;
+    private static final int RAW_COEFF = 7;
+    private static final int DEFAULT_COEFF = 10;
 
-    private static final BigDecimal ELECTRONICS_COEFF = new BigDecimal("2.0");
-    private static final BigDecimal DANGEROUS_COEFF = new BigDecimal("1.5");
-    private static final BigDecimal PERISHABLE_COEFF = new BigDecimal("1.3");
-    private static final BigDecimal MACHINERY_COEFF = new BigDecimal("1.8");
-    private static final BigDecimal METAL_COEFF = new BigDecimal("0.8");
 
-
-    private static final BigDecimal ESCORT_FIXED_PRICE = new BigDecimal("15000.00");
+    private static final BigDecimal ESCORT_FIXED_PRICE = PricingKernel.toRubles(PricingKernel.ESCORT_KOPECKS);
     private static final int ESCORT_WEIGHT_THRESHOLD = 50000;
 
 
-    private static final BigDecimal EXPRESS_RATE = new BigDecimal("0.30");
-
-
     private static final BigDecimal TERMINAL_RATE_PER_TON = new BigDecimal("500");
 
 
-    private static final BigDecimal GPS_RATE_PER_KM = new BigDecimal("10");
-    private static final BigDecimal MIN_GPS_PRICE = new BigDecimal("2000.00");
-
-
-    private static final BigDecimal CUSTOMS_FIXED_PRICE = new BigDecimal("25000.00");
-
-
-    private static final BigDecimal LIABILITY_INSURANCE_RATE = new BigDecimal("0.01");
+    private static final BigDecimal CUSTOMS_FIXED_PRICE = PricingKernel.toRubles(PricingKernel.CUSTOMS_KOPECKS);
 
     public BigDecimal calculateInsurancePrice(String cargoType, Integer weightKg) {
+        long insuranceKopecks = PricingKernel.insuranceKopecks(weightKg, getCargoCoefficient(cargoType));
 
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-
-        BigDecimal coefficient = getCargoCoefficient(cargoType);
-
-
-        BigDecimal cargoValue = weightTons
-                .multiply(BASE_CARGO_VALUE_PER_TON)
-                .multiply(coefficient)
-                .setScale(2, RoundingMode.HALF_UP);
-
-
-        BigDecimal insurancePrice = cargoValue
-                .multiply(INSURANCE_RATE)
-                .setScale(2, RoundingMode.HALF_UP);
+        log.debug("Страхование: вес={}кг, страхование={} коп", weightKg, insuranceKopecks);
 
-
-        if (insurancePrice.compareTo(MIN_INSURANCE) < 0) {
-            insurancePrice = MIN_INSURANCE;
-        }
-
-        log.info("Страхование: вес={}кг, коэф={}, стоимость груза={} руб, страхование={} руб",
-                weightKg, coefficient, cargoValue, insurancePrice);
-
-        return insurancePrice;
+        return insuranceKopecks == PricingKernel.MIN_INSURANCE_KOPECKS
+                ? MIN_INSURANCE
+                : PricingKernel.toRubles(insuranceKopecks);
     }
 
     public BigDecimal calculateLiabilityInsurance(BigDecimal freightPrice) {
-        return freightPrice
-                .multiply(LIABILITY_INSURANCE_RATE)
-                .setScale(2, RoundingMode.HALF_UP);
+        return PricingKernel.toRubles(PricingKernel.liabilityKopecks(PricingKernel.hundredths(freightPrice)));
     }
 
-    private BigDecimal getCargoCoefficient(String cargoType) {
-        if (cargoType == null) return BigDecimal.ONE;
+    private int getCargoCoefficient(String cargoType) {
+        if (cargoType == null) return DEFAULT_COEFF;
 
         String type = cargoType.toLowerCase();
 
@@ -99,9 +66,9 @@ public class AdditionalServicesService {
         } else if (type.contains("метал") || type.contains("сталь") || type.contains("чугун")) {
             return METAL_COEFF;
         } else if (type.contains("уголь") || type.contains("руда")) {
-            return new BigDecimal("0.7");
+            return RAW_COEFF;
         } else {
-            return BigDecimal.ONE;
+            return DEFAULT_COEFF;
         }
     }
 
@@ -145,15 +112,7 @@ public class AdditionalServicesService {
      * ОЦЕНКА СТОИМОСТИ ГРУЗА (для отображения)
      */
     public BigDecimal estimateCargoValue(String cargoType, Integer weightKg) {
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-        BigDecimal coefficient = getCargoCoefficient(cargoType);
-
-        return weightTons
-                .multiply(BASE_CARGO_VALUE_PER_TON)
-                .multiply(coefficient)
-                .setScale(2, RoundingMode.HALF_UP);
+        return PricingKernel.toRubles(PricingKernel.cargoValueKopecks(weightKg, getCargoCoefficient(cargoType)));
     }
 
     /**
@@ -207,9 +166,8 @@ public class AdditionalServicesService {
                 .build());
 
 
-        BigDecimal expressPrice = basePrice
-                .multiply(EXPRESS_RATE)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal expressPrice = PricingKernel.toRubles(
+                PricingKernel.expressKopecks(PricingKernel.hundredths(basePrice)));
         services.add(AdditionalServiceDto.builder()
                 .name("Ускоренная доставка")
                 .code("EXPRESS")
@@ -221,11 +179,7 @@ public class AdditionalServicesService {
                 .build());
 
 
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-        BigDecimal terminalPrice = weightTons
-                .multiply(TERMINAL_RATE_PER_TON)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal terminalPrice = PricingKernel.toRubles(PricingKernel.terminalKopecks(weightKg));
         services.add(AdditionalServiceDto.builder()
                 .name("Терминальная обработка")
                 .code("TERMINAL")
@@ -237,19 +191,6 @@ public class AdditionalServicesService {
                 .build());
 
 
-        BigDecimal gpsPrice;
-        if (distanceKm != null && distanceKm > 0) {
-            gpsPrice = new BigDecimal(distanceKm)
-                    .multiply(GPS_RATE_PER_KM)
-                    .setScale(2, RoundingMode.HALF_UP);
-            if (gpsPrice.compareTo(MIN_GPS_PRICE) < 0) {
-                gpsPrice = MIN_GPS_PRICE;
-            }
-        } else {
-            gpsPrice = MIN_GPS_PRICE;
-        }
-
-
 
         boolean isInternational = isInternationalRoute(departureStation, destinationStation);
         if (isInternational) {
@@ -451,49 +392,39 @@ public class AdditionalServicesService {
             return BigDecimal.ZERO;
         }
 
-        BigDecimal total = BigDecimal.ZERO;
+        // Сумма в сотых долях копейки: экспресс входит в нее без округления,
+        // округляется только итог - как при сложении BigDecimal и финальном setScale(2)
+        long total = 0;
 
         for (String code : selectedServiceCodes) {
             switch (code) {
                 case "INSURANCE":
-                    total = total.add(calculateInsurancePrice(cargoType, weightKg));
+                    total += PricingKernel.insuranceKopecks(weightKg, getCargoCoefficient(cargoType)) * 100;
                     break;
 
                 case "LIABILITY_INSURANCE":
-                    total = total.add(calculateLiabilityInsurance(basePrice));
+                    total += PricingKernel.liabilityKopecks(PricingKernel.hundredths(basePrice)) * 100;
                     break;
 
                 case "ESCORT":
-                    total = total.add(ESCORT_FIXED_PRICE);
+                    total += PricingKernel.ESCORT_KOPECKS * 100;
                     break;
 
                 case "EXPRESS":
-                    total = total.add(basePrice.multiply(EXPRESS_RATE));
+                    total += PricingKernel.expressHundredthKopecks(PricingKernel.hundredths(basePrice));
                     break;
 
                 case "TERMINAL":
-                    BigDecimal weightTons = new BigDecimal(weightKg)
-                            .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-                    total = total.add(weightTons.multiply(TERMINAL_RATE_PER_TON));
+                    total += PricingKernel.terminalKopecks(weightKg) * 100;
                     break;
 
                 case "TRACKING":
-                    if (distanceKm != null && distanceKm > 0) {
-                        BigDecimal gpsPrice = new BigDecimal(distanceKm)
-                                .multiply(GPS_RATE_PER_KM)
-                                .setScale(2, RoundingMode.HALF_UP);
-                        if (gpsPrice.compareTo(MIN_GPS_PRICE) < 0) {
-                            gpsPrice = MIN_GPS_PRICE;
-                        }
-                        total = total.add(gpsPrice);
-                    } else {
-                        total = total.add(MIN_GPS_PRICE);
-                    }
+                    total += PricingKernel.gpsKopecks(distanceKm) * 100;
                     break;
 
                 case "CUSTOMS":
                     if (isInternationalRoute(departureStation, destinationStation)) {
-                        total = total.add(CUSTOMS_FIXED_PRICE);
+                        total += PricingKernel.CUSTOMS_KOPECKS * 100;
                     }
                     break;
 
@@ -503,7 +434,7 @@ public class AdditionalServicesService {
             }
         }
 
-        return total.setScale(2, RoundingMode.HALF_UP);
+        return PricingKernel.toRubles(PricingKernel.roundHalfUp(total, 100));
     }
 
     private String formatPrice(BigDecimal price) {
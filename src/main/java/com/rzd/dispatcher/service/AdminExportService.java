@@ -0,0 +1,220 @@
+package com.rzd.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rzd.dispatcher.model.dto.response.OrderResponse;
+import com.rzd.dispatcher.model.dto.response.PaymentResponse;
+import com.rzd.dispatcher.model.entity.Payment.PaymentStatus;
+import com.rzd.dispatcher.model.enums.CargoType;
+import com.rzd.dispatcher.model.enums.OrderStatus;
+import com.rzd.dispatcher.model.enums.PackagingType;
+import com.rzd.dispatcher.model.enums.ServiceName;
+import com.rzd.dispatcher.model.enums.WagonType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Потоковая выгрузка больших таблиц в NDJSON (одна JSON-строка на запись).
+ * Строки читаются forward-only курсором PostgreSQL порциями по FETCH_SIZE
+ * и сразу пишутся в ответ, поэтому память не зависит от размера таблицы.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdminExportService {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int FLUSH_EVERY = 1000;
+
+    private static final String ORDERS_SQL =
+            "SELECT o.id, o.user_id, u.company_name, o.departure_station, o.destination_station, " +
+            "o.requested_wagon_type, o.wagon_id, w.wagon_number, o.status, o.total_price, " +
+            "o.carbon_footprint_kg, o.created_at, o.delivered_at, " +
+            "c.cargo_type, c.weight_kg, c.volume_m3, c.packaging_type, " +
+            "(SELECT string_agg(os.service_name::text || ':' || os.price::text, ';') " +
+            " FROM order_services os WHERE os.order_id = o.id) AS services " +
+            "FROM orders o " +
+            "JOIN users u ON u.id = o.user_id " +
+            "LEFT JOIN wagons w ON w.id = o.wagon_id " +
+            "LEFT JOIN cargo c ON c.order_id = o.id";
+
+    private static final String PAYMENTS_SQL =
+            "SELECT p.id, p.order_id, p.payment_id, p.amount, p.status, p.payment_method, " +
+            "p.company_name, p.inn, p.kpp, p.bik, p.account_number, p.bank_name, " +
+            "p.payment_document, p.payment_purpose, p.created_at, p.paid_at " +
+            "FROM payments p";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void exportOrders(OrderStatus status, OutputStream out) {
+        StringBuilder sql = new StringBuilder(ORDERS_SQL);
+        List<Object> args = new ArrayList<>();
+        if (status != null) {
+            sql.append(" WHERE o.status = ?");
+            args.add(status.name());
+        }
+        sql.append(" ORDER BY o.created_at DESC, o.id DESC");
+
+        long count = stream(sql.toString(), args, out, this::mapOrder);
+        log.info("Выгрузка заказов завершена: {} записей", count);
+    }
+
+    public void exportPayments(PaymentStatus status, String inn, OutputStream out) {
+        StringBuilder sql = new StringBuilder(PAYMENTS_SQL);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (status != null) {
+            conditions.add("p.status = ?");
+            args.add(status.name());
+        }
+        if (inn != null) {
+            conditions.add("p.inn = ?");
+            args.add(inn);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY p.created_at DESC, p.id DESC");
+
+        long count = stream(sql.toString(), args, out, this::mapPayment);
+        log.info("Выгрузка платежей завершена: {} записей", count);
+    }
+
+    /**
+     * Драйвер PostgreSQL читает порциями только при выключенном autocommit,
+     * поэтому курсор открывается в собственной read-only транзакции на соединении,
+     * которая откатывается по окончании выгрузки.
+     */
+    private long stream(String sql, List<Object> args, OutputStream out, RowConverter mapper) {
+        Long count = jdbcTemplate.execute((Connection connection) -> {
+            boolean autoCommit = connection.getAutoCommit();
+            boolean readOnly = connection.isReadOnly();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    return writeRows(rs, out, mapper);
+                }
+            } finally {
+                connection.rollback();
+                connection.setReadOnly(readOnly);
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        return count != null ? count : 0;
+    }
+
+    private long writeRows(ResultSet rs, OutputStream out, RowConverter mapper) throws SQLException {
+        try {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            long count = 0;
+            while (rs.next()) {
+                generator.writeObject(mapper.map(rs));
+                generator.writeRaw('\n');
+                if (++count % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+            generator.close();
+            return count;
+        } catch (IOException e) {
+            // Клиент закрыл соединение — курсор закрывается вместе с транзакцией
+            throw new UncheckedIOException("Ошибка записи выгрузки", e);
+        }
+    }
+
+    private OrderResponse mapOrder(ResultSet rs) throws SQLException {
+        OrderResponse.OrderResponseBuilder builder = OrderResponse.builder()
+                .id(rs.getObject("id", UUID.class))
+                .userId(rs.getObject("user_id", UUID.class))
+                .companyName(rs.getString("company_name"))
+                .departureStation(rs.getString("departure_station"))
+                .destinationStation(rs.getString("destination_station"))
+                .requestedWagonType(WagonType.valueOf(rs.getString("requested_wagon_type")))
+                .wagonId(rs.getObject("wagon_id", UUID.class))
+                .wagonNumber(rs.getString("wagon_number"))
+                .status(enumOrNull(OrderStatus.class, rs.getString("status")))
+                .totalPrice(rs.getBigDecimal("total_price"))
+                .carbonFootprintKg(rs.getBigDecimal("carbon_footprint_kg"))
+                .createdAt(rs.getObject("created_at", OffsetDateTime.class))
+                .deliveredAt(rs.getObject("delivered_at", OffsetDateTime.class));
+
+        String cargoType = rs.getString("cargo_type");
+        if (cargoType != null) {
+            builder.cargo(OrderResponse.CargoDto.builder()
+                    .cargoType(CargoType.valueOf(cargoType))
+                    .weightKg(rs.getInt("weight_kg"))
+                    .volumeM3(rs.getInt("volume_m3"))
+                    .packagingType(PackagingType.valueOf(rs.getString("packaging_type")))
+                    .build());
+        }
+
+        String services = rs.getString("services");
+        if (services != null) {
+            List<OrderResponse.ServiceDto> items = new ArrayList<>();
+            for (String service : services.split(";")) {
+                int separator = service.lastIndexOf(':');
+                items.add(OrderResponse.ServiceDto.builder()
+                        .serviceName(ServiceName.valueOf(service.substring(0, separator)))
+                        .price(new BigDecimal(service.substring(separator + 1)))
+                        .build());
+            }
+            builder.services(items);
+        }
+
+        return builder.build();
+    }
+
+    private PaymentResponse mapPayment(ResultSet rs) throws SQLException {
+        return PaymentResponse.builder()
+                .id(rs.getObject("id", UUID.class))
+                .orderId(rs.getObject("order_id", UUID.class))
+                .paymentId(rs.getString("payment_id"))
+                .amount(rs.getBigDecimal("amount"))
+                .status(rs.getString("status"))
+                .paymentMethod(rs.getString("payment_method"))
+                .companyName(rs.getString("company_name"))
+                .inn(rs.getString("inn"))
+                .kpp(rs.getString("kpp"))
+                .bik(rs.getString("bik"))
+                .accountNumber(rs.getString("account_number"))
+                .bankName(rs.getString("bank_name"))
+                .paymentDocument(rs.getString("payment_document"))
+                .paymentPurpose(rs.getString("payment_purpose"))
+                .createdAt(rs.getObject("created_at", OffsetDateTime.class))
+                .paidAt(rs.getObject("paid_at", OffsetDateTime.class))
+                .build();
+    }
+
+    private static <E extends Enum<E>> E enumOrNull(Class<E> type, String value) {
+        return value != null ? Enum.valueOf(type, value) : null;
+    }
+
+    @FunctionalInterface
+    private interface RowConverter {
+        Object map(ResultSet rs) throws SQLException;
+    }
+}
@@ -81,7 +81,7 @@ public class AuthService {
         userRepository.save(user);
         log.info("Пользователь успешно сохранен в БД с ID: {}", user.getId());
 
-        var jwtToken = jwtService.generateAccessToken(user.getEmail());
+        var jwtToken = jwtService.generateAccessToken(user);
         var refreshToken = refreshTokenService.createRefreshToken(user.getEmail());
 
         return AuthResponse.builder()
@@ -103,7 +103,7 @@ public class AuthService {
         log.info("Пользователь успешно вошел: {}, тип: {}",
                 user.getEmail(), user.getUserType());
 
-        var jwtToken = jwtService.generateAccessToken(user.getEmail());
+        var jwtToken = jwtService.generateAccessToken(user);
         var refreshToken = refreshTokenService.createRefreshToken(user.getEmail());
 
         return AuthResponse.builder()
@@ -124,7 +124,11 @@ public class AuthService {
 
         log.info("Обновление токена для пользователя: {}", userEmail);
 
-        var accessToken = jwtService.generateAccessToken(userEmail);
+        // Роль перечитывается из БД, чтобы новый токен отражал текущие права
+        var user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new RuntimeException("Пользователь не найден в БД"));
+
+        var accessToken = jwtService.generateAccessToken(user);
 
         return AuthResponse.builder()
                 .accessToken(accessToken)
@@ -0,0 +1,327 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.dto.response.StationSuggestionResponse;
+import com.rzd.dispatcher.model.enums.WagonType;
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * Свободный парк по станциям в памяти для подсказок станций: биграммный индекс
+ * по названиям (подстрока в любом месте, как ILIKE '%q%') и счётчики свободных
+ * вагонов по типам. Счётчики обновляются точечно по событиям смены вагонов,
+ * полная перезагрузка из БД — при старте и периодически как страховка.
+ */
+@Component
+@ConditionalOnProperty(name = "station-search.in-memory", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class FreeFleetIndex {
+
+    public static final int MIN_QUERY_LENGTH = 2;
+
+    private static final String FREE_WAGONS_SQL =
+            "SELECT id, current_station, wagon_type FROM wagons WHERE status = 'свободен'";
+
+    private static final String WAGONS_BY_ID_SQL =
+            "SELECT id, current_station, wagon_type, status FROM wagons WHERE id = ANY (?)";
+
+    private static final WagonType[] TYPES = WagonType.values();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Вклад каждого свободного вагона в счётчики: по нему снимается прежнее состояние
+    private final Map<UUID, FreeWagon> freeWagons = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.build(Map.of());
+    private volatile boolean ready;
+
+    private final Counter updates;
+    private final Counter reloads;
+
+    public FreeFleetIndex(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.updates = meterRegistry.counter("free.fleet.updates");
+        this.reloads = meterRegistry.counter("free.fleet.reloads");
+        Gauge.builder("free.fleet.stations", this, index -> index.snapshot.names.length).register(meterRegistry);
+    }
+
+    private record FreeWagon(String station, int type) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        freeWagons.clear();
+        jdbcTemplate.query(FREE_WAGONS_SQL, rs -> {
+            FreeWagon wagon = freeWagon(rs.getString("current_station"), rs.getString("wagon_type"));
+            if (wagon != null) {
+                freeWagons.put(rs.getObject("id", UUID.class), wagon);
+            }
+        });
+
+        Map<String, int[]> counts = new HashMap<>();
+        for (FreeWagon wagon : freeWagons.values()) {
+            int[] row = counts.computeIfAbsent(wagon.station(), s -> new int[TYPES.length + 1]);
+            add(row, wagon.type(), 1);
+        }
+        snapshot = Snapshot.build(counts);
+        ready = true;
+        reloads.increment();
+
+        log.info("Индекс свободного парка загружен: {} станций, {} свободных вагонов",
+                snapshot.names.length, freeWagons.size());
+    }
+
+    @Scheduled(fixedDelayString = "${free-fleet.reload-interval-ms:300000}",
+            initialDelayString = "${free-fleet.reload-interval-ms:300000}")
+    public void reload() {
+        try {
+            load();
+        } catch (Exception e) {
+            log.error("Не удалось перезагрузить индекс свободного парка: {}", e.getMessage());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWagonsChanged(WagonsChangedEvent event) {
+        try {
+            refresh(event.wagonIds());
+        } catch (Exception e) {
+            // Расхождение исправит плановая перезагрузка
+            log.error("Не удалось обновить индекс свободного парка: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Перечитывает вагоны из БД и переносит их вклад в счётчиках. Чтение идёт под тем же
+     * монитором, что и применение, поэтому более позднее обновление не затрётся более ранним.
+     */
+    synchronized void refresh(Collection<UUID> wagonIds) {
+        if (wagonIds.isEmpty()) {
+            return;
+        }
+        Map<UUID, FreeWagon> current = new HashMap<>();
+        jdbcTemplate.query(WAGONS_BY_ID_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", wagonIds.toArray())),
+                rs -> {
+                    FreeWagon wagon = freeWagon(rs.getString("current_station"), rs.getString("wagon_type"));
+                    if (wagon != null && "свободен".equals(rs.getString("status"))) {
+                        current.put(rs.getObject("id", UUID.class), wagon);
+                    }
+                });
+
+        Snapshot base = snapshot;
+        int[][] counts = base.counts.clone();
+        Set<Integer> copied = new HashSet<>();
+        Map<String, int[]> newStations = new HashMap<>();
+
+        for (UUID wagonId : new HashSet<>(wagonIds)) {
+            FreeWagon before = freeWagons.remove(wagonId);
+            FreeWagon after = current.get(wagonId);
+            if (Objects.equals(before, after)) {
+                if (after != null) {
+                    freeWagons.put(wagonId, after);
+                }
+                continue;
+            }
+            if (before != null) {
+                adjust(base, counts, copied, newStations, before, -1);
+            }
+            if (after != null) {
+                freeWagons.put(wagonId, after);
+                adjust(base, counts, copied, newStations, after, 1);
+            }
+        }
+
+        if (newStations.isEmpty()) {
+            snapshot = base.withCounts(counts);
+        } else {
+            // Новая станция меняет набор названий — индекс названий строится заново
+            Map<String, int[]> all = new HashMap<>(newStations);
+            for (int i = 0; i < base.names.length; i++) {
+                all.put(base.names[i], counts[i]);
+            }
+            snapshot = Snapshot.build(all);
+        }
+        updates.increment();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Станции со свободными вагонами, название которых содержит query (без учёта регистра),
+     * по убыванию числа свободных вагонов; обращения к БД нет.
+     */
+    public List<StationSuggestionResponse> search(String query, int limit) {
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        if (needle.length() < MIN_QUERY_LENGTH || limit <= 0) {
+            return List.of();
+        }
+        Snapshot current = snapshot;
+        int[] totals = current.totals;
+
+        // В вершине кучи — худшая из отобранных станций
+        Comparator<Integer> bestFirst = Comparator.<Integer>comparingInt(i -> totals[i]).reversed()
+                .thenComparing(i -> current.names[i]);
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, bestFirst.reversed());
+        for (int station : current.candidates(needle)) {
+            if (totals[station] == 0 || !current.lowerNames[station].contains(needle)) {
+                continue;
+            }
+            top.add(station);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Integer> selected = new ArrayList<>(top);
+        selected.sort(bestFirst);
+        List<StationSuggestionResponse> result = new ArrayList<>(selected.size());
+        for (int station : selected) {
+            result.add(StationSuggestionResponse.builder()
+                    .name(current.names[station])
+                    .freeWagons(totals[station])
+                    .freeByType(byType(current.counts[station]))
+                    .build());
+        }
+        return result;
+    }
+
+    private static void adjust(Snapshot base, int[][] counts, Set<Integer> copied,
+                               Map<String, int[]> newStations, FreeWagon wagon, int delta) {
+        Integer station = base.stationIds.get(wagon.station());
+        if (station == null) {
+            int[] row = newStations.computeIfAbsent(wagon.station(), s -> new int[TYPES.length + 1]);
+            add(row, wagon.type(), delta);
+            return;
+        }
+        // Строки снимка неизменяемы: меняем копию
+        if (copied.add(station)) {
+            counts[station] = counts[station].clone();
+        }
+        add(counts[station], wagon.type(), delta);
+    }
+
+    // Последний элемент строки — всего свободных вагонов на станции
+    private static void add(int[] row, int type, int delta) {
+        if (type >= 0) {
+            row[type] += delta;
+        }
+        row[TYPES.length] += delta;
+    }
+
+    // Вагон без станции в подсказки не попадает
+    private static FreeWagon freeWagon(String station, String wagonType) {
+        return station != null ? new FreeWagon(station, typeOf(wagonType)) : null;
+    }
+
+    private static int typeOf(String wagonType) {
+        try {
+            return WagonType.valueOf(wagonType).ordinal();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    // Типы в разном регистре (крытый / КРЫТЫЙ) сводятся в один ключ
+    private static Map<String, Integer> byType(int[] row) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (int type = 0; type < TYPES.length; type++) {
+            if (row[type] > 0) {
+                result.merge(TYPES[type].name().toLowerCase(Locale.ROOT), row[type], Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    private static void addBigrams(Map<String, List<Integer>> postings, String name, int station) {
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i + MIN_QUERY_LENGTH <= name.length(); i++) {
+            String gram = name.substring(i, i + MIN_QUERY_LENGTH);
+            if (seen.add(gram)) {
+                postings.computeIfAbsent(gram, g -> new ArrayList<>()).add(station);
+            }
+        }
+    }
+
+    /**
+     * Неизменяемый снимок: названия и биграммы меняются только при появлении новой станции,
+     * при смене статусов вагонов подменяются лишь строки счётчиков.
+     */
+    private static final class Snapshot {
+
+        private final String[] names;
+        private final String[] lowerNames;
+        private final Map<String, Integer> stationIds;
+        private final Map<String, int[]> postings;
+        private final int[][] counts;
+        private final int[] totals;
+
+        private Snapshot(String[] names, String[] lowerNames, Map<String, Integer> stationIds,
+                         Map<String, int[]> postings, int[][] counts) {
+            this.names = names;
+            this.lowerNames = lowerNames;
+            this.stationIds = stationIds;
+            this.postings = postings;
+            this.counts = counts;
+            this.totals = new int[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                totals[i] = counts[i][TYPES.length];
+            }
+        }
+
+        static Snapshot build(Map<String, int[]> countsByStation) {
+            String[] names = countsByStation.keySet().stream()
+                    .sorted()
+                    .toArray(String[]::new);
+            String[] lowerNames = new String[names.length];
+            Map<String, Integer> stationIds = new HashMap<>();
+            Map<String, List<Integer>> grams = new HashMap<>();
+            int[][] counts = new int[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                lowerNames[i] = names[i].toLowerCase(Locale.ROOT);
+                stationIds.put(names[i], i);
+                counts[i] = countsByStation.get(names[i]);
+                addBigrams(grams, lowerNames[i], i);
+            }
+
+            Map<String, int[]> postings = new HashMap<>();
+            grams.forEach((gram, stations) ->
+                    postings.put(gram, stations.stream().mapToInt(Integer::intValue).toArray()));
+            return new Snapshot(names, lowerNames, Map.copyOf(stationIds), Map.copyOf(postings), counts);
+        }
+
+        Snapshot withCounts(int[][] newCounts) {
+            return new Snapshot(names, lowerNames, stationIds, postings, newCounts);
+        }
+
+        /**
+         * Кандидаты — станции из самого короткого списка среди биграмм запроса;
+         * точное вхождение подстроки проверяет вызывающий
+         */
+        int[] candidates(String needle) {
+            int[] shortest = null;
+            for (int i = 0; i + MIN_QUERY_LENGTH <= needle.length(); i++) {
+                int[] list = postings.get(needle.substring(i, i + MIN_QUERY_LENGTH));
+                if (list == null) {
+                    return new int[0];
+                }
+                if (shortest == null || list.length < shortest.length) {
+                    shortest = list;
+                }
+            }
+            return shortest != null ? shortest : new int[0];
+        }
+    }
+}
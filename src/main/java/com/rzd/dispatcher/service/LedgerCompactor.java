@@ -0,0 +1,61 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.repository.LedgerRepository;
+import com.rzd.dispatcher.repository.LedgerRepository.Mismatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Фоновое обслуживание журнала: перенос хвостов проводок в снимки, чтобы чтение баланса
+ * оставалось коротким, и сверка балансов счетов с журналом.
+ */
+@Component
+@Slf4j
+public class LedgerCompactor {
+
+    private final LedgerRepository ledgerRepository;
+
+    private final Counter compacted;
+    private final Counter mismatches;
+
+    public LedgerCompactor(LedgerRepository ledgerRepository, MeterRegistry meterRegistry) {
+        this.ledgerRepository = ledgerRepository;
+        this.compacted = meterRegistry.counter("ledger.snapshots.compacted");
+        this.mismatches = meterRegistry.counter("ledger.reconciliation.mismatches");
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.compact-interval-ms:60000}",
+            initialDelayString = "${ledger.compact-interval-ms:60000}")
+    @Transactional
+    public void compact() {
+        if (!ledgerRepository.tryLockCompactor()) {
+            log.debug("Снимки журнала обновляет другой экземпляр");
+            return;
+        }
+        int accounts = ledgerRepository.compact();
+        if (accounts > 0) {
+            compacted.increment(accounts);
+            log.debug("Снимки журнала обновлены: {} счетов", accounts);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.reconcile-interval-ms:3600000}",
+            initialDelayString = "${ledger.reconcile-interval-ms:3600000}")
+    @Transactional(readOnly = true)
+    public void reconcile() {
+        List<Mismatch> found = ledgerRepository.findMismatches();
+        if (found.isEmpty()) {
+            log.debug("Балансы счетов совпадают с журналом");
+            return;
+        }
+        mismatches.increment(found.size());
+        found.forEach(m -> log.warn("Баланс счета {} расходится с журналом: в счете {} руб, по журналу {} руб",
+                m.accountNumber(), m.stored(), m.ledger()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.repository.LedgerRepository;
+import com.rzd.dispatcher.repository.LedgerRepository.Entry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Запись проводок в журнал. Проводки копятся до коммита текущей транзакции и вставляются
+ * одним пакетом перед ним: в журнал попадает ровно то, что зафиксировано вместе с балансами,
+ * а вставка новых строк не конкурирует за блокировки с другими переводами.
+ */
+@Component
+@RequiredArgsConstructor
+public class LedgerWriter {
+
+    /** Технический встречный счет для поступлений извне (банк, открытие счета) */
+    public static final String EXTERNAL_ACCOUNT = "external";
+
+    private final LedgerRepository ledgerRepository;
+
+    public void transfer(String fromAccountNumber, String toAccountNumber, BigDecimal amount,
+                         String reference, String description) {
+        UUID transferId = UUID.randomUUID();
+        append(List.of(
+                new Entry(transferId, fromAccountNumber, amount.negate(), reference, description),
+                new Entry(transferId, toAccountNumber, amount, reference, description)));
+    }
+
+    public void external(String accountNumber, BigDecimal amount, String reference, String description) {
+        transfer(EXTERNAL_ACCOUNT, accountNumber, amount, reference, description);
+    }
+
+    private void append(List<Entry> entries) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ledgerRepository.insertBatch(entries);
+            return;
+        }
+        Batch batch = (Batch) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            batch = new Batch();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.entries.addAll(entries);
+    }
+
+    private final class Batch implements TransactionSynchronization {
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            ledgerRepository.insertBatch(entries);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(LedgerWriter.this);
+        }
+    }
+}
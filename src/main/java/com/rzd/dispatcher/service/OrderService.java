@@ -1,6 +1,7 @@
 package com.rzd.dispatcher.service;
 
 import com.rzd.dispatcher.model.dto.request.CreateOrderRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.OrderResponse;
 import com.rzd.dispatcher.model.dto.response.PriceResponse;
 import com.rzd.dispatcher.model.entity.Cargo;
@@ -8,11 +9,14 @@ import com.rzd.dispatcher.model.entity.Order;
 import com.rzd.dispatcher.model.entity.User;
 import com.rzd.dispatcher.model.entity.Wagon;
 import com.rzd.dispatcher.model.enums.OrderStatus;
+import com.rzd.dispatcher.model.event.OrderInTransitEvent;
 import com.rzd.dispatcher.repository.OrderRepository;
 import com.rzd.dispatcher.repository.UserRepository;
 import com.rzd.dispatcher.repository.WagonRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -36,6 +40,7 @@ public class OrderService {
     private final PricingService pricingService;
     private final WagonSearchService wagonSearchService;
     private final PaymentService paymentService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public UUID createDraftOrder(CreateOrderRequest request, String userEmail) {
@@ -64,14 +69,19 @@ public class OrderService {
     }
 
     @Transactional
-    public void updateOrderStatus(UUID orderId, OrderStatus newStatus) {
+    public OrderResponse updateOrderStatus(UUID orderId, OrderStatus newStatus) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Заказ не найден с ID: " + orderId));
 
         order.setStatus(newStatus);
         orderRepository.save(order);
 
+        if (newStatus == OrderStatus.в_пути) {
+            eventPublisher.publishEvent(new OrderInTransitEvent(orderId));
+        }
+
         log.info("Статус заказа {} обновлен на: {}", orderId, newStatus);
+        return OrderResponse.fromOrder(order);
     }
 
     @Transactional(readOnly = true)
@@ -106,10 +116,16 @@ public class OrderService {
     }
 
     @Transactional(readOnly = true)
-    public List<OrderResponse> getAllOrders() {
-        return orderRepository.findAll().stream()
-                .map(OrderResponse::fromOrder)
-                .toList();
+    public CursorPage<OrderResponse> getOrdersPage(OrderStatus status, UUID userId, String station,
+                                                   String cursor, Integer limit) {
+        int pageSize = CursorPage.normalizeLimit(limit);
+        CursorPage.Position after = CursorPage.decode(cursor);
+        List<Order> rows = orderRepository.findPage(status, userId, station,
+                after != null ? after.createdAt() : null,
+                after != null ? after.id() : null,
+                Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, OrderResponse::fromOrder,
+                o -> CursorPage.encode(o.getCreatedAt(), o.getId()));
     }
 
     // Транзакция создания заявки
@@ -0,0 +1,177 @@
+package com.rzd.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rzd.dispatcher.model.dto.response.PaymentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Хранилище ключей идемпотентности платежей (заголовок Idempotency-Key) в Redis.
+ * Первый запрос с ключом занимает его короткой блокировкой и выполняет платеж, после
+ * коммита на ключ записывается ответ: повтор отдается из Redis без транзакции.
+ * Дубли, пришедшие во время выполнения, ждут результат первого запроса. Ключ привязан
+ * к отпечатку (SHA-256) тела запроса - тот же ключ с другим телом отклоняется.
+ * <p>
+ * Redis здесь только экономит повторы: от двойного списания защищает блокировка
+ * строки заказа в PaymentService, она работает и без ключа, и после истечения блокировки.
+ */
+@Component
+@Slf4j
+public class PaymentIdempotency {
+
+    static final String KEY_PREFIX = "payment:idempotency:";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/release-idempotency-key.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration lockTtl;
+    private final Duration resultTtl;
+    private final Duration waitTimeout;
+
+    private final Counter replays;
+    private final Counter conflicts;
+
+    public PaymentIdempotency(RedisTemplate<String, String> redisTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment-idempotency.lock-ttl-seconds:30}") long lockTtlSeconds,
+                              @Value("${payment-idempotency.result-ttl-hours:24}") long resultTtlHours,
+                              @Value("${payment-idempotency.wait-ms:10000}") long waitMs) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.lockTtl = Duration.ofSeconds(lockTtlSeconds);
+        this.resultTtl = Duration.ofHours(resultTtlHours);
+        this.waitTimeout = Duration.ofMillis(waitMs);
+        this.replays = meterRegistry.counter("payment.idempotency.replays");
+        this.conflicts = meterRegistry.counter("payment.idempotency.conflicts");
+    }
+
+    /**
+     * Значение ключа: отпечаток запроса, владелец блокировки и ответ (null, пока запрос выполняется)
+     */
+    record Entry(String fingerprint, String owner, PaymentResponse response) {
+    }
+
+    /**
+     * Выполняет action один раз на пару (scope, idempotencyKey); scope - пользователь,
+     * чтобы ключи разных клиентов не пересекались
+     */
+    public PaymentResponse execute(String scope, String idempotencyKey, Object request,
+                                   Supplier<PaymentResponse> action) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Ключ идемпотентности должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+
+        String key = KEY_PREFIX + scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        String pending = toJson(new Entry(fingerprint, UUID.randomUUID().toString(), null));
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+
+        while (true) {
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, pending, lockTtl))) {
+                return runOwned(key, fingerprint, pending, action);
+            }
+
+            String stored = redisTemplate.opsForValue().get(key);
+            if (stored == null) {
+                // Владелец успел снять блокировку после ошибки - пробуем занять ключ снова
+                continue;
+            }
+
+            Entry entry = parse(stored);
+            if (!entry.fingerprint().equals(fingerprint)) {
+                conflicts.increment();
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Ключ идемпотентности уже использован с другим запросом");
+            }
+            if (entry.response() != null) {
+                replays.increment();
+                log.info("Повтор платежа по ключу идемпотентности {}: возвращен сохраненный ответ", idempotencyKey);
+                return entry.response();
+            }
+            if (System.nanoTime() > deadline) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Запрос с этим ключом идемпотентности еще выполняется");
+            }
+            pause();
+        }
+    }
+
+    private PaymentResponse runOwned(String key, String fingerprint, String pending,
+                                     Supplier<PaymentResponse> action) {
+        PaymentResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Ошибку не запоминаем: запрос с тем же ключом можно повторить после исправления
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(key), pending);
+            throw e;
+        }
+
+        try {
+            redisTemplate.opsForValue().set(key, toJson(new Entry(fingerprint, null, response)), resultTtl);
+        } catch (Exception e) {
+            // Платеж уже зафиксирован; повтор после истечения блокировки остановит проверка оплаты заказа
+            log.error("Не удалось сохранить ответ по ключу идемпотентности {}: {}", key, e.getMessage());
+        }
+        return response;
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Не удалось вычислить отпечаток запроса", e);
+        }
+    }
+
+    private String toJson(Entry entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Не удалось сериализовать ответ платежа", e);
+        }
+    }
+
+    private Entry parse(String json) {
+        try {
+            return objectMapper.readValue(json, Entry.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Поврежден ключ идемпотентности платежа", e);
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание результата платежа прервано", e);
+        }
+    }
+}
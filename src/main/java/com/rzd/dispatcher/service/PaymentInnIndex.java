@@ -0,0 +1,176 @@
+package com.rzd.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.PaymentResponse;
+import com.rzd.dispatcher.model.event.PaymentChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Индекс последних платежей ИНН в Redis: ZSET id -> created_at (тот же порядок, что у
+ * keyset-пагинации платежей в БД) и HASH id -> проекция PaymentResponse в JSON.
+ * Размер ограничен payment-index.max-per-inn: самые старые платежи вытесняются из обоих
+ * ключей, страницы за пределами индекса дочитываются из БД. Запись и чтение страницы -
+ * по одному Lua-скрипту, то есть по одному обращению к Redis.
+ */
+@Component
+@Slf4j
+public class PaymentInnIndex {
+
+    // Хеш-тег {inn} держит оба ключа ИНН в одном слоте кластера: их трогает один скрипт
+    static final String INDEX_KEY = "payments:by-inn:";
+    static final String DATA_SUFFIX = ":data";
+
+    private static final Duration TTL = Duration.ofDays(30);
+
+    // Источник записи для index-payments.lua
+    private static final String SOURCE_EVENT = "event";
+    private static final String SOURCE_LOAD = "load";
+    private static final String SOURCE_DATABASE = "db";
+
+    private static final RedisScript<Long> INDEX_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/index-payments.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> PAGE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/payments-page.lua"), List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final int maxPerInn;
+
+    public PaymentInnIndex(RedisTemplate<String, String> redisTemplate,
+                           ObjectMapper objectMapper,
+                           @Value("${payment-index.max-per-inn:500}") int maxPerInn) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.maxPerInn = maxPerInn;
+    }
+
+    /**
+     * Страница индекса: ids в порядке выдачи, found - прочитанные проекции (проекций
+     * вытесненных платежей нет, их дочитывают из БД). truncated - в БД могут быть
+     * платежи старше последнего в индексе.
+     */
+    public record Page(List<UUID> ids, Map<UUID, PaymentResponse> found, boolean truncated) {
+    }
+
+    public int maxPerInn() {
+        return maxPerInn;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentChanged(PaymentChangedEvent event) {
+        PaymentResponse payment = event.payment();
+        if (payment.getInn() == null) {
+            return;
+        }
+        try {
+            write(payment.getInn(), List.of(payment), SOURCE_EVENT, false);
+        } catch (Exception e) {
+            // Индекс не загружен полностью или будет перезагружен по истечении TTL
+            log.error("Не удалось обновить индекс платежей ИНН {}: {}", payment.getInn(), e.getMessage());
+        }
+    }
+
+    /**
+     * Загрузка индекса из БД: последние платежи ИНН (не больше maxPerInn) одной записью.
+     * Проекции, которые событие успело записать раньше, не перезаписываются
+     */
+    public void fill(String inn, List<PaymentResponse> payments, boolean truncated) {
+        write(inn, payments, SOURCE_LOAD, truncated);
+    }
+
+    // Проекции, дочитанные из БД; как и fill, не затирают записанные событием
+    public void put(String inn, Collection<PaymentResponse> payments) {
+        if (!payments.isEmpty()) {
+            write(inn, payments, SOURCE_DATABASE, false);
+        }
+    }
+
+    /**
+     * До count платежей после позиции after (null - с начала); пусто, если индекс ИНН не загружен
+     */
+    public Optional<Page> page(String inn, CursorPage.Position after, int count) {
+        List<?> result = redisTemplate.execute(PAGE_SCRIPT,
+                keys(inn),
+                after != null ? after.id().toString() : "",
+                after != null ? String.valueOf(score(after.createdAt())) : "0",
+                String.valueOf(count));
+        if (result == null || result.isEmpty()) {
+            return Optional.empty();
+        }
+
+        boolean truncated = Long.valueOf(1L).equals(result.get(0));
+        List<UUID> ids = new ArrayList<>(result.size() / 2);
+        Map<UUID, PaymentResponse> found = new HashMap<>();
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            UUID id = UUID.fromString(result.get(i).toString());
+            ids.add(id);
+            PaymentResponse payment = parse(result.get(i + 1));
+            if (payment != null) {
+                found.put(id, payment);
+            }
+        }
+        return Optional.of(new Page(ids, found, truncated));
+    }
+
+    private void write(String inn, Collection<PaymentResponse> payments, String source, boolean truncated) {
+        List<String> args = new ArrayList<>(4 + payments.size() * 3);
+        args.add(String.valueOf(maxPerInn));
+        args.add(String.valueOf(TTL.toSeconds()));
+        args.add(source);
+        args.add(truncated ? "1" : "0");
+        for (PaymentResponse payment : payments) {
+            args.add(payment.getId().toString());
+            args.add(String.valueOf(score(payment.getCreatedAt())));
+            args.add(toJson(payment));
+        }
+        Long evicted = redisTemplate.execute(INDEX_SCRIPT,
+                keys(inn),
+                args.toArray());
+        if (evicted != null && evicted > 0) {
+            log.debug("Из индекса платежей ИНН {} вытеснено {} старых платежей", inn, evicted);
+        }
+    }
+
+    private static List<String> keys(String inn) {
+        String tag = "{" + inn + "}";
+        return List.of(INDEX_KEY + tag, INDEX_KEY + tag + DATA_SUFFIX);
+    }
+
+    // Платежи без created_at, как и в ORDER BY created_at DESC в Postgres (NULLS FIRST), идут первыми
+    private static long score(OffsetDateTime createdAt) {
+        return createdAt != null ? createdAt.toInstant().toEpochMilli() : Long.MAX_VALUE;
+    }
+
+    private String toJson(PaymentResponse payment) {
+        try {
+            return objectMapper.writeValueAsString(payment);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Не удалось сериализовать платеж " + payment.getId(), e);
+        }
+    }
+
+    private PaymentResponse parse(Object json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json.toString(), PaymentResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Повреждена проекция платежа в индексе: {}", e.getMessage());
+            return null;
+        }
+    }
+}
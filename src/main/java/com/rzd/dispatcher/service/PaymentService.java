@@ -6,15 +6,21 @@ import com.rzd.dispatcher.model.entity.Payment;
 import com.rzd.dispatcher.model.entity.Payment.PaymentStatus;
 import com.rzd.dispatcher.model.dto.request.PaymentRequest;
 import com.rzd.dispatcher.model.dto.request.PaymentWebhookRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
+import com.rzd.dispatcher.model.dto.response.LedgerEntryResponse;
 import com.rzd.dispatcher.model.dto.response.PaymentResponse;
 import com.rzd.dispatcher.model.entity.User;
 import com.rzd.dispatcher.model.enums.OrderStatus;
+import com.rzd.dispatcher.model.event.PaymentChangedEvent;
 import com.rzd.dispatcher.repository.CompanyAccountRepository;
+import com.rzd.dispatcher.repository.LedgerRepository;
 import com.rzd.dispatcher.repository.OrderRepository;
 import com.rzd.dispatcher.repository.PaymentRepository;
 import com.rzd.dispatcher.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,7 +28,11 @@ import com.rzd.dispatcher.service.AccountService.TransferResult;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -39,9 +49,11 @@ public class PaymentService {
     private final PdfGeneratorService pdfGeneratorService;
     private final CompanyAccountRepository accountRepository;
     private final AccountService accountService;
+    private final LedgerRepository ledgerRepository;
+    private final PaymentInnIndex paymentInnIndex;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final String PAYMENT_IDEMPOTENCY_KEY = "payment:processed:";
-    private static final String PAYMENT_INN_CACHE_KEY = "payments:inn:";
 
     @Transactional
     public Payment createCorporatePayment(PaymentRequest request, String userEmail) {
@@ -63,7 +75,9 @@ public class PaymentService {
         log.info("Создание платежа для физического лица: {}", user.getDisplayName());
 
         
-        boolean orderPaid = orderRepository.findById(request.getOrderId())
+        // Блокировка заказа до конца транзакции: параллельная оплата того же заказа
+        // дождется коммита и увидит статус 'оплачен' - двойного списания не будет
+        boolean orderPaid = orderRepository.findByIdForUpdate(request.getOrderId())
                 .map(order -> order.getStatus() == OrderStatus.оплачен)
                 .orElse(false);
 
@@ -116,15 +130,18 @@ public class PaymentService {
                 .orElseThrow(() -> new RuntimeException("Счет РЖД не найден в базе данных"));
 
         log.info("Счет РЖД для зачисления: {}, баланс до операции: {} руб",
-                rzdAccount.getAccountNumber(), rzdAccount.getBalance());
+                rzdAccount.getAccountNumber(), accountService.balanceOf(rzdAccount));
         log.info("Счет плательщика: {}, баланс до операции: {} руб",
                 payerAccount.getAccountNumber(), payerAccount.getBalance());
 
         
+        // Номер платежа нужен до перевода: по нему проводки связываются с платежом в журнале
+        String paymentId = generatePaymentId();
         TransferResult transfer = accountService.transferMoney(
                 payerAccount.getAccountNumber(),
                 rzdAccount.getAccountNumber(),
                 request.getAmount(),
+                paymentId,
                 "Оплата грузовой перевозки (физлицо): " + request.getPaymentPurpose()
         );
 
@@ -150,7 +167,7 @@ public class PaymentService {
         payment.setBankName(payerAccount.getBankName());
 
         
-        payment.setPaymentId(generatePaymentId());
+        payment.setPaymentId(paymentId);
         payment.setPaymentDocument(generatePaymentDocumentNumber());
         payment.setPaymentDate(OffsetDateTime.now());
         payment.setPaidAt(OffsetDateTime.now());
@@ -182,7 +199,7 @@ public class PaymentService {
         }
 
         
-        cachePaymentByInn(savedPayment);
+        eventPublisher.publishEvent(new PaymentChangedEvent(convertToResponse(savedPayment)));
 
         log.info("Платеж для физлица успешно создан и оплачен: id={}, документ={}, сумма={}, статус={}",
                 savedPayment.getId(), savedPayment.getPaymentDocument(),
@@ -194,7 +211,9 @@ public class PaymentService {
     private Payment createLegalEntityPayment(PaymentRequest request, User user) {
         log.info("Создание платежа для юридического лица: {}", user.getCompanyName());
 
-        boolean orderPaid = orderRepository.findById(request.getOrderId())
+        // Блокировка заказа до конца транзакции: параллельная оплата того же заказа
+        // дождется коммита и увидит статус 'оплачен' - двойного списания не будет
+        boolean orderPaid = orderRepository.findByIdForUpdate(request.getOrderId())
                 .map(order -> order.getStatus() == OrderStatus.оплачен)
                 .orElse(false);
 
@@ -247,12 +266,14 @@ public class PaymentService {
                 .orElseThrow(() -> new RuntimeException("Счет РЖД не найден в базе данных"));
 
         log.info("Счет РЖД для зачисления: {}, баланс до операции: {} руб",
-                rzdAccount.getAccountNumber(), rzdAccount.getBalance());
+                rzdAccount.getAccountNumber(), accountService.balanceOf(rzdAccount));
 
+        String paymentId = generatePaymentId();
         TransferResult transfer = accountService.transferMoney(
                 payerAccount.getAccountNumber(),
                 rzdAccount.getAccountNumber(),
                 request.getAmount(),
+                paymentId,
                 "Оплата грузовой перевозки: " + request.getPaymentPurpose()
         );
 
@@ -275,7 +296,7 @@ public class PaymentService {
         payment.setBankName(payerAccount.getBankName());
         payment.setPaymentPurpose(request.getPaymentPurpose());
 
-        payment.setPaymentId(generatePaymentId());
+        payment.setPaymentId(paymentId);
         payment.setPaymentDocument(generatePaymentDocumentNumber());
         payment.setPaymentDate(OffsetDateTime.now());
         payment.setPaidAt(OffsetDateTime.now());
@@ -302,7 +323,7 @@ public class PaymentService {
             });
         }
 
-        cachePaymentByInn(savedPayment);
+        eventPublisher.publishEvent(new PaymentChangedEvent(convertToResponse(savedPayment)));
 
         log.info("Платеж успешно создан: id={}, документ={}, сумма={}, статус={}",
                 savedPayment.getId(), savedPayment.getPaymentDocument(),
@@ -335,18 +356,20 @@ public class PaymentService {
         }
 
         
+        // Заказ блокируется раньше счетов - тот же порядок, что при создании платежа
+        if (payment.getOrderId() != null) {
+            orderRepository.findByIdForUpdate(payment.getOrderId());
+        }
+
         CompanyAccount rzdAccount = accountRepository.findByIsRzdAccountTrue()
                 .orElseThrow(() -> new RuntimeException("Счет РЖД не найден в базе данных"));
 
-        BigDecimal beforeBalance = rzdAccount.getBalance();
+        BigDecimal beforeBalance = accountService.balanceOf(rzdAccount);
         log.info("Баланс счета РЖД до зачисления: {} руб", beforeBalance);
 
         
-        int deposited = accountRepository.deposit(rzdAccount.getAccountNumber(), payment.getAmount());
-
-        if (deposited == 0) {
-            throw new RuntimeException("Ошибка при зачислении средств на счет РЖД");
-        }
+        accountService.deposit(rzdAccount.getAccountNumber(), payment.getAmount(), payment.getPaymentId(),
+                "Зачисление от физлица по документу " + paymentDocument);
 
         
         payment.setStatus(PaymentStatus.SUCCEEDED);
@@ -364,7 +387,7 @@ public class PaymentService {
                 payment.getInn(),
                 payment.getAmount(),
                 beforeBalance,
-                updatedRzdAccount.getBalance()
+                accountService.balanceOf(updatedRzdAccount)
         );
 
         String currentMetadata = payment.getMetadata() != null ? payment.getMetadata() : "";
@@ -382,12 +405,12 @@ public class PaymentService {
         }
 
         
-        cachePaymentByInn(savedPayment);
+        eventPublisher.publishEvent(new PaymentChangedEvent(convertToResponse(savedPayment)));
 
         log.info("Платеж от физлица подтвержден: {}, сумма {} руб зачислена на счет РЖД. Новый баланс РЖД: {} руб",
                 savedPayment.getPaymentDocument(),
                 savedPayment.getAmount(),
-                updatedRzdAccount.getBalance());
+                accountService.balanceOf(updatedRzdAccount));
 
         return convertToResponse(savedPayment);
     }
@@ -402,12 +425,6 @@ public class PaymentService {
                 (int)(Math.random() * 1000));
     }
 
-    private void cachePaymentByInn(Payment payment) {
-        String key = PAYMENT_INN_CACHE_KEY + payment.getInn();
-        redisTemplate.opsForList().leftPush(key, payment.getId().toString());
-        redisTemplate.expire(key, 30, TimeUnit.DAYS);
-    }
-
     @Transactional
     public PaymentResponse handleBankWebhook(PaymentWebhookRequest request) {
         log.info("Обработка банковского вебхука: paymentId={}, status={}, inn={}",
@@ -483,7 +500,9 @@ public class PaymentService {
             }
 
             Payment savedPayment = paymentRepository.save(payment);
-            return convertToResponse(savedPayment);
+            PaymentResponse response = convertToResponse(savedPayment);
+            eventPublisher.publishEvent(new PaymentChangedEvent(response));
+            return response;
 
         } catch (Exception e) {
             redisTemplate.delete(idempotencyKey);
@@ -522,29 +541,71 @@ public class PaymentService {
         return paymentRepository.existsByOrderIdAndStatus(orderId, PaymentStatus.SUCCEEDED);
     }
 
+    /**
+     * Платежи ИНН от новых к старым. Страница читается из индекса в Redis одним обращением;
+     * незагруженный индекс заполняется из БД, за пределами индекса выдача продолжается из БД.
+     */
     @Transactional(readOnly = true)
-    public List<PaymentResponse> findPaymentsByInn(String inn) {
-        log.info("Поиск платежей по ИНН: {}", inn);
-
-        String key = PAYMENT_INN_CACHE_KEY + inn;
-        List<String> paymentIds = redisTemplate.opsForList().range(key, 0, -1);
-
-        if (paymentIds != null && !paymentIds.isEmpty()) {
-            log.info("Найдено {} платежей в Redis", paymentIds.size());
-            return paymentIds.stream()
-                    .map(UUID::fromString)
-                    .map(id -> paymentRepository.findById(id).orElse(null))
-                    .filter(p -> p != null)
-                    .map(this::convertToResponse)
-                    .collect(Collectors.toList());
+    public CursorPage<PaymentResponse> findPaymentsByInn(String inn, String cursor, Integer limit) {
+        int pageSize = CursorPage.normalizeLimit(limit);
+        CursorPage.Position after = CursorPage.decode(cursor);
+
+        Optional<PaymentInnIndex.Page> cached = paymentInnIndex.page(inn, after, pageSize + 1);
+        List<PaymentResponse> rows;
+        if (cached.isEmpty()) {
+            log.info("Индекс платежей ИНН {} не загружен, загрузка из БД", inn);
+            int maxPerInn = paymentInnIndex.maxPerInn();
+            List<PaymentResponse> recent = findPageInDatabase(inn, null, maxPerInn);
+            paymentInnIndex.fill(inn, recent, recent.size() >= maxPerInn);
+            rows = after == null
+                    ? recent.subList(0, Math.min(recent.size(), pageSize + 1))
+                    : findPageInDatabase(inn, after, pageSize + 1);
+        } else {
+            PaymentInnIndex.Page page = cached.get();
+            rows = resolve(inn, page);
+            if (rows.size() <= pageSize && page.truncated()) {
+                // Индекс закончился раньше страницы: продолжение из БД с того же места
+                CursorPage.Position from = rows.isEmpty() ? after
+                        : new CursorPage.Position(rows.get(rows.size() - 1).getCreatedAt(),
+                                rows.get(rows.size() - 1).getId());
+                rows = new ArrayList<>(rows);
+                rows.addAll(findPageInDatabase(inn, from, pageSize + 1 - rows.size()));
+            }
         }
+        return CursorPage.of(rows, pageSize, payment -> payment,
+                payment -> CursorPage.encode(payment.getCreatedAt(), payment.getId()));
+    }
 
-        List<Payment> payments = paymentRepository.findByInn(inn);
-        payments.forEach(this::cachePaymentByInn);
-
-        return payments.stream()
+    private List<PaymentResponse> findPageInDatabase(String inn, CursorPage.Position after, int count) {
+        return paymentRepository.findPage(null, inn,
+                        after != null ? after.createdAt() : null,
+                        after != null ? after.id() : null,
+                        Limit.of(count)).stream()
                 .map(this::convertToResponse)
-                .collect(Collectors.toList());
+                .toList();
+    }
+
+    // Проекции, которых нет в индексе, дочитываются одним findAllById и возвращаются в индекс
+    private List<PaymentResponse> resolve(String inn, PaymentInnIndex.Page page) {
+        Map<UUID, PaymentResponse> found = new HashMap<>(page.found());
+        List<UUID> missing = page.ids().stream()
+                .filter(id -> !found.containsKey(id))
+                .toList();
+        if (!missing.isEmpty()) {
+            List<PaymentResponse> loaded = paymentRepository.findAllById(missing).stream()
+                    .map(this::convertToResponse)
+                    .toList();
+            loaded.forEach(payment -> found.put(payment.getId(), payment));
+            paymentInnIndex.put(inn, loaded);
+        }
+        List<PaymentResponse> rows = new ArrayList<>(page.ids().size());
+        for (UUID id : page.ids()) {
+            PaymentResponse payment = found.get(id);
+            if (payment != null) {
+                rows.add(payment);
+            }
+        }
+        return rows;
     }
 
     @Transactional(readOnly = true)
@@ -561,6 +622,16 @@ public class PaymentService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Проводки платежа (оплата, подтверждение, возврат) из журнала - по индексу ссылки
+     */
+    @Transactional(readOnly = true)
+    public List<LedgerEntryResponse> getPaymentLedger(UUID paymentId) {
+        Payment payment = paymentRepository.findById(paymentId)
+                .orElseThrow(() -> new RuntimeException("Платеж не найден"));
+        return ledgerRepository.findByReference(payment.getPaymentId());
+    }
+
     private PaymentResponse convertToResponse(Payment payment) {
         return PaymentResponse.builder()
                 .id(payment.getId())
@@ -595,10 +666,16 @@ public class PaymentService {
     }
 
     @Transactional(readOnly = true)
-    public List<PaymentResponse> getAllPayments() {
-        return paymentRepository.findAll().stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
+    public CursorPage<PaymentResponse> getPaymentsPage(PaymentStatus status, String inn,
+                                                       String cursor, Integer limit) {
+        int pageSize = CursorPage.normalizeLimit(limit);
+        CursorPage.Position after = CursorPage.decode(cursor);
+        List<Payment> rows = paymentRepository.findPage(status, inn,
+                after != null ? after.createdAt() : null,
+                after != null ? after.id() : null,
+                Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, this::convertToResponse,
+                p -> CursorPage.encode(p.getCreatedAt(), p.getId()));
     }
 
     @Transactional
@@ -612,6 +689,10 @@ public class PaymentService {
             throw new RuntimeException("Возврат возможен только для успешно завершенных платежей. Текущий статус: " + payment.getStatus());
         }
 
+        if (payment.getOrderId() != null) {
+            orderRepository.findByIdForUpdate(payment.getOrderId());
+        }
+
         CompanyAccount rzdAccount = accountRepository.findByIsRzdAccountTrue()
                 .orElseThrow(() -> new RuntimeException("Счет РЖД не найден в базе данных"));
 
@@ -619,6 +700,7 @@ public class PaymentService {
                 rzdAccount.getAccountNumber(),
                 payment.getAccountNumber(),
                 payment.getAmount(),
+                payment.getPaymentId(),
                 "Возврат средств по отмененному платежу: " + payment.getPaymentId()
         );
 
@@ -640,6 +722,7 @@ public class PaymentService {
         payment.setMetadata(currentMetadata + refundMetadata);
 
         Payment updatedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(new PaymentChangedEvent(convertToResponse(updatedPayment)));
         log.info("Возврат успешно проведен. Платеж {} переведен в статус REFUNDED", payment.getId());
 
         if (updatedPayment.getOrderId() != null) {
@@ -0,0 +1,145 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.WagonTariff;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Ядро расчета цен в целых копейках (long).
+ *
+ * Точки округления совпадают с прежними цепочками BigDecimal:
+ * вес в тоннах округляется HALF_UP до 0.01 т (сантитонны), цена перевозки,
+ * страхование, ответственность, экспресс и GPS - HALF_UP до копейки.
+ * Результат в BigDecimal всегда со scale 2, как после setScale(2, HALF_UP).
+ * Тарифные ставки и коэффициенты должны иметь точность не выше сотых (numeric(10,2) и numeric(5,2)).
+ */
+final class PricingKernel {
+
+    static final long MIN_INSURANCE_KOPECKS = 300_000;
+    static final long ESCORT_KOPECKS = 1_500_000;
+    static final long MIN_GPS_KOPECKS = 200_000;
+    static final long CUSTOMS_KOPECKS = 2_500_000;
+
+    // Стоимость груза: 100 000 руб/т * коэффициент (в десятых)
+    private static final long CARGO_VALUE_KOPECKS_PER_CENTITON_TENTH = 10_000;
+    private static final long TERMINAL_KOPECKS_PER_CENTITON = 500;
+    private static final long GPS_KOPECKS_PER_KM = 1_000;
+    private static final int INSURANCE_PERCENT = 2;
+    private static final int LIABILITY_PERCENT = 1;
+    private static final int EXPRESS_PERCENT = 30;
+    private static final int CO2_PERCENT = 2;
+
+    private PricingKernel() {
+    }
+
+    /**
+     * Вес в сотых долях тонны: kg / 1000 с округлением HALF_UP до 0.01
+     */
+    static long weightCentitons(int weightKg) {
+        return roundHalfUp(weightKg, 10);
+    }
+
+    static BigDecimal weightTons(int weightKg) {
+        return BigDecimal.valueOf(weightCentitons(weightKg), 2);
+    }
+
+    /**
+     * Базовая цена перевозки с учетом минимальной цены тарифа.
+     * При выходе за диапазон long считаем через BigDecimal, результат тот же.
+     */
+    static BigDecimal freightPrice(int weightKg, int distanceKm, WagonTariff tariff) {
+        BigDecimal price;
+        try {
+            price = BigDecimal.valueOf(freightKopecks(weightCentitons(weightKg), distanceKm,
+                    hundredths(tariff.getBaseRatePerKm()), hundredths(tariff.getCoefficient())), 2);
+        } catch (ArithmeticException e) {
+            price = weightTons(weightKg)
+                    .multiply(BigDecimal.valueOf(distanceKm))
+                    .multiply(tariff.getBaseRatePerKm())
+                    .multiply(tariff.getCoefficient())
+                    .setScale(2, RoundingMode.HALF_UP);
+        }
+
+        if (tariff.getMinPrice() != null && price.compareTo(tariff.getMinPrice()) < 0) {
+            return tariff.getMinPrice();
+        }
+        return price;
+    }
+
+    /**
+     * т * км * руб/км * коэф = (сантитонны * км * копейки * сотые) / 10^4 копеек
+     */
+    static long freightKopecks(long weightCentitons, int distanceKm, long rateKopecks, long coefficientHundredths) {
+        long product = Math.multiplyExact(
+                Math.multiplyExact(Math.multiplyExact(weightCentitons, distanceKm), rateKopecks),
+                coefficientHundredths);
+        return roundHalfUp(product, 10_000);
+    }
+
+    static long cargoValueKopecks(int weightKg, int coefficientTenths) {
+        return weightCentitons(weightKg) * coefficientTenths * CARGO_VALUE_KOPECKS_PER_CENTITON_TENTH;
+    }
+
+    static long insuranceKopecks(int weightKg, int coefficientTenths) {
+        long insurance = roundHalfUp(cargoValueKopecks(weightKg, coefficientTenths) * INSURANCE_PERCENT, 100);
+        return Math.max(insurance, MIN_INSURANCE_KOPECKS);
+    }
+
+    static long liabilityKopecks(long freightKopecks) {
+        return roundHalfUp(freightKopecks * LIABILITY_PERCENT, 100);
+    }
+
+    static long expressKopecks(long freightKopecks) {
+        return roundHalfUp(freightKopecks * EXPRESS_PERCENT, 100);
+    }
+
+    /**
+     * Экспресс без округления, в сотых долях копейки - так он входит в сумму услуг
+     */
+    static long expressHundredthKopecks(long freightKopecks) {
+        return freightKopecks * EXPRESS_PERCENT;
+    }
+
+    static long terminalKopecks(int weightKg) {
+        return weightCentitons(weightKg) * TERMINAL_KOPECKS_PER_CENTITON;
+    }
+
+    static long gpsKopecks(Integer distanceKm) {
+        if (distanceKm == null || distanceKm <= 0) {
+            return MIN_GPS_KOPECKS;
+        }
+        return Math.max(distanceKm * GPS_KOPECKS_PER_KM, MIN_GPS_KOPECKS);
+    }
+
+    /**
+     * Углеродный след в кг: т * км * 0.02, HALF_UP до 0.01
+     */
+    static double carbonFootprintKg(int weightKg, int distanceKm) {
+        long hundredths = roundHalfUp(weightCentitons(weightKg) * distanceKm * CO2_PERCENT, 100);
+        return hundredths / 100.0;
+    }
+
+    /**
+     * Значение в сотых долях (копейках); ArithmeticException, если точность выше сотых
+     */
+    static long hundredths(BigDecimal value) {
+        return value.movePointRight(2).longValueExact();
+    }
+
+    static BigDecimal toRubles(long kopecks) {
+        return BigDecimal.valueOf(kopecks, 2);
+    }
+
+    /**
+     * Деление с округлением HALF_UP (половина - от нуля), как RoundingMode.HALF_UP
+     */
+    static long roundHalfUp(long value, long divisor) {
+        long quotient = value / divisor;
+        long remainder = Math.abs(value % divisor);
+        if (remainder * 2 >= divisor) {
+            quotient += value < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+}
@@ -1,6 +1,8 @@
 package com.rzd.dispatcher.service;
 
+import com.rzd.dispatcher.model.dto.request.BatchPriceRequest;
 import com.rzd.dispatcher.model.dto.request.PriceCalculationRequest;
+import com.rzd.dispatcher.model.dto.response.BatchPriceResponse;
 import com.rzd.dispatcher.model.dto.response.PriceResponse;
 import com.rzd.dispatcher.model.entity.*;
 import com.rzd.dispatcher.repository.*;
@@ -10,10 +12,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.List;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
@@ -22,12 +25,10 @@ public class PricingService {
 
     private final OrderRepository orderRepository;
     private final WagonRepository wagonRepository;
-    private final WagonTariffRepository wagonTariffRepository;
-    private final StationDistanceRepository distanceRepository;
+    private final TariffMatrix tariffMatrix;
+    private final StationGraph stationGraph;
     private final AdditionalServicesService additionalServicesService;
 
-    private static final BigDecimal CO2_FACTOR = new BigDecimal("0.02");
-
      
      
      
@@ -41,7 +42,7 @@ public class PricingService {
         Wagon wagon = wagonRepository.findById(wagonId)
                 .orElseThrow(() -> new RuntimeException("Вагон не найден с ID: " + wagonId));
 
-        int distance = getDistanceBetweenStations(
+        int distance = stationGraph.distanceKm(
                 order.getDepartureStation(),
                 order.getDestinationStation()
         );
@@ -59,24 +60,15 @@ public class PricingService {
 
         final String wagonTypeName = wagon.getWagonType().name();
 
-        WagonTariff tariff = wagonTariffRepository.findByWagonTypeAndCargoType(
+        WagonTariff tariff = tariffMatrix.find(
                 wagonTypeName,
                 cargoTypeName
         ).orElseThrow(() -> new RuntimeException(
                 "Тариф не найден для вагона: " + wagonTypeName + " и груза: " + cargoTypeName));
 
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-        BigDecimal basePrice = weightTons
-                .multiply(new BigDecimal(distance))
-                .multiply(tariff.getBaseRatePerKm())
-                .multiply(tariff.getCoefficient())
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal weightTons = PricingKernel.weightTons(weightKg);
 
-        if (tariff.getMinPrice() != null && basePrice.compareTo(tariff.getMinPrice()) < 0) {
-            basePrice = tariff.getMinPrice();
-        }
+        BigDecimal basePrice = PricingKernel.freightPrice(weightKg, distance, tariff);
 
         log.info("Базовая цена: {} руб", basePrice);
 
@@ -136,71 +128,19 @@ public class PricingService {
         log.info("Расчет стоимости по запросу: груз={}, вагон={}, вес={}кг",
                 request.getCargoType(), request.getWagonType(), request.getWeightKg());
 
-        int distance = getDistanceBetweenStations(
+        int distance = stationGraph.distanceKm(
                 request.getDepartureStation(),
                 request.getDestinationStation()
         );
 
-        WagonTariff tariff = wagonTariffRepository.findByWagonTypeAndCargoType(
+        WagonTariff tariff = tariffMatrix.find(
                 request.getWagonType(),
                 request.getCargoType()
         ).orElseThrow(() -> new RuntimeException("Тариф не найден"));
 
-        BigDecimal weightTons = new BigDecimal(request.getWeightKg())
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-        BigDecimal basePrice = weightTons
-                .multiply(new BigDecimal(distance))
-                .multiply(tariff.getBaseRatePerKm())
-                .multiply(tariff.getCoefficient())
-                .setScale(2, RoundingMode.HALF_UP);
-
-        if (tariff.getMinPrice() != null && basePrice.compareTo(tariff.getMinPrice()) < 0) {
-            basePrice = tariff.getMinPrice();
-        }
-
-        List<PriceResponse.AdditionalServiceDto> allServices =
-                additionalServicesService.getServicesWithSelection(
-                        request.getCargoType(),
-                        request.getDepartureStation(),
-                        request.getDestinationStation(),
-                        request.getWeightKg(),
-                        basePrice,
-                        distance,
-                        request.getSelectedServices()
-                );
-
-        BigDecimal servicesPrice = additionalServicesService.calculateServicesPrice(
-                request.getSelectedServices(),
-                request.getCargoType(),
-                request.getWeightKg(),
-                basePrice,
-                distance,
-                request.getDepartureStation(),
-                request.getDestinationStation()
-        );
-
-        double carbonFootprint = calculateCarbonFootprint(
-                request.getWeightKg(), distance);
-
-        BigDecimal cargoValue = additionalServicesService.estimateCargoValue(
-                request.getCargoType(), request.getWeightKg());
-
-        return PriceResponse.builder()
-                .basePrice(basePrice)
-                .additionalServicesPrice(servicesPrice)
-                .totalPrice(basePrice.add(servicesPrice))
-                .distanceKm(distance)
-                .carbonFootprintKg(carbonFootprint)
-                .availableServices(allServices)
-                .currency("RUB")
-                .cargoEstimate(PriceResponse.CargoEstimate.builder()
-                        .estimatedValue(cargoValue)
-                        .weightTons(weightTons)
-                        .cargoType(request.getCargoType())
-                        .riskLevel(determineRiskLevel(request.getCargoType(), request.getWeightKg()))
-                        .build())
-                .build();
+        return buildQuote(request.getCargoType(), request.getWeightKg(),
+                request.getDepartureStation(), request.getDestinationStation(),
+                request.getSelectedServices(), distance, tariff);
     }
 
     /**
@@ -214,89 +154,117 @@ public class PricingService {
         Wagon wagon = wagonRepository.findById(wagonId)
                 .orElseThrow(() -> new RuntimeException("Вагон не найден с ID: " + wagonId));
 
-        int distance = getDistanceBetweenStations(
+        int distance = stationGraph.distanceKm(
                 request.getDepartureStation(),
                 request.getDestinationStation()
         );
         log.info("Расстояние между станциями: {} км", distance);
 
-        WagonTariff tariff = wagonTariffRepository.findByWagonTypeAndCargoType(
+        WagonTariff tariff = tariffMatrix.find(
                 wagon.getWagonType().name(),
                 request.getCargoType()
         ).orElseGet(() -> {
             log.warn("Тариф не найден для вагона {} и груза {}, используем общий",
                     wagon.getWagonType().name(), request.getCargoType());
-            return wagonTariffRepository.findByWagonTypeAndCargoType(
+            return tariffMatrix.find(
                     wagon.getWagonType().name(),
                     "общий"
             ).orElseThrow(() -> new RuntimeException("Общий тариф не найден"));
         });
 
-        BigDecimal weightTons = new BigDecimal(request.getWeightKg())
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-        BigDecimal basePrice = weightTons
-                .multiply(new BigDecimal(distance))
-                .multiply(tariff.getBaseRatePerKm())
-                .multiply(tariff.getCoefficient())
-                .setScale(2, RoundingMode.HALF_UP);
-
-        if (tariff.getMinPrice() != null && basePrice.compareTo(tariff.getMinPrice()) < 0) {
-            basePrice = tariff.getMinPrice();
-        }
-
-        log.info("Базовая цена: {} руб", basePrice);
-
-        List<PriceResponse.AdditionalServiceDto> allServices =
-                additionalServicesService.getServicesWithSelection(
-                        request.getCargoType(),
-                        request.getDepartureStation(),
-                        request.getDestinationStation(),
-                        request.getWeightKg(),
-                        basePrice,
-                        distance,
-                        request.getSelectedServices()
-                );
-
-        BigDecimal servicesPrice = additionalServicesService.calculateServicesPrice(
-                request.getSelectedServices(),
-                request.getCargoType(),
-                request.getWeightKg(),
-                basePrice,
-                distance,
-                request.getDepartureStation(),
-                request.getDestinationStation()
-        );
+        PriceResponse response = buildQuote(request.getCargoType(), request.getWeightKg(),
+                request.getDepartureStation(), request.getDestinationStation(),
+                request.getSelectedServices(), distance, tariff);
 
-        log.info("Цена выбранных услуг: {} руб", servicesPrice);
-
-        double carbonFootprint = calculateCarbonFootprint(request.getWeightKg(), distance);
+        log.info("Расчет для вагона {} завершен. Итоговая цена: {} руб",
+                wagon.getWagonNumber(), response.getTotalPrice());
 
-        BigDecimal cargoValue = additionalServicesService.estimateCargoValue(
-                request.getCargoType(),
-                request.getWeightKg()
-        );
+        return response;
+    }
 
-        PriceResponse response = PriceResponse.builder()
-                .basePrice(basePrice)
-                .additionalServicesPrice(servicesPrice)
-                .totalPrice(basePrice.add(servicesPrice))
-                .distanceKm(distance)
-                .carbonFootprintKg(carbonFootprint)
-                .availableServices(allServices)
-                .currency("RUB")
-                .cargoEstimate(PriceResponse.CargoEstimate.builder()
-                        .estimatedValue(cargoValue)
-                        .weightTons(weightTons)
-                        .cargoType(request.getCargoType())
-                        .riskLevel(determineRiskLevel(request.getCargoType(), request.getWeightKg()))
-                        .build())
+    /**
+     * Пакетный расчет: вагоны загружаются одним запросом, расстояния и тарифы
+     * считаются один раз на уникальную пару, позиции рассчитываются параллельно.
+     * Ошибка в одной позиции не прерывает расчет остальных.
+     */
+    @Transactional(readOnly = true)
+    public BatchPriceResponse calculateBatch(BatchPriceRequest request) {
+        List<BatchPriceRequest.Item> items = request.getItems();
+        log.info("Пакетный расчет стоимости: {} позиций", items.size());
+
+        Set<UUID> wagonIds = items.stream()
+                .map(BatchPriceRequest.Item::getWagonId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<UUID, Wagon> wagons = wagonRepository.findAllById(wagonIds).stream()
+                .collect(Collectors.toMap(Wagon::getId, Function.identity()));
+
+        Map<String, Integer> distances = new ConcurrentHashMap<>();
+        Map<String, Optional<WagonTariff>> tariffs = new ConcurrentHashMap<>();
+
+        List<BatchPriceResponse.Item> results = IntStream.range(0, items.size())
+                .parallel()
+                .mapToObj(index -> quoteBatchItem(index, items.get(index), wagons, distances, tariffs))
+                .toList();
+
+        int errorCount = (int) results.stream().filter(item -> item.getError() != null).count();
+        log.info("Пакетный расчет завершен: успешно {}, с ошибкой {}", results.size() - errorCount, errorCount);
+
+        return BatchPriceResponse.builder()
+                .items(results)
+                .successCount(results.size() - errorCount)
+                .errorCount(errorCount)
                 .build();
+    }
 
-        log.info("Расчет для вагона {} завершен. Итоговая цена: {} руб",
-                wagon.getWagonNumber(), response.getTotalPrice());
+    private BatchPriceResponse.Item quoteBatchItem(int index, BatchPriceRequest.Item item,
+                                                   Map<UUID, Wagon> wagons,
+                                                   Map<String, Integer> distances,
+                                                   Map<String, Optional<WagonTariff>> tariffs) {
+        BatchPriceResponse.Item.ItemBuilder result = BatchPriceResponse.Item.builder()
+                .index(index)
+                .wagonId(item.getWagonId());
+        try {
+            final String wagonTypeName;
+            final boolean fallbackToGeneral;
+            if (item.getWagonId() != null) {
+                Wagon wagon = wagons.get(item.getWagonId());
+                if (wagon == null) {
+                    throw new RuntimeException("Вагон не найден с ID: " + item.getWagonId());
+                }
+                wagonTypeName = wagon.getWagonType().name();
+                fallbackToGeneral = true;
+            } else if (item.getWagonType() != null) {
+                wagonTypeName = item.getWagonType();
+                fallbackToGeneral = false;
+            } else {
+                throw new RuntimeException("Укажите ID вагона или тип вагона");
+            }
+            result.wagonType(wagonTypeName);
+
+            int distance = distances.computeIfAbsent(
+                    item.getDepartureStation() + "|" + item.getDestinationStation(),
+                    key -> stationGraph.distanceKm(item.getDepartureStation(), item.getDestinationStation()));
+
+            WagonTariff tariff = cachedTariff(tariffs, wagonTypeName, item.getCargoType())
+                    .or(() -> fallbackToGeneral ? cachedTariff(tariffs, wagonTypeName, "общий") : Optional.empty())
+                    .orElseThrow(() -> new RuntimeException(
+                            "Тариф не найден для вагона: " + wagonTypeName + " и груза: " + item.getCargoType()));
+
+            result.price(buildQuote(item.getCargoType(), item.getWeightKg(),
+                    item.getDepartureStation(), item.getDestinationStation(),
+                    item.getSelectedServices(), distance, tariff));
+        } catch (RuntimeException e) {
+            log.warn("Ошибка расчета позиции {} пакета: {}", index, e.getMessage());
+            result.error(e.getMessage());
+        }
+        return result.build();
+    }
 
-        return response;
+    private Optional<WagonTariff> cachedTariff(Map<String, Optional<WagonTariff>> tariffs,
+                                               String wagonType, String cargoType) {
+        return tariffs.computeIfAbsent(wagonType + "|" + cargoType,
+                key -> tariffMatrix.find(wagonType, cargoType));
     }
 
 
@@ -308,7 +276,7 @@ public class PricingService {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Заказ не найден с ID: " + orderId));
 
-        int distance = getDistanceBetweenStations(
+        int distance = stationGraph.distanceKm(
                 order.getDepartureStation(),
                 order.getDestinationStation()
         );
@@ -326,7 +294,7 @@ public class PricingService {
 
         WagonTariff tariff;
         try {
-            tariff = wagonTariffRepository.findByWagonTypeAndCargoType(
+            tariff = tariffMatrix.find(
                     wagonType,
                     cargoTypeName
             ).orElseThrow(() -> new RuntimeException("Тариф не найден"));
@@ -339,18 +307,9 @@ public class PricingService {
             tariff.setMinPrice(new BigDecimal("4000.00"));
         }
 
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
-
-        BigDecimal estimatedPrice = weightTons
-                .multiply(new BigDecimal(distance))
-                .multiply(tariff.getBaseRatePerKm())
-                .multiply(tariff.getCoefficient())
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal weightTons = PricingKernel.weightTons(weightKg);
 
-        if (tariff.getMinPrice() != null && estimatedPrice.compareTo(tariff.getMinPrice()) < 0) {
-            estimatedPrice = tariff.getMinPrice();
-        }
+        BigDecimal estimatedPrice = PricingKernel.freightPrice(weightKg, distance, tariff);
 
         double carbonFootprint = calculateCarbonFootprint(weightKg, distance);
 
@@ -374,6 +333,57 @@ public class PricingService {
                 .build();
     }
 
+    private PriceResponse buildQuote(String cargoType, Integer weightKg,
+                                     String departureStation, String destinationStation,
+                                     Set<String> selectedServices, int distance, WagonTariff tariff) {
+        BigDecimal weightTons = PricingKernel.weightTons(weightKg);
+
+        BigDecimal basePrice = PricingKernel.freightPrice(weightKg, distance, tariff);
+
+        List<PriceResponse.AdditionalServiceDto> allServices =
+                additionalServicesService.getServicesWithSelection(
+                        cargoType,
+                        departureStation,
+                        destinationStation,
+                        weightKg,
+                        basePrice,
+                        distance,
+                        selectedServices
+                );
+
+        BigDecimal servicesPrice = additionalServicesService.calculateServicesPrice(
+                selectedServices,
+                cargoType,
+                weightKg,
+                basePrice,
+                distance,
+                departureStation,
+                destinationStation
+        );
+
+        log.debug("Базовая цена: {} руб, услуги: {} руб", basePrice, servicesPrice);
+
+        double carbonFootprint = calculateCarbonFootprint(weightKg, distance);
+
+        BigDecimal cargoValue = additionalServicesService.estimateCargoValue(cargoType, weightKg);
+
+        return PriceResponse.builder()
+                .basePrice(basePrice)
+                .additionalServicesPrice(servicesPrice)
+                .totalPrice(basePrice.add(servicesPrice))
+                .distanceKm(distance)
+                .carbonFootprintKg(carbonFootprint)
+                .availableServices(allServices)
+                .currency("RUB")
+                .cargoEstimate(PriceResponse.CargoEstimate.builder()
+                        .estimatedValue(cargoValue)
+                        .weightTons(weightTons)
+                        .cargoType(cargoType)
+                        .riskLevel(determineRiskLevel(cargoType, weightKg))
+                        .build())
+                .build();
+    }
+
     private String determineRiskLevel(String cargoType, Integer weightKg) {
         if (cargoType == null) return "Средний";
 
@@ -390,22 +400,7 @@ public class PricingService {
         }
     }
 
-    private int getDistanceBetweenStations(String from, String to) {
-        return distanceRepository.findByFromStationAndToStation(from, to)
-                .map(StationDistance::getDistanceKm)
-                .orElseGet(() -> distanceRepository.findByFromStationAndToStation(to, from)
-                        .map(StationDistance::getDistanceKm)
-                        .orElse(1000));
-    }
-
     private double calculateCarbonFootprint(Integer weightKg, Integer distanceKm) {
-        BigDecimal weightTons = new BigDecimal(weightKg)
-                .divide(new BigDecimal("1000"), 2, RoundingMode.HALF_UP);
-
-        return weightTons
-                .multiply(new BigDecimal(distanceKm))
-                .multiply(CO2_FACTOR)
-                .setScale(2, RoundingMode.HALF_UP)
-                .doubleValue();
+        return PricingKernel.carbonFootprintKg(weightKg, distanceKm);
     }
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisKeyExpiredEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Возвращает в пул вагоны, чей резерв истёк в Redis.
+ * Основной путь — keyspace-события expired для wagon:reserved:*, которые копятся
+ * и сбрасываются пачкой; запасной — периодический обход индекса сроков резервов.
+ * Каждая пачка освобождается одним SQL-оператором.
+ */
+@Component
+@Slf4j
+public class ReservationExpiryProcessor {
+
+    // Резерв оплаченной или уже отправленной заявки истекает в Redis,
+    // но вагон остаётся за ней; такие строки не трогаем.
+    // created_at < cutoff отсекает резервы, сделанные после проверки ключей в Redis.
+    private static final String RELEASE_SQL =
+            "WITH expired AS (" +
+            "  UPDATE wagon_schedule ws SET status = 'отменен' " +
+            "  WHERE ws.status = 'зарезервирован' " +
+            "    AND ws.wagon_id = ANY (?) " +
+            "    AND ws.created_at < ? " +
+            "    AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.id = ws.order_id " +
+            "                    AND o.status IN ('оплачен', 'в_пути', 'доставлен')) " +
+            "  RETURNING ws.wagon_id" +
+            ") " +
+            "UPDATE wagons w SET status = 'свободен' " +
+            "FROM (SELECT DISTINCT wagon_id FROM expired) e " +
+            "WHERE w.id = e.wagon_id AND w.status = 'забронирован' " +
+            "RETURNING w.id";
+
+    private final WagonReservationEngine reservationEngine;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    private final Queue<UUID> pending = new ConcurrentLinkedQueue<>();
+
+    private final Counter expiredByEvent;
+    private final Counter expiredBySweep;
+    private final Counter released;
+
+    public ReservationExpiryProcessor(WagonReservationEngine reservationEngine,
+                                      JdbcTemplate jdbcTemplate,
+                                      ApplicationEventPublisher eventPublisher,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${reservation-expiry.batch-size:500}") int batchSize) {
+        this.reservationEngine = reservationEngine;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.expiredByEvent = meterRegistry.counter("wagon.reservations.expired", "source", "event");
+        this.expiredBySweep = meterRegistry.counter("wagon.reservations.expired", "source", "sweep");
+        this.released = meterRegistry.counter("wagon.reservations.released");
+    }
+
+    @EventListener
+    public void onKeyExpired(RedisKeyExpiredEvent<?> event) {
+        String key = new String(event.getSource(), StandardCharsets.UTF_8);
+        if (!key.startsWith(WagonReservationEngine.RESERVATION_KEY)) {
+            return;
+        }
+        try {
+            pending.add(UUID.fromString(key.substring(WagonReservationEngine.RESERVATION_KEY.length())));
+            expiredByEvent.increment();
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный ключ резерва в событии истечения: {}", key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${reservation-expiry.flush-interval-ms:1000}")
+    public void flush() {
+        while (!pending.isEmpty()) {
+            List<UUID> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+            UUID wagonId;
+            while (batch.size() < batchSize && (wagonId = pending.poll()) != null) {
+                batch.add(wagonId);
+            }
+            if (!releaseExpired(batch)) {
+                pending.addAll(batch);
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${reservation-expiry.sweep-interval-ms:60000}")
+    public void sweep() {
+        List<UUID> batch;
+        do {
+            long now = System.currentTimeMillis();
+            batch = reservationEngine.collectExpired(now, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            expiredBySweep.increment(batch.size());
+            if (!releaseExpired(batch)) {
+                // Вагоны остались в индексе сроков — их подберёт следующий обход
+                return;
+            }
+            reservationEngine.removeExpired(batch, now);
+        } while (batch.size() == batchSize);
+    }
+
+    private boolean releaseExpired(List<UUID> wagonIds) {
+        if (wagonIds.isEmpty()) {
+            return true;
+        }
+        try {
+            Timestamp cutoff = new Timestamp(System.currentTimeMillis());
+            // Вагон могли снова зарезервировать до обработки события
+            List<UUID> candidates = reservationEngine.withoutLiveReservation(wagonIds);
+            if (candidates.isEmpty()) {
+                return true;
+            }
+
+            List<UUID> releasedIds = jdbcTemplate.query(RELEASE_SQL, ps -> {
+                ps.setArray(1, ps.getConnection().createArrayOf("uuid", candidates.toArray()));
+                ps.setTimestamp(2, cutoff);
+            }, (rs, rowNum) -> rs.getObject("id", UUID.class));
+            released.increment(releasedIds.size());
+            if (!releasedIds.isEmpty()) {
+                eventPublisher.publishEvent(new WagonsChangedEvent(releasedIds));
+            }
+            log.info("Истекшие резервы: проверено {}, освобождено вагонов {}", candidates.size(), releasedIds.size());
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Ошибка освобождения истекших резервов: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.event.WagonScheduleChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Индекс занятости вагонов в памяти: по каждому вагону — интервалы активных рейсов
+ * ("запланирован", "в_пути") в epoch-секундах, отсортированные по началу, и префиксный
+ * максимум концов. Пересечение с окном [start, end] — бинарный поиск и одно сравнение.
+ * Источник истины — wagon_schedule: индекс загружается при старте, обновляется после
+ * коммита изменений расписания и периодически сверяется с БД.
+ */
+@Component
+@Slf4j
+public class ScheduleIntervalIndex {
+
+    static final Set<String> ACTIVE_STATUSES = Set.of("запланирован", "в_пути");
+
+    // Рейс без одной из дат ни с чем не пересекается — так же, как в запросах к БД
+    private static final String ACTIVE_SCHEDULES_SQL =
+            "SELECT id, wagon_id, departure_date, arrival_date FROM wagon_schedule " +
+            "WHERE status IN ('запланирован', 'в_пути') " +
+            "AND departure_date IS NOT NULL AND arrival_date IS NOT NULL";
+
+    private static final int LOAD_ATTEMPTS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Map<UUID, WagonIntervals> byWagon = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    // Счётчик применённых изменений: сверка не подменяет индекс, если они шли во время чтения БД
+    private long generation;
+
+    private final Counter mismatches;
+    private final Counter updates;
+
+    public ScheduleIntervalIndex(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mismatches = meterRegistry.counter("schedule.index.mismatches");
+        this.updates = meterRegistry.counter("schedule.index.updates");
+        Gauge.builder("schedule.index.wagons", this, index -> index.byWagon.size()).register(meterRegistry);
+    }
+
+    record Interval(UUID scheduleId, UUID wagonId, long start, long end) {
+    }
+
+    /**
+     * Начальная загрузка. Изменения, применённые во время чтения БД, могли в него не попасть
+     * (или попасть и быть затёрты), поэтому при сдвиге generation чтение повторяется;
+     * если поток изменений так и не даёт прочитать согласованно, индекс остаётся неготовым
+     * (поиск идёт через БД) и догружается ближайшей сверкой.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        for (int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+            long startedAt;
+            synchronized (this) {
+                startedAt = generation;
+            }
+            List<Interval> intervals = loadFromDatabase();
+            synchronized (this) {
+                if (generation == startedAt) {
+                    replace(intervals);
+                    log.info("Индекс расписания загружен: {} рейсов, вагонов {}", intervals.size(), byWagon.size());
+                    return;
+                }
+            }
+            log.info("Расписание изменилось во время загрузки индекса, попытка {} из {}", attempt, LOAD_ATTEMPTS);
+        }
+        log.warn("Индекс расписания не загружен: расписание менялось во время каждого чтения, загрузит сверка");
+    }
+
+    /**
+     * Атомарная подмена индекса готовым списком интервалов (используется и в бенчмарках без БД)
+     */
+    synchronized void replace(List<Interval> intervals) {
+        Map<UUID, List<Interval>> grouped = new HashMap<>();
+        for (Interval interval : intervals) {
+            grouped.computeIfAbsent(interval.wagonId(), id -> new ArrayList<>()).add(interval);
+        }
+        Map<UUID, WagonIntervals> rebuilt = new ConcurrentHashMap<>(Math.max(16, grouped.size() * 2));
+        grouped.forEach((wagonId, list) -> rebuilt.put(wagonId, WagonIntervals.build(wagonId, list)));
+        byWagon = rebuilt;
+        generation++;
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Вагоны из списка, у которых есть активный рейс, пересекающийся с [start, end] (границы включительно)
+     */
+    public Set<UUID> findConflicting(Collection<UUID> wagonIds, OffsetDateTime start, OffsetDateTime end) {
+        long from = start.toEpochSecond();
+        long to = end.toEpochSecond();
+        Map<UUID, WagonIntervals> snapshot = byWagon;
+
+        Set<UUID> conflicting = new HashSet<>();
+        for (UUID wagonId : wagonIds) {
+            WagonIntervals intervals = snapshot.get(wagonId);
+            if (intervals != null && intervals.overlaps(from, to)) {
+                conflicting.add(wagonId);
+            }
+        }
+        return conflicting;
+    }
+
+    public boolean hasConflict(UUID wagonId, OffsetDateTime start, OffsetDateTime end) {
+        WagonIntervals intervals = byWagon.get(wagonId);
+        return intervals != null && intervals.overlaps(start.toEpochSecond(), end.toEpochSecond());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleChanged(WagonScheduleChangedEvent event) {
+        apply(event);
+    }
+
+    synchronized void apply(WagonScheduleChangedEvent event) {
+        boolean active = ACTIVE_STATUSES.contains(event.status())
+                && event.departureDate() != null && event.arrivalDate() != null;
+
+        byWagon.compute(event.wagonId(), (id, intervals) -> {
+            WagonIntervals base = intervals != null ? intervals.without(event.scheduleId()) : null;
+            if (!active) {
+                return base;
+            }
+            Interval interval = new Interval(event.scheduleId(), event.wagonId(),
+                    event.departureDate().toEpochSecond(), event.arrivalDate().toEpochSecond());
+            return base != null ? base.with(interval) : WagonIntervals.build(id, List.of(interval));
+        });
+        generation++;
+        updates.increment();
+    }
+
+    /**
+     * Сверка с БД: расхождения логируются и считаются в schedule.index.mismatches,
+     * после чего индекс заменяется состоянием БД
+     */
+    @Scheduled(fixedDelayString = "${schedule-index.check-interval-ms:300000}",
+            initialDelayString = "${schedule-index.check-interval-ms:300000}")
+    public void verify() {
+        long startedAt;
+        synchronized (this) {
+            startedAt = generation;
+        }
+        List<Interval> fromDatabase;
+        try {
+            fromDatabase = loadFromDatabase();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сверить индекс расписания с БД: {}", e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            if (generation != startedAt) {
+                log.info("Индекс расписания изменился во время сверки, сверка отложена");
+                return;
+            }
+            if (!ready) {
+                replace(fromDatabase);
+                log.info("Индекс расписания загружен сверкой: {} рейсов", fromDatabase.size());
+                return;
+            }
+            int diff = countMismatches(fromDatabase);
+            if (diff == 0) {
+                log.debug("Индекс расписания совпадает с БД: {} рейсов", fromDatabase.size());
+                return;
+            }
+            mismatches.increment(diff);
+            log.warn("Индекс расписания расходится с БД в {} рейсах, индекс перестроен", diff);
+            replace(fromDatabase);
+        }
+    }
+
+    // Вызывается под монитором this
+    private int countMismatches(List<Interval> fromDatabase) {
+        Map<UUID, Interval> indexed = new HashMap<>();
+        for (WagonIntervals intervals : byWagon.values()) {
+            intervals.forEach(interval -> indexed.put(interval.scheduleId(), interval));
+        }
+        int diff = 0;
+        for (Interval interval : fromDatabase) {
+            if (!interval.equals(indexed.remove(interval.scheduleId()))) {
+                diff++;
+            }
+        }
+        return diff + indexed.size();
+    }
+
+    private List<Interval> loadFromDatabase() {
+        return jdbcTemplate.query(ACTIVE_SCHEDULES_SQL, (rs, rowNum) -> new Interval(
+                rs.getObject("id", UUID.class),
+                rs.getObject("wagon_id", UUID.class),
+                rs.getObject("departure_date", OffsetDateTime.class).toEpochSecond(),
+                rs.getObject("arrival_date", OffsetDateTime.class).toEpochSecond()));
+    }
+
+    /**
+     * Неизменяемый набор интервалов одного вагона. maxEnd[i] — максимум end[0..i]:
+     * среди рейсов с началом не позже конца окна пересечение есть тогда и только тогда,
+     * когда максимальный конец не раньше начала окна.
+     */
+    private static final class WagonIntervals {
+
+        private final UUID wagonId;
+        private final UUID[] ids;
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] maxEnd;
+
+        private WagonIntervals(UUID wagonId, UUID[] ids, long[] starts, long[] ends) {
+            this.wagonId = wagonId;
+            this.ids = ids;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnd = new long[ends.length];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) {
+                max = Math.max(max, ends[i]);
+                maxEnd[i] = max;
+            }
+        }
+
+        static WagonIntervals build(UUID wagonId, List<Interval> intervals) {
+            List<Interval> sorted = new ArrayList<>(intervals);
+            sorted.sort(Comparator.comparingLong(Interval::start));
+            UUID[] ids = new UUID[sorted.size()];
+            long[] starts = new long[sorted.size()];
+            long[] ends = new long[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                Interval interval = sorted.get(i);
+                ids[i] = interval.scheduleId();
+                starts[i] = interval.start();
+                ends[i] = interval.end();
+            }
+            return new WagonIntervals(wagonId, ids, starts, ends);
+        }
+
+        boolean overlaps(long from, long to) {
+            // Число рейсов с началом <= to
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= to) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low > 0 && maxEnd[low - 1] >= from;
+        }
+
+        WagonIntervals with(Interval interval) {
+            List<Interval> list = toList(null);
+            list.add(interval);
+            return build(wagonId, list);
+        }
+
+        // null, если у вагона не осталось рейсов
+        WagonIntervals without(UUID scheduleId) {
+            if (!Arrays.asList(ids).contains(scheduleId)) {
+                return this;
+            }
+            List<Interval> list = toList(scheduleId);
+            return list.isEmpty() ? null : build(wagonId, list);
+        }
+
+        void forEach(Consumer<Interval> action) {
+            toList(null).forEach(action);
+        }
+
+        private List<Interval> toList(UUID excluded) {
+            List<Interval> list = new ArrayList<>(ids.length + 1);
+            for (int i = 0; i < ids.length; i++) {
+                if (!ids[i].equals(excluded)) {
+                    list.add(new Interval(ids[i], wagonId, starts[i], ends[i]));
+                }
+            }
+            return list;
+        }
+    }
+}
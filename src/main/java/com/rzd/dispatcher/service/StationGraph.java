@@ -0,0 +1,329 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.StationDistance;
+import com.rzd.dispatcher.repository.StationDistanceRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Граф расстояний между станциями в памяти.
+ * Прямые пары из station_distances отдаются за O(1), для остальных пар
+ * считается кратчайший маршрут (Дейкстра) с кэшем результатов.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StationGraph {
+
+    public static final int DEFAULT_DISTANCE_KM = 1000;
+    private static final int ROUTE_CACHE_LIMIT = 10_000;
+    // updated_at ставится в начале транзакции, а видна строка после коммита: обновление
+    // перечитывает строки с этим запасом назад, чтобы не пропустить поздно зафиксированные
+    private static final Duration LATE_COMMIT_WINDOW = Duration.ofMinutes(5);
+
+    private final StationDistanceRepository distanceRepository;
+
+    private final Map<UUID, Edge> edgesById = new HashMap<>();
+    private OffsetDateTime lastUpdatedAt;
+    private volatile Snapshot snapshot = Snapshot.build(List.of());
+
+    // До приема запросов: пустой граф отдал бы DEFAULT_DISTANCE_KM для любой пары
+    @PostConstruct
+    public synchronized void load() {
+        replace(distanceRepository.findAll());
+
+        log.info("Граф станций загружен: {} станций, {} расстояний",
+                snapshot.stationNames.length, edgesById.size());
+    }
+
+    /**
+     * Полная замена графа переданным набором расстояний (используется и в бенчмарках без БД)
+     */
+    synchronized void replace(Collection<StationDistance> rows) {
+        edgesById.clear();
+        lastUpdatedAt = null;
+        merge(rows);
+        snapshot = Snapshot.build(edgesById.values());
+    }
+
+    /**
+     * Подтягивает только строки с updated_at не раньше последней загруженной (за вычетом
+     * LATE_COMMIT_WINDOW); updated_at при любом изменении ставит триггер в БД.
+     * Если число строк в таблице разошлось с графом (были удаления) - полная перезагрузка.
+     */
+    @Scheduled(fixedDelayString = "${station-graph.refresh-interval-ms:60000}",
+            initialDelayString = "${station-graph.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        try {
+            List<StationDistance> rows = lastUpdatedAt == null
+                    ? distanceRepository.findAll()
+                    : distanceRepository.findByUpdatedAtGreaterThanEqual(lastUpdatedAt.minus(LATE_COMMIT_WINDOW));
+            int changed = merge(rows);
+            if (changed > 0) {
+                log.info("Граф станций: применено {} измененных расстояний", changed);
+            }
+
+            if (distanceRepository.count() != edgesById.size()) {
+                load();
+                return;
+            }
+
+            if (changed > 0) {
+                snapshot = Snapshot.build(edgesById.values());
+            }
+        } catch (Exception e) {
+            log.error("Не удалось обновить граф станций: {}", e.getMessage());
+        }
+    }
+
+    public int distanceKm(String from, String to) {
+        Snapshot graph = snapshot;
+
+        Integer fromId = graph.stationIds.get(from);
+        Integer toId = graph.stationIds.get(to);
+        if (fromId == null || toId == null) {
+            return DEFAULT_DISTANCE_KM;
+        }
+
+        long key = pairKey(fromId, toId);
+        Integer direct = graph.direct.get(key);
+        if (direct != null) {
+            return direct;
+        }
+
+        Integer cached = graph.routeCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        int route = graph.shortestPath(fromId, toId);
+        int distance = route >= 0 ? route : DEFAULT_DISTANCE_KM;
+
+        if (graph.routeCache.size() < ROUTE_CACHE_LIMIT) {
+            graph.routeCache.put(key, distance);
+            graph.routeCache.put(pairKey(toId, fromId), distance);
+        }
+        return distance;
+    }
+
+    /**
+     * Станции в радиусе radiusKm по кратчайшему маршруту, в порядке удаления (сама станция не входит)
+     */
+    public List<NearbyStation> stationsWithin(String station, int radiusKm) {
+        Snapshot graph = snapshot;
+        Integer sourceId = graph.stationIds.get(station);
+        if (sourceId == null) {
+            return List.of();
+        }
+        return graph.within(sourceId, radiusKm);
+    }
+
+    public record NearbyStation(String station, int distanceKm) {
+    }
+
+    // Возвращает число расстояний, которые добавились или изменились
+    private int merge(Collection<StationDistance> rows) {
+        int changed = 0;
+        for (StationDistance row : rows) {
+            Edge edge = new Edge(row.getFromStation(), row.getToStation(), row.getDistanceKm());
+            if (!edge.equals(edgesById.put(row.getId(), edge))) {
+                changed++;
+            }
+            if (row.getUpdatedAt() != null &&
+                    (lastUpdatedAt == null || row.getUpdatedAt().isAfter(lastUpdatedAt))) {
+                lastUpdatedAt = row.getUpdatedAt();
+            }
+        }
+        return changed;
+    }
+
+    private static long pairKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    private record Edge(String from, String to, int distanceKm) {
+    }
+
+    /**
+     * Неизменяемый снимок графа: станции пронумерованы, смежность хранится в CSR-виде
+     * (offsets/edges/weights), кэш маршрутов живет вместе со снимком.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, Integer> stationIds;
+        private final String[] stationNames;
+        private final int[] offsets;
+        private final int[] edges;
+        private final int[] weights;
+        private final Map<Long, Integer> direct;
+        private final Map<Long, Integer> routeCache = new ConcurrentHashMap<>();
+
+        private Snapshot(Map<String, Integer> stationIds, String[] stationNames, int[] offsets,
+                         int[] edges, int[] weights, Map<Long, Integer> direct) {
+            this.stationIds = stationIds;
+            this.stationNames = stationNames;
+            this.offsets = offsets;
+            this.edges = edges;
+            this.weights = weights;
+            this.direct = direct;
+        }
+
+        static Snapshot build(Collection<Edge> rows) {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> names = new ArrayList<>();
+            for (Edge row : rows) {
+                for (String station : new String[]{row.from(), row.to()}) {
+                    if (!ids.containsKey(station)) {
+                        ids.put(station, names.size());
+                        names.add(station);
+                    }
+                }
+            }
+
+            // Прямое направление приоритетнее обратного, как и в прежнем поиске по двум запросам
+            Map<Long, Integer> direct = new HashMap<>();
+            for (Edge row : rows) {
+                direct.put(pairKey(ids.get(row.from()), ids.get(row.to())), row.distanceKm());
+            }
+            for (Edge row : rows) {
+                direct.putIfAbsent(pairKey(ids.get(row.to()), ids.get(row.from())), row.distanceKm());
+            }
+
+            int n = names.size();
+            int[] offsets = new int[n + 1];
+            for (long key : direct.keySet()) {
+                offsets[(int) (key >>> 32) + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] edges = new int[direct.size()];
+            int[] weights = new int[direct.size()];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (Map.Entry<Long, Integer> entry : direct.entrySet()) {
+                int from = (int) (entry.getKey() >>> 32);
+                int slot = cursor[from]++;
+                edges[slot] = (int) entry.getKey().longValue();
+                weights[slot] = entry.getValue();
+            }
+
+            return new Snapshot(ids, names.toArray(new String[0]), offsets, edges, weights, direct);
+        }
+
+        /**
+         * Дейкстра на двоичной куче из упакованных long (расстояние << 32 | станция).
+         * Возвращает -1, если маршрута нет.
+         */
+        int shortestPath(int source, int target) {
+            int[] dist = new int[stationNames.length];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            dist[source] = 0;
+
+            long[] heap = new long[edges.length + 1];
+            int size = 0;
+            heap[size++] = source;
+
+            while (size > 0) {
+                long top = heap[0];
+                heap[0] = heap[--size];
+                siftDown(heap, size);
+
+                int d = (int) (top >>> 32);
+                int u = (int) top;
+                if (d > dist[u]) continue;
+                if (u == target) return d;
+
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int v = edges[i];
+                    int nd = d + weights[i];
+                    if (nd < dist[v]) {
+                        dist[v] = nd;
+                        if (size == heap.length) {
+                            heap = Arrays.copyOf(heap, heap.length * 2);
+                        }
+                        heap[size] = ((long) nd << 32) | v;
+                        siftUp(heap, size++);
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Та же Дейкстра без цели, но с отсечением по радиусу: станции снимаются с кучи
+         * в порядке расстояния, поэтому результат уже отсортирован.
+         */
+        List<NearbyStation> within(int source, int radius) {
+            int[] dist = new int[stationNames.length];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            dist[source] = 0;
+
+            long[] heap = new long[edges.length + 1];
+            int size = 0;
+            heap[size++] = source;
+            List<NearbyStation> result = new ArrayList<>();
+
+            while (size > 0) {
+                long top = heap[0];
+                heap[0] = heap[--size];
+                siftDown(heap, size);
+
+                int d = (int) (top >>> 32);
+                int u = (int) top;
+                if (d > dist[u]) continue;
+                if (u != source) {
+                    result.add(new NearbyStation(stationNames[u], d));
+                }
+
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int v = edges[i];
+                    int nd = d + weights[i];
+                    if (nd <= radius && nd < dist[v]) {
+                        dist[v] = nd;
+                        if (size == heap.length) {
+                            heap = Arrays.copyOf(heap, heap.length * 2);
+                        }
+                        heap[size] = ((long) nd << 32) | v;
+                        siftUp(heap, size++);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static void siftUp(long[] heap, int i) {
+            long value = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        private static void siftDown(long[] heap, int size) {
+            if (size == 0) return;
+            long value = heap[0];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if (heap[child] >= value) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
+        }
+    }
+}
@@ -1,24 +1,56 @@
 package com.rzd.dispatcher.service;
 
+import com.rzd.dispatcher.model.dto.response.StationSuggestionResponse;
 import com.rzd.dispatcher.repository.StationRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.util.List;
-import java.util.Map;
 
 @Service
+@Slf4j
 public class StationService {
 
+    private static final int SUGGESTIONS_LIMIT = 10;
+    // pg_trgm не выделяет триграмм из запроса короче трёх символов, и ILIKE уходит мимо GIN-индекса
+    private static final int MIN_DATABASE_QUERY_LENGTH = 3;
+
+    // Нет при station-search.in-memory=false (очень большие справочники станций)
+    @Autowired(required = false)
+    private FreeFleetIndex freeFleetIndex;
+
     @Autowired
     private StationRepository stationRepository;
 
-    public List<Map<String, Object>> searchStationsWithFreeWagons(String query) {
+    public List<StationSuggestionResponse> searchStationsWithFreeWagons(String query) {
         
-        if (query == null || query.trim().length() < 2) {
+        if (query == null || query.trim().length() < FreeFleetIndex.MIN_QUERY_LENGTH) {
             return List.of();
         }
 
-        
-        return stationRepository.findStationsWithFreeWagons(query.trim());
+        // Подсказки на каждое нажатие клавиши отдаются из памяти, без запроса к БД;
+        // до загрузки индекса - триграммный поиск по справочнику станций
+        if (freeFleetIndex != null && freeFleetIndex.isReady()) {
+            return freeFleetIndex.search(query, SUGGESTIONS_LIMIT);
+        }
+        if (query.trim().length() < MIN_DATABASE_QUERY_LENGTH) {
+            return List.of();
+        }
+        return stationRepository.findStationsWithFreeWagons(query.trim(), SUGGESTIONS_LIMIT);
+    }
+
+    // Представление читается, только пока индекса в памяти нет; с готовым индексом не обновляется
+    @Scheduled(fixedDelayString = "${station-search.view-refresh-interval-ms:60000}",
+            initialDelayString = "${station-search.view-refresh-interval-ms:60000}")
+    public void refreshFreeFleetView() {
+        if (freeFleetIndex != null && freeFleetIndex.isReady()) {
+            return;
+        }
+        try {
+            stationRepository.refreshFreeFleetView();
+        } catch (Exception e) {
+            log.error("Не удалось обновить представление station_free_fleet: {}", e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
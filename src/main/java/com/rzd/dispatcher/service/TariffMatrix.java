@@ -0,0 +1,182 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.entity.WagonTariff;
+import com.rzd.dispatcher.model.enums.CargoType;
+import com.rzd.dispatcher.model.enums.WagonType;
+import com.rzd.dispatcher.repository.WagonTariffRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Матрица тарифов в памяти: строки - типы вагонов (WagonType.ordinal),
+ * столбцы - типы груза (CargoType.ordinal, затем остальные значения из таблицы, например "общий").
+ * Снимок неизменяемый и подменяется целиком при смене версии wagon_tariffs.
+ */
+@Component
+@Slf4j
+public class TariffMatrix {
+
+    // SQLSTATE undefined_table
+    private static final String UNDEFINED_TABLE = "42P01";
+
+    private static final String VERSION_QUERY =
+            "SELECT version::text FROM wagon_tariffs_version WHERE id = 1";
+
+    // Если скрипт database/wagon_tariffs_version.sql не применен - сравниваем контрольную сумму таблицы
+    private static final String CHECKSUM_QUERY =
+            "SELECT md5(coalesce(string_agg(id::text || wagon_type || cargo_type || base_rate_per_km::text || " +
+            "coalesce(coefficient::text, '') || coalesce(min_price::text, ''), ',' ORDER BY id), '')) " +
+            "FROM wagon_tariffs";
+
+    private final WagonTariffRepository tariffRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter reloads;
+
+    private volatile Snapshot snapshot = Snapshot.build(List.of());
+    private String loadedVersion;
+    private boolean versionTableMissing;
+
+    public TariffMatrix(WagonTariffRepository tariffRepository, JdbcTemplate jdbcTemplate,
+                        MeterRegistry meterRegistry) {
+        this.tariffRepository = tariffRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.hits = Counter.builder("tariff.matrix.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("tariff.matrix.lookups").tag("result", "miss").register(meterRegistry);
+        this.reloads = Counter.builder("tariff.matrix.reloads").register(meterRegistry);
+        Gauge.builder("tariff.matrix.size", this, matrix -> matrix.snapshot.size).register(meterRegistry);
+    }
+
+    // До приема запросов: по пустой матрице котировки вышли бы нулевыми
+    @PostConstruct
+    public synchronized void load() {
+        String version = currentVersion();
+        replace(tariffRepository.findAll(), version);
+
+        log.info("Матрица тарифов загружена: {} тарифов, версия {}", snapshot.size, version);
+    }
+
+    /**
+     * Атомарная подмена матрицы готовым списком тарифов (используется и в бенчмарках без БД)
+     */
+    synchronized void replace(List<WagonTariff> tariffs, String version) {
+        snapshot = Snapshot.build(tariffs);
+        loadedVersion = version;
+        reloads.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${tariff-matrix.refresh-interval-ms:30000}",
+            initialDelayString = "${tariff-matrix.refresh-interval-ms:30000}")
+    public synchronized void refresh() {
+        try {
+            if (!Objects.equals(currentVersion(), loadedVersion)) {
+                load();
+            }
+        } catch (Exception e) {
+            log.error("Не удалось обновить матрицу тарифов: {}", e.getMessage());
+        }
+    }
+
+    public Optional<WagonTariff> find(String wagonType, String cargoType) {
+        WagonTariff tariff = snapshot.get(wagonType, cargoType);
+        if (tariff == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(tariff);
+    }
+
+    private String currentVersion() {
+        if (!versionTableMissing) {
+            try {
+                return jdbcTemplate.queryForObject(VERSION_QUERY, String.class);
+            } catch (BadSqlGrammarException e) {
+                // Обрыв соединения или таймаут сюда не попадают: таблицы именно нет
+                if (!UNDEFINED_TABLE.equals(e.getSQLException().getSQLState())) {
+                    throw e;
+                }
+                log.warn("Таблицы wagon_tariffs_version нет, версия тарифов по контрольной сумме");
+                versionTableMissing = true;
+            }
+        }
+        return jdbcTemplate.queryForObject(CHECKSUM_QUERY, String.class);
+    }
+
+    private static final class Snapshot {
+
+        private final Map<String, Integer> wagonIndex;
+        private final Map<String, Integer> cargoIndex;
+        private final WagonTariff[][] cells;
+        private final int size;
+
+        private Snapshot(Map<String, Integer> wagonIndex, Map<String, Integer> cargoIndex,
+                         WagonTariff[][] cells, int size) {
+            this.wagonIndex = wagonIndex;
+            this.cargoIndex = cargoIndex;
+            this.cells = cells;
+            this.size = size;
+        }
+
+        static Snapshot build(List<WagonTariff> tariffs) {
+            Map<String, Integer> wagonIndex = new HashMap<>();
+            for (WagonType type : WagonType.values()) {
+                wagonIndex.put(type.name(), type.ordinal());
+            }
+            Map<String, Integer> cargoIndex = new HashMap<>();
+            for (CargoType type : CargoType.values()) {
+                cargoIndex.put(type.name(), type.ordinal());
+            }
+            for (WagonTariff tariff : tariffs) {
+                wagonIndex.putIfAbsent(tariff.getWagonType(), wagonIndex.size());
+                cargoIndex.putIfAbsent(tariff.getCargoType(), cargoIndex.size());
+            }
+
+            WagonTariff[][] cells = new WagonTariff[wagonIndex.size()][cargoIndex.size()];
+            int size = 0;
+            for (WagonTariff tariff : tariffs) {
+                int row = wagonIndex.get(tariff.getWagonType());
+                int column = cargoIndex.get(tariff.getCargoType());
+                if (cells[row][column] == null) {
+                    cells[row][column] = copyOf(tariff);
+                    size++;
+                }
+            }
+
+            return new Snapshot(Map.copyOf(wagonIndex), Map.copyOf(cargoIndex), cells, size);
+        }
+
+        WagonTariff get(String wagonType, String cargoType) {
+            Integer row = wagonIndex.get(wagonType);
+            Integer column = cargoIndex.get(cargoType);
+            if (row == null || column == null) {
+                return null;
+            }
+            return cells[row][column];
+        }
+
+        // Отдельная копия, чтобы снимок не зависел от сессии Hibernate
+        private static WagonTariff copyOf(WagonTariff source) {
+            WagonTariff copy = new WagonTariff();
+            copy.setId(source.getId());
+            copy.setWagonType(source.getWagonType());
+            copy.setCargoType(source.getCargoType());
+            copy.setBaseRatePerKm(source.getBaseRatePerKm());
+            copy.setCoefficient(source.getCoefficient());
+            copy.setMinPrice(source.getMinPrice());
+            copy.setDescription(source.getDescription());
+            return copy;
+        }
+    }
+}
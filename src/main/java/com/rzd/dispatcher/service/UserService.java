@@ -1,16 +1,21 @@
 package com.rzd.dispatcher.service;
 
 import com.rzd.dispatcher.model.entity.User;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.UserProfileResponse;
 import com.rzd.dispatcher.model.dto.response.UserResponse;
+import com.rzd.dispatcher.model.enums.Role;
 import com.rzd.dispatcher.repository.UserRepository;
+import com.rzd.dispatcher.security.PrincipalResolver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -18,6 +23,7 @@ import java.util.UUID;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final PrincipalResolver principalResolver;
 
     @Transactional(readOnly = true)
     public UserProfileResponse getUserProfile(String email) {
@@ -85,15 +91,23 @@ public class UserService {
     }
 
     @Transactional(readOnly = true)
-    public List<User> getAllUsers() {
-        log.info("Получение списка всех пользователей");
-        return userRepository.findAll();
+    public CursorPage<User> getUsersPage(Role role, String userType, String cursor, Integer limit) {
+        int pageSize = CursorPage.normalizeLimit(limit);
+        CursorPage.Position after = CursorPage.decode(cursor);
+        log.info("Получение страницы пользователей: role={}, userType={}, limit={}", role, userType, pageSize);
+        List<User> rows = userRepository.findPage(role, userType,
+                after != null ? after.createdAt() : null,
+                after != null ? after.id() : null,
+                Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Function.identity(),
+                u -> CursorPage.encode(u.getCreatedAt(), u.getId()));
     }
 
     @Transactional
     public void deleteUser(UUID id) {
         log.info("Удаление пользователя с ID: {}", id);
         userRepository.deleteById(id);
+        principalResolver.evict(id);
         log.info("Пользователь {} успешно удален", id);
     }
 }
\ No newline at end of file
@@ -1,38 +1,54 @@
 package com.rzd.dispatcher.service;
 
-import com.rzd.dispatcher.model.dto.response.OrderResponse;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.entity.Wagon;
 import com.rzd.dispatcher.model.enums.WagonStatus;
+import com.rzd.dispatcher.model.enums.WagonType;
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
 import com.rzd.dispatcher.repository.WagonRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class WagonAdminService {
     private final WagonRepository wagonRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public Wagon addWagon(Wagon wagon) {
-        return wagonRepository.save(wagon);
+        Wagon saved = wagonRepository.save(wagon);
+        eventPublisher.publishEvent(WagonsChangedEvent.of(saved.getId()));
+        return saved;
     }
 
     @Transactional
     public void updateStatus(UUID id, WagonStatus status) {
-        wagonRepository.updateStatus(id, status); 
+        wagonRepository.updateStatus(id, status);
+        eventPublisher.publishEvent(WagonsChangedEvent.of(id));
     }
 
-    @Transactional
-    public List<Wagon> getAllWagons(){
-        return wagonRepository.findAll();
+    @Transactional(readOnly = true)
+    public CursorPage<Wagon> getWagonsPage(WagonStatus status, WagonType wagonType, String station,
+                                           String cursor, Integer limit) {
+        int pageSize = CursorPage.normalizeLimit(limit);
+        CursorPage.Position after = CursorPage.decode(cursor);
+        List<Wagon> rows = wagonRepository.findPage(status, wagonType, station,
+                after != null ? after.id() : null,
+                Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, Function.identity(), w -> CursorPage.encode(w.getId()));
     }
 
     @Transactional
     public void deleteWagon(UUID id) {
         wagonRepository.deleteById(id);
+        eventPublisher.publishEvent(WagonsChangedEvent.of(id));
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.rzd.dispatcher.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Резервы вагонов в Redis. Проверка ключа, запись заказа, индекс сроков
+ * и событие в канал выполняются одним Lua-скриптом, без окон между шагами.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WagonReservationEngine {
+
+    static final String RESERVATION_KEY = "wagon:reserved:";
+    static final String EXPIRY_INDEX_KEY = "wagon:reservations:expiry";
+    static final String EVENTS_CHANNEL = "wagon:reservations";
+
+    private static final RedisScript<Long> RESERVE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/reserve-wagon.lua"), Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/release-wagon.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> COLLECT_EXPIRED_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/collect-expired-reservations.lua"), List.class);
+    private static final RedisScript<Long> REMOVE_EXPIRED_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/remove-expired-reservations.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public enum Claim {
+        CLAIMED,
+        ALREADY_HELD,
+        TAKEN
+    }
+
+    static String reservationKey(UUID wagonId) {
+        return RESERVATION_KEY + wagonId;
+    }
+
+    public Claim claim(UUID wagonId, UUID orderId, Duration ttl) {
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        Long result = redisTemplate.execute(RESERVE_SCRIPT,
+                List.of(reservationKey(wagonId), EXPIRY_INDEX_KEY),
+                orderId.toString(),
+                String.valueOf(ttl.toSeconds()),
+                wagonId.toString(),
+                String.valueOf(expiresAt),
+                EVENTS_CHANNEL);
+
+        if (result == null || result == 0L) {
+            return Claim.TAKEN;
+        }
+        return result == 2L ? Claim.ALREADY_HELD : Claim.CLAIMED;
+    }
+
+    /**
+     * Снимает резерв, только если он принадлежит orderId; при orderId == null — безусловно.
+     */
+    public boolean release(UUID wagonId, UUID orderId) {
+        Long result = redisTemplate.execute(RELEASE_SCRIPT,
+                List.of(reservationKey(wagonId), EXPIRY_INDEX_KEY),
+                orderId != null ? orderId.toString() : "",
+                wagonId.toString(),
+                EVENTS_CHANNEL);
+
+        boolean released = result != null && result == 1L;
+        log.debug("Снятие резерва вагона {} (заказ {}): {}", wagonId, orderId, released);
+        return released;
+    }
+
+    /**
+     * До limit вагонов из индекса сроков, чьи резервы истекли к моменту now (epoch ms).
+     * Индекс не меняется: после освобождения в БД вагоны снимает removeExpired.
+     */
+    public List<UUID> collectExpired(long now, int limit) {
+        List<?> result = redisTemplate.execute(COLLECT_EXPIRED_SCRIPT,
+                List.of(EXPIRY_INDEX_KEY),
+                String.valueOf(now),
+                String.valueOf(limit),
+                RESERVATION_KEY);
+        if (result == null || result.isEmpty()) {
+            return List.of();
+        }
+        List<UUID> wagonIds = new ArrayList<>(result.size());
+        for (Object wagonId : result) {
+            wagonIds.add(UUID.fromString(wagonId.toString()));
+        }
+        return wagonIds;
+    }
+
+    /**
+     * Снимает из индекса сроков вагоны, выбранные collectExpired(now, ...); вагоны,
+     * зарезервированные после этого заново, остаются в индексе.
+     */
+    public void removeExpired(List<UUID> wagonIds, long now) {
+        if (wagonIds.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(wagonIds.size() + 1);
+        args.add(String.valueOf(now));
+        for (UUID wagonId : wagonIds) {
+            args.add(wagonId.toString());
+        }
+        redisTemplate.execute(REMOVE_EXPIRED_SCRIPT, List.of(EXPIRY_INDEX_KEY), args.toArray());
+    }
+
+    /**
+     * Вагоны из списка, у которых прямо сейчас нет резерва в Redis (один MGET).
+     */
+    public List<UUID> withoutLiveReservation(List<UUID> wagonIds) {
+        List<String> keys = new ArrayList<>(wagonIds.size());
+        for (UUID wagonId : wagonIds) {
+            keys.add(reservationKey(wagonId));
+        }
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return List.of();
+        }
+        List<UUID> free = new ArrayList<>(wagonIds.size());
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == null) {
+                free.add(wagonIds.get(i));
+            }
+        }
+        return free;
+    }
+}
@@ -1,24 +1,30 @@
 package com.rzd.dispatcher.service;
 
 import com.rzd.dispatcher.model.dto.request.WagonSearchRequest;
+import com.rzd.dispatcher.model.dto.response.CursorPage;
 import com.rzd.dispatcher.model.dto.response.WagonAvailabilityResponse;
 import com.rzd.dispatcher.model.entity.*;
 import com.rzd.dispatcher.model.enums.OrderStatus;
 import com.rzd.dispatcher.model.enums.WagonStatus;
+import com.rzd.dispatcher.model.event.WagonScheduleChangedEvent;
+import com.rzd.dispatcher.model.event.WagonsChangedEvent;
 import com.rzd.dispatcher.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,113 +32,150 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WagonSearchService {
 
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 100;
+
     private final WagonRepository wagonRepository;
     private final WagonScheduleRepository scheduleRepository;
-    private final WagonTariffRepository tariffRepository;
+    private final TariffMatrix tariffMatrix;
 
-    private final StationDistanceRepository distanceRepository;
+    private final StationGraph stationGraph;
     private final RedisTemplate<String, String> redisTemplate;
+    private final WagonReservationEngine reservationEngine;
+    private final ScheduleIntervalIndex scheduleIndex;
+    private final ApplicationEventPublisher eventPublisher;
 
-    private static final String WAGON_RESERVATION_KEY = "wagon:reserved:";
+    @Value("${wagon-search.nearby-radius-km:300}")
+    private int nearbyRadiusKm;
 
      
      
      
 
+    /**
+     * Ранжированный поиск: для всех кандидатов считается только дешёвый балл совпадения,
+     * в ограниченной куче остаются лучшие limit + 1 после курсора, и ответы с ценой
+     * строятся лишь для попавших на страницу. Порядок выдачи — балл по убыванию,
+     * затем расстояние до станции и id вагона; курсор хранит этот ключ последнего элемента.
+     */
     @Transactional(readOnly = true)
-    public List<WagonAvailabilityResponse> findAvailableWagons(WagonSearchRequest request) {
+    public CursorPage<WagonAvailabilityResponse> findAvailableWagons(WagonSearchRequest request) {
         log.info("Поиск вагонов: станция={}, вес={}кг, тип={}",
                 request.getDepartureStation(), request.getWeightKg(), request.getPreferredWagonType());
 
-        List<Wagon> wagonsOnStation = wagonRepository.findAvailableWagons(
-                request.getDepartureStation(),
-                request.getWeightKg(),
-                request.getVolumeM3() != null ? request.getVolumeM3() : 0
-        );
+        int limit = normalizeLimit(request.getLimit());
+        CursorPage.RankPosition after = CursorPage.decodeRank(request.getCursor());
+        OffsetDateTime requiredDate = convertToOffsetDateTime(request.getRequiredDepartureDate());
+        List<Wagon> wagonsOnStation = findCandidateWagons(request, requiredDate);
 
         log.info("Найдено вагонов в БД до фильтрации: {}", wagonsOnStation.size());
 
-        List<WagonAvailabilityResponse> result = new ArrayList<>();
-
+        List<Wagon> candidates = new ArrayList<>(wagonsOnStation.size());
         for (Wagon wagon : wagonsOnStation) {
-            if (request.getPreferredWagonType() != null) {
-                if (!wagon.getWagonType().name().equalsIgnoreCase(request.getPreferredWagonType())) {
-                    continue;
-                }
-            }
-
-            if (isWagonReserved(wagon.getId())) {
-                continue;
+            if (matchesPreferredType(wagon, request)) {
+                candidates.add(wagon);
             }
+        }
 
-            OffsetDateTime requiredDate = convertToOffsetDateTime(request.getRequiredDepartureDate());
+        Set<UUID> reservedWagonIds = findReservedWagonIds(candidates);
+        TopRanked top = new TopRanked(limit + 1, after);
 
-            if (isWagonAvailableForDates(wagon, requiredDate)) {
-                WagonAvailabilityResponse response = buildWagonResponse(wagon, request);
-                result.add(response);
+        int availableOnStation = 0;
+        for (Wagon wagon : candidates) {
+            if (reservedWagonIds.contains(wagon.getId())) {
+                continue;
             }
+            availableOnStation++;
+            top.offer(new RankedWagon(wagon, 0, calculateMatchPercentage(wagon, request)));
         }
 
-        if (request.isAllowAlternativeStations() && result.size() < 3) {
-            List<Wagon> nearbyWagons = findWagonsOnNearbyStations(request);
-            for (Wagon wagon : nearbyWagons) {
-                if (result.size() >= 10) break;
-                if (isWagonReserved(wagon.getId())) continue;
-                WagonAvailabilityResponse response = buildWagonResponseWithDistance(wagon, request);
-                result.add(response);
-            }
+        if (request.isAllowAlternativeStations() && availableOnStation < 3) {
+            rankWagonsOnNearbyStations(request, requiredDate, top);
         }
 
-        result.sort((a, b) -> b.getMatchPercentage().compareTo(a.getMatchPercentage()));
-        log.info("Найдено {} доступных вагонов", result.size());
-        return result;
+        PriceEstimateContext priceContext = buildPriceEstimateContext(request);
+        CursorPage<WagonAvailabilityResponse> page = CursorPage.of(top.bestFirst(), limit,
+                ranked -> buildWagonResponse(ranked, request, priceContext),
+                ranked -> CursorPage.encode(ranked.matchPercentage(), ranked.distanceKm(), ranked.wagon().getId()));
+        log.info("Найдено {} доступных вагонов (на станции {}), есть ещё: {}",
+                page.getItems().size(), availableOnStation, page.isHasMore());
+        return page;
+    }
+
+    private static boolean matchesPreferredType(Wagon wagon, WagonSearchRequest request) {
+        return request.getPreferredWagonType() == null
+                || wagon.getWagonType().name().equalsIgnoreCase(request.getPreferredWagonType());
+    }
+
+    private static int normalizeLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
     }
 
      
      
      
      
+    @Transactional
     public boolean reserveWagon(UUID wagonId, UUID orderId, int minutes) {
         log.info("Резервирование вагона {} для заказа {} на {} минут", wagonId, orderId, minutes);
+        if (minutes <= 0) {
+            throw new RuntimeException("Срок резерва должен быть положительным");
+        }
 
-        String redisKey = WAGON_RESERVATION_KEY + wagonId;
-        Boolean isReserved = redisTemplate.opsForValue()
-                .setIfAbsent(redisKey, orderId.toString(), minutes, TimeUnit.MINUTES);
-
-        if (Boolean.FALSE.equals(isReserved)) {
+        WagonReservationEngine.Claim claim = reservationEngine.claim(wagonId, orderId, Duration.ofMinutes(minutes));
+        if (claim == WagonReservationEngine.Claim.TAKEN) {
             log.warn("Вагон {} уже зарезервирован", wagonId);
             return false;
         }
+        if (claim == WagonReservationEngine.Claim.ALREADY_HELD) {
+            log.info("Вагон {} уже зарезервирован за заказом {}", wagonId, orderId);
+            return true;
+        }
 
-        try {
-            Wagon wagon = wagonRepository.findById(wagonId)
-                    .orElseThrow(() -> new RuntimeException("Вагон не найден"));
-
-            if (wagon.getStatus() != WagonStatus.свободен) {
-                redisTemplate.delete(redisKey);
-                log.warn("Вагон {} не свободен (статус: {})", wagonId, wagon.getStatus());
-                return false;
-            }
-
-            wagon.setStatus(WagonStatus.забронирован);
-            wagonRepository.save(wagon);
-
-            WagonSchedule schedule = new WagonSchedule();
-            schedule.setWagon(wagon);
-            schedule.setOrderId(orderId);
-            schedule.setStatus("зарезервирован");
-            schedule.setDepartureStation("ожидает");
-            schedule.setArrivalStation("ожидает");
-            scheduleRepository.save(schedule);
+        releaseClaimOnRollback(wagonId, orderId);
 
-            log.info("Вагон {} успешно зарезервирован для заказа {}", wagonId, orderId);
-            return true;
+        // Условный UPDATE вместо чтения и save: проигравший гонку просто получает 0 строк
+        int updated = wagonRepository.updateStatusIfCurrent(wagonId, WagonStatus.свободен, WagonStatus.забронирован);
+        if (updated == 0) {
+            reservationEngine.release(wagonId, orderId);
+            log.warn("Вагон {} не найден или не свободен", wagonId);
+            return false;
+        }
+        eventPublisher.publishEvent(WagonsChangedEvent.of(wagonId));
+
+        WagonSchedule schedule = new WagonSchedule();
+        schedule.setWagon(wagonRepository.getReferenceById(wagonId));
+        schedule.setOrderId(orderId);
+        schedule.setStatus("зарезервирован");
+        schedule.setDepartureStation("ожидает");
+        schedule.setArrivalStation("ожидает");
+        scheduleRepository.save(schedule);
+        eventPublisher.publishEvent(WagonScheduleChangedEvent.of(schedule));
+
+        log.info("Вагон {} успешно зарезервирован для заказа {}", wagonId, orderId);
+        return true;
+    }
 
-        } catch (Exception e) {
-            redisTemplate.delete(redisKey);
-            log.error("Ошибка при резервировании вагона: {}", e.getMessage());
-            throw e;
+    /**
+     * Если транзакция (в том числе внешняя, например создание заявки) не зафиксируется,
+     * захват в Redis снимается, но только пока он ещё принадлежит этому заказу.
+     */
+    private void releaseClaimOnRollback(UUID wagonId, UUID orderId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    reservationEngine.release(wagonId, orderId);
+                    log.info("Резерв вагона {} снят после отката транзакции заказа {}", wagonId, orderId);
+                }
+            }
+        });
     }
 
      
@@ -142,20 +185,21 @@ public class WagonSearchService {
     public void releaseWagon(UUID wagonId) {
         log.info("Освобождение вагона {}", wagonId);
 
-        String redisKey = WAGON_RESERVATION_KEY + wagonId;
-        redisTemplate.delete(redisKey);
+        reservationEngine.release(wagonId, null);
 
         Wagon wagon = wagonRepository.findById(wagonId)
                 .orElseThrow(() -> new RuntimeException("Вагон не найден"));
 
         wagon.setStatus(WagonStatus.свободен);
         wagonRepository.save(wagon);
+        eventPublisher.publishEvent(WagonsChangedEvent.of(wagonId));
 
         List<WagonSchedule> schedules = scheduleRepository.findByWagonId(wagonId);
         for (WagonSchedule schedule : schedules) {
             if ("зарезервирован".equals(schedule.getStatus())) {
                 schedule.setStatus("отменен");
                 scheduleRepository.save(schedule);
+                eventPublisher.publishEvent(WagonScheduleChangedEvent.of(schedule));
                 break;
             }
         }
@@ -167,10 +211,27 @@ public class WagonSearchService {
      
      
 
-    private boolean isWagonReserved(UUID wagonId) {
-        String redisKey = WAGON_RESERVATION_KEY + wagonId;
-        Boolean hasKey = redisTemplate.hasKey(redisKey);
-        return Boolean.TRUE.equals(hasKey);
+    /**
+     * Проверка резервов всех кандидатов одним MGET вместо hasKey на каждый вагон
+     */
+    private Set<UUID> findReservedWagonIds(List<Wagon> wagons) {
+        if (wagons.isEmpty()) return Set.of();
+
+        List<String> keys = new ArrayList<>(wagons.size());
+        for (Wagon wagon : wagons) {
+            keys.add(WagonReservationEngine.reservationKey(wagon.getId()));
+        }
+
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) return Set.of();
+
+        Set<UUID> reserved = new HashSet<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                reserved.add(wagons.get(i).getId());
+            }
+        }
+        return reserved;
     }
 
     private OffsetDateTime convertToOffsetDateTime(LocalDateTime localDateTime) {
@@ -178,60 +239,141 @@ public class WagonSearchService {
         return localDateTime.atOffset(ZoneOffset.ofHours(3));
     }
 
-    private boolean isWagonAvailableForDates(Wagon wagon, OffsetDateTime requiredDate) {
-        if (requiredDate == null) return true;
-
-        OffsetDateTime start = requiredDate.minusDays(1);
-        OffsetDateTime end = requiredDate.plusDays(1);
+    /**
+     * Свободные вагоны на станции без рейсов, пересекающих окно ±1 день от даты отправления.
+     * Конфликты проверяются пачкой по индексу расписания в памяти; пока он не загружен —
+     * в том же запросе к БД (NOT EXISTS)
+     */
+    private List<Wagon> findCandidateWagons(WagonSearchRequest request, OffsetDateTime requiredDate) {
+        int volume = request.getVolumeM3() != null ? request.getVolumeM3() : 0;
+
+        if (requiredDate == null) {
+            return wagonRepository.findAvailableWagons(
+                    request.getDepartureStation(), request.getWeightKg(), volume);
+        }
 
-        List<WagonSchedule> conflicts = scheduleRepository.findConflictingSchedules(
-                wagon.getId(), start, end);
+        if (scheduleIndex.isReady()) {
+            List<Wagon> wagons = wagonRepository.findAvailableWagons(
+                    request.getDepartureStation(), request.getWeightKg(), volume);
+            Set<UUID> conflicting = scheduleIndex.findConflicting(
+                    wagons.stream().map(Wagon::getId).toList(),
+                    requiredDate.minusDays(1),
+                    requiredDate.plusDays(1));
+            if (conflicting.isEmpty()) {
+                return wagons;
+            }
+            return wagons.stream()
+                    .filter(w -> !conflicting.contains(w.getId()))
+                    .collect(Collectors.toList());
+        }
 
-        return conflicts.isEmpty();
+        return wagonRepository.findAvailableWagonsWithoutConflicts(
+                request.getDepartureStation(),
+                request.getWeightKg(),
+                volume,
+                requiredDate.minusDays(1),
+                requiredDate.plusDays(1)
+        );
     }
 
-    private List<Wagon> findWagonsOnNearbyStations(WagonSearchRequest request) {
-        return wagonRepository.findAvailableWagons(
-                        request.getDepartureStation(),
-                        request.getWeightKg(),
-                        request.getVolumeM3() != null ? request.getVolumeM3() : 0
-                ).stream()
-                .filter(w -> !w.getCurrentStation().equals(request.getDepartureStation()))
-                .limit(20)
-                .collect(Collectors.toList());
+    /**
+     * Вагоны на соседних станциях в радиусе поиска: кандидаты со всех станций берутся одним
+     * запросом, отбираются по типу, как на станции отправления, и попадают в общую кучу
+     * лучших с баллом за вычетом штрафа за расстояние.
+     * Станции перебираются по удалению; перебор прекращается, как только куча заполнена
+     * и даже идеальный вагон следующей станции не обойдёт худший из отобранных.
+     */
+    private void rankWagonsOnNearbyStations(WagonSearchRequest request, OffsetDateTime requiredDate,
+                                            TopRanked top) {
+        int radiusKm = request.getMaxDistanceKm() != null ? request.getMaxDistanceKm() : nearbyRadiusKm;
+        List<StationGraph.NearbyStation> stations =
+                stationGraph.stationsWithin(request.getDepartureStation(), radiusKm);
+        if (stations.isEmpty()) {
+            return;
+        }
+
+        List<Wagon> wagons = new ArrayList<>();
+        for (Wagon wagon : findCandidateWagonsAtStations(
+                stations.stream().map(StationGraph.NearbyStation::station).toList(), request, requiredDate)) {
+            if (matchesPreferredType(wagon, request)) {
+                wagons.add(wagon);
+            }
+        }
+
+        Set<UUID> excluded = findReservedWagonIds(wagons);
+
+        Map<String, List<Wagon>> byStation = new HashMap<>();
+        for (Wagon wagon : wagons) {
+            if (!excluded.contains(wagon.getId())) {
+                byStation.computeIfAbsent(wagon.getCurrentStation(), s -> new ArrayList<>()).add(wagon);
+            }
+        }
+
+        for (StationGraph.NearbyStation station : stations) {
+            int penalty = distancePenalty(station.distanceKm());
+            if (top.isFull() && 100 - penalty < top.worst().matchPercentage()) {
+                break;
+            }
+            for (Wagon wagon : byStation.getOrDefault(station.station(), List.of())) {
+                int matchPercentage = Math.max(0, calculateMatchPercentage(wagon, request) - penalty);
+                top.offer(new RankedWagon(wagon, station.distanceKm(), matchPercentage));
+            }
+        }
     }
 
-    private WagonAvailabilityResponse buildWagonResponse(Wagon wagon, WagonSearchRequest request) {
-        int matchPercentage = calculateMatchPercentage(wagon, request);
-        BigDecimal estimatedPrice = calculateEstimatedPrice(wagon, request);
+    /**
+     * Свободные вагоны на нескольких станциях без рейсов в окне ±1 день, как в
+     * findCandidateWagons: конфликты по индексу расписания, пока он не загружен — NOT EXISTS
+     */
+    private List<Wagon> findCandidateWagonsAtStations(List<String> stations, WagonSearchRequest request,
+                                                      OffsetDateTime requiredDate) {
+        int volume = request.getVolumeM3() != null ? request.getVolumeM3() : 0;
 
-        return WagonAvailabilityResponse.builder()
-                .wagonId(wagon.getId())
-                .wagonNumber(wagon.getWagonNumber())
-                .wagonType(wagon.getWagonType().name())
-                .maxWeightKg(wagon.getMaxWeightKg())
-                .maxVolumeM3(wagon.getMaxVolumeM3())
-                .currentStation(wagon.getCurrentStation())
-                .isAvailable(true)
-                .availabilityStatus(wagon.getStatus().name())
-                .distanceToStation(0)
-                .estimatedArrivalHours(0)
-                .matchPercentage(matchPercentage)
-                .recommendation(getRecommendation(matchPercentage))
-                .estimatedPrice(estimatedPrice)
-                .priceUnit("RUB")
-                .build();
+        if (requiredDate == null) {
+            return wagonRepository.findAvailableWagonsAtStations(stations, request.getWeightKg(), volume);
+        }
+
+        if (scheduleIndex.isReady()) {
+            List<Wagon> wagons = wagonRepository.findAvailableWagonsAtStations(
+                    stations, request.getWeightKg(), volume);
+            Set<UUID> conflicting = scheduleIndex.findConflicting(
+                    wagons.stream().map(Wagon::getId).toList(),
+                    requiredDate.minusDays(1),
+                    requiredDate.plusDays(1));
+            if (conflicting.isEmpty()) {
+                return wagons;
+            }
+            return wagons.stream()
+                    .filter(w -> !conflicting.contains(w.getId()))
+                    .collect(Collectors.toList());
+        }
+
+        return wagonRepository.findAvailableWagonsAtStationsWithoutConflicts(
+                stations,
+                request.getWeightKg(),
+                volume,
+                requiredDate.minusDays(1),
+                requiredDate.plusDays(1)
+        );
+    }
+
+    private static int distancePenalty(int distanceKm) {
+        return Math.min(30, distanceKm / 10);
     }
 
-    private WagonAvailabilityResponse buildWagonResponseWithDistance(Wagon wagon, WagonSearchRequest request) {
-        int distance = getDistanceBetweenStations(
-                wagon.getCurrentStation(), request.getDepartureStation());
+    WagonAvailabilityResponse buildWagonResponse(Wagon wagon, WagonSearchRequest request,
+                                                 PriceEstimateContext priceContext) {
+        return buildWagonResponse(new RankedWagon(wagon, 0, calculateMatchPercentage(wagon, request)),
+                request, priceContext);
+    }
 
-        int matchPercentage = calculateMatchPercentage(wagon, request);
-        int distancePenalty = Math.min(30, distance / 10);
-        matchPercentage = Math.max(0, matchPercentage - distancePenalty);
+    private WagonAvailabilityResponse buildWagonResponse(RankedWagon ranked, WagonSearchRequest request,
+                                                         PriceEstimateContext priceContext) {
+        Wagon wagon = ranked.wagon();
+        int distance = ranked.distanceKm();
+        int matchPercentage = ranked.matchPercentage();
 
-        BigDecimal estimatedPrice = calculateEstimatedPrice(wagon, request);
+        BigDecimal estimatedPrice = calculateEstimatedPrice(wagon, request, priceContext);
 
         return WagonAvailabilityResponse.builder()
                 .wagonId(wagon.getId())
@@ -251,7 +393,7 @@ public class WagonSearchService {
                 .build();
     }
 
-    private int calculateMatchPercentage(Wagon wagon, WagonSearchRequest request) {
+    int calculateMatchPercentage(Wagon wagon, WagonSearchRequest request) {
         int score = 100;
 
         double weightRatio = (double) request.getWeightKg() / wagon.getMaxWeightKg();
@@ -292,39 +434,89 @@ public class WagonSearchService {
         return "НЕ РЕКОМЕНДУЕТСЯ";
     }
 
-    private BigDecimal calculateEstimatedPrice(Wagon wagon, WagonSearchRequest request) {
-        int distance = getDistanceBetweenStations(
+    /**
+     * Расстояние маршрута и тип груза определяются один раз на весь поиск
+     */
+    private PriceEstimateContext buildPriceEstimateContext(WagonSearchRequest request) {
+        int distance = stationGraph.distanceKm(
                 request.getDepartureStation(), request.getArrivalStation());
 
-        Optional<WagonTariff> tariff = tariffRepository.findByWagonTypeAndCargoType(
-                wagon.getWagonType().name(),
-                request.getCargoType() != null ? request.getCargoType() : "общий"
-        );
+        String cargoType = request.getCargoType() != null ? request.getCargoType() : "общий";
 
-        if (tariff.isEmpty()) return BigDecimal.ZERO;
+        return new PriceEstimateContext(distance, cargoType);
+    }
 
-        BigDecimal weightTons = new BigDecimal(request.getWeightKg())
-                .divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
+    private BigDecimal calculateEstimatedPrice(Wagon wagon, WagonSearchRequest request,
+                                               PriceEstimateContext priceContext) {
+        WagonTariff tariff = tariffMatrix.find(wagon.getWagonType().name(), priceContext.cargoType())
+                .orElse(null);
 
-        BigDecimal price = weightTons
-                .multiply(new BigDecimal(distance))
-                .multiply(tariff.get().getBaseRatePerKm())
-                .multiply(tariff.get().getCoefficient())
-                .setScale(2, RoundingMode.HALF_UP);
+        if (tariff == null) return BigDecimal.ZERO;
 
-        if (tariff.get().getMinPrice() != null &&
-                price.compareTo(tariff.get().getMinPrice()) < 0) {
-            price = tariff.get().getMinPrice();
-        }
+        return PricingKernel.freightPrice(request.getWeightKg(), priceContext.distanceKm(), tariff);
+    }
+
+    record PriceEstimateContext(int distanceKm, String cargoType) {
+    }
 
-        return price;
+    record RankedWagon(Wagon wagon, int distanceKm, int matchPercentage) {
     }
 
-    private int getDistanceBetweenStations(String from, String to) {
-        return distanceRepository.findByFromStationAndToStation(from, to)
-                .map(StationDistance::getDistanceKm)
-                .orElseGet(() -> distanceRepository.findByFromStationAndToStation(to, from)
-                        .map(StationDistance::getDistanceKm)
-                        .orElse(1000));
+    // Порядок выдачи: балл по убыванию, затем ближе к станции, затем id
+    private static final Comparator<RankedWagon> BEST_FIRST =
+            Comparator.comparingInt(RankedWagon::matchPercentage).reversed()
+                    .thenComparingInt(RankedWagon::distanceKm)
+                    .thenComparing(ranked -> ranked.wagon().getId());
+
+    /**
+     * Ограниченная куча лучших кандидатов после позиции курсора; в вершине — худший из отобранных
+     */
+    private static final class TopRanked {
+
+        private final int capacity;
+        private final CursorPage.RankPosition after;
+        private final PriorityQueue<RankedWagon> heap;
+
+        TopRanked(int capacity, CursorPage.RankPosition after) {
+            this.capacity = capacity;
+            this.after = after;
+            this.heap = new PriorityQueue<>(capacity, BEST_FIRST.reversed());
+        }
+
+        void offer(RankedWagon ranked) {
+            if (after != null && !isAfterCursor(ranked)) {
+                return;
+            }
+            if (heap.size() < capacity) {
+                heap.add(ranked);
+            } else if (BEST_FIRST.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+
+        boolean isFull() {
+            return heap.size() == capacity;
+        }
+
+        RankedWagon worst() {
+            return heap.peek();
+        }
+
+        List<RankedWagon> bestFirst() {
+            List<RankedWagon> result = new ArrayList<>(heap);
+            result.sort(BEST_FIRST);
+            return result;
+        }
+
+        private boolean isAfterCursor(RankedWagon ranked) {
+            if (ranked.matchPercentage() != after.rank()) {
+                return ranked.matchPercentage() < after.rank();
+            }
+            if (ranked.distanceKm() != after.distanceKm()) {
+                return ranked.distanceKm() > after.distanceKm();
+            }
+            return ranked.wagon().getId().compareTo(after.id()) > 0;
+        }
     }
 }
\ No newline at end of file
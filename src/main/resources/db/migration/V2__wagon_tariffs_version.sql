@@ -0,0 +1,28 @@
+-- Версия справочника тарифов: увеличивается триггером при любом изменении wagon_tariffs
+CREATE TABLE IF NOT EXISTS wagon_tariffs_version (
+    id SMALLINT PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+    version BIGINT NOT NULL DEFAULT 1,
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO wagon_tariffs_version (id, version) VALUES (1, 1)
+ON CONFLICT (id) DO NOTHING;
+
+
+CREATE OR REPLACE FUNCTION bump_wagon_tariffs_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE wagon_tariffs_version
+    SET version = version + 1,
+        updated_at = CURRENT_TIMESTAMP
+    WHERE id = 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+
+DROP TRIGGER IF EXISTS trg_wagon_tariffs_version ON wagon_tariffs;
+CREATE TRIGGER trg_wagon_tariffs_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON wagon_tariffs
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION bump_wagon_tariffs_version();
@@ -0,0 +1,11 @@
+-- Индексы под keyset-пагинацию админских списков (ORDER BY created_at DESC, id DESC)
+CREATE INDEX IF NOT EXISTS idx_orders_created_at_id ON orders (created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_payments_created_at_id ON payments (created_at DESC, id DESC);
+
+-- Пачки AutoDeliveryJob: WHERE status = 'в_пути' AND id > ? ORDER BY id
+CREATE INDEX IF NOT EXISTS idx_orders_in_transit ON orders (id) WHERE status = 'в_пути';
+
+-- Фактическое время доставки (время прибытия из расписания)
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivered_at TIMESTAMP WITH TIME ZONE;
+CREATE INDEX IF NOT EXISTS idx_schedule_order_arrival ON wagon_schedule (order_id, arrival_date) WHERE status <> 'отменен';
@@ -0,0 +1,26 @@
+-- Поиск свободных вагонов (WagonRepository.findAvailableWagons*):
+-- равенство по станции и типу, диапазон по грузоподъёмности; занятые вагоны в индекс не попадают
+CREATE INDEX IF NOT EXISTS idx_wagons_free_station
+    ON wagons (current_station, wagon_type, max_weight_kg, max_volume_m3)
+    WHERE status = 'свободен';
+
+-- Конфликты расписания (findConflictingSchedules, NOT EXISTS в поиске вагонов):
+-- диапазонное сканирование по датам внутри вагона и статуса
+CREATE INDEX IF NOT EXISTS idx_schedule_wagon_status_dates
+    ON wagon_schedule (wagon_id, status, departure_date, arrival_date);
+
+-- Заявки пользователя и выборки по статусу
+CREATE INDEX IF NOT EXISTS idx_orders_user_created ON orders (user_id, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_orders_status_created ON orders (status, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_orders_wagon ON orders (wagon_id);
+
+-- Груз и услуги заявки (fetch join по cargo, @BatchSize по order_services)
+CREATE INDEX IF NOT EXISTS idx_cargo_order ON cargo (order_id);
+CREATE INDEX IF NOT EXISTS idx_order_services_order ON order_services (order_id);
+
+-- Одиночный индекс по wagon_id покрывается левым префиксом составного
+DROP INDEX IF EXISTS idx_schedule_wagon;
+
+ANALYZE wagons;
+ANALYZE wagon_schedule;
+ANALYZE orders;
@@ -0,0 +1,53 @@
+-- Поиск станций без последовательного сканирования wagons: справочник названий
+-- с триграммным GIN-индексом и материализованное представление свободного парка.
+-- Используется, пока индекс в памяти не загружен, и при station-search.in-memory=false.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE TABLE IF NOT EXISTS stations (
+    name character varying(255) PRIMARY KEY,
+    created_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO stations (name)
+SELECT current_station FROM wagons WHERE current_station IS NOT NULL
+UNION
+SELECT from_station FROM station_distances
+UNION
+SELECT to_station FROM station_distances
+ON CONFLICT (name) DO NOTHING;
+
+-- ILIKE '%q%' и similarity() по индексу
+CREATE INDEX IF NOT EXISTS idx_stations_name_trgm ON stations USING gin (name gin_trgm_ops);
+
+-- Станции, на которые впервые прибыл вагон, попадают в справочник сразу
+CREATE OR REPLACE FUNCTION register_wagon_station() RETURNS trigger AS $$
+BEGIN
+    IF NEW.current_station IS NOT NULL THEN
+        INSERT INTO stations (name) VALUES (NEW.current_station) ON CONFLICT (name) DO NOTHING;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_wagons_register_station ON wagons;
+CREATE TRIGGER trg_wagons_register_station
+    AFTER INSERT OR UPDATE OF current_station ON wagons
+    FOR EACH ROW EXECUTE FUNCTION register_wagon_station();
+
+-- Свободные вагоны по станциям; обновляется REFRESH ... CONCURRENTLY по расписанию
+-- (StationService.refreshFreeFleetView), для чего нужен уникальный индекс
+CREATE MATERIALIZED VIEW IF NOT EXISTS station_free_fleet AS
+SELECT t.current_station AS station,
+       SUM(t.free_count)::integer AS free_wagons,
+       jsonb_object_agg(t.wagon_type, t.free_count) AS free_by_type
+FROM (
+    SELECT current_station, lower(wagon_type) AS wagon_type, COUNT(*)::integer AS free_count
+    FROM wagons
+    WHERE status = 'свободен' AND current_station IS NOT NULL
+    GROUP BY current_station, lower(wagon_type)
+) t
+GROUP BY t.current_station;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_station_free_fleet_station ON station_free_fleet (station);
+
+ANALYZE stations;
@@ -0,0 +1,16 @@
+-- Баланс горячего счёта (счёт РЖД, на который идут все оплаты и с которого идут возвраты)
+-- разнесён по строкам-шардам: полный баланс = company_accounts.balance + сумма шардов.
+-- Зачисление попадает в случайный шард, поэтому конкурирующие платежи не ждут одну строку.
+-- Строки шардов создаёт приложение при старте (account-sharding.shards), фоновая
+-- консолидация переносит накопленное в шардах на основную строку счёта.
+CREATE TABLE IF NOT EXISTS account_balance_shards (
+    account_number character varying(20) NOT NULL
+        REFERENCES company_accounts (account_number) ON DELETE CASCADE,
+    shard smallint NOT NULL,
+    balance numeric(15,2) DEFAULT 0.00 NOT NULL,
+    updated_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (account_number, shard),
+    CHECK (balance >= 0)
+);
+
+COMMENT ON TABLE account_balance_shards IS 'Части баланса горячих счетов (счёт РЖД): баланс счёта = company_accounts.balance + SUM(balance)';
@@ -0,0 +1,59 @@
+-- Журнал движений по счетам (двойная запись): каждый перевод - пара проводок с общим
+-- transfer_id и суммой 0, поступления извне и открытие счета идут с техническим счетом
+-- 'external'. Строки только добавляются. Баланс счета = снимок + проводки после него.
+--
+-- Граница снимка - не id (bigserial выдается до коммита, и проводка с меньшим id может
+-- стать видимой позже), а номер транзакции: tx < horizon означает, что транзакция
+-- проводки завершилась до снятия снимка и новых проводок с таким tx не появится.
+CREATE TABLE IF NOT EXISTS ledger_entries (
+    id bigserial PRIMARY KEY,
+    transfer_id uuid NOT NULL,
+    account_number character varying(20) NOT NULL,
+    amount numeric(15,2) NOT NULL,
+    reference character varying(64),
+    description text,
+    tx xid8 DEFAULT pg_current_xact_id() NOT NULL,
+    created_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+COMMENT ON TABLE ledger_entries IS 'Проводки по счетам: списание с минусом, зачисление с плюсом; только добавление';
+COMMENT ON COLUMN ledger_entries.reference IS 'Бизнес-ссылка проводки (payments.payment_id)';
+
+-- Баланс и выписка счета
+CREATE INDEX IF NOT EXISTS idx_ledger_entries_account_tx ON ledger_entries (account_number, tx);
+CREATE INDEX IF NOT EXISTS idx_ledger_entries_account_id ON ledger_entries (account_number, id DESC);
+-- Компактор: проводки после самой старой границы снимков
+CREATE INDEX IF NOT EXISTS idx_ledger_entries_tx ON ledger_entries (tx);
+CREATE INDEX IF NOT EXISTS idx_ledger_entries_transfer ON ledger_entries (transfer_id);
+CREATE INDEX IF NOT EXISTS idx_ledger_entries_reference ON ledger_entries (reference)
+    WHERE reference IS NOT NULL;
+
+CREATE OR REPLACE FUNCTION ledger_entries_append_only() RETURNS trigger
+    LANGUAGE plpgsql AS $$
+BEGIN
+    RAISE EXCEPTION 'ledger_entries: проводки нельзя изменять или удалять';
+END;
+$$;
+
+DROP TRIGGER IF EXISTS ledger_entries_append_only ON ledger_entries;
+CREATE TRIGGER ledger_entries_append_only
+    BEFORE UPDATE OR DELETE ON ledger_entries
+    FOR EACH ROW EXECUTE FUNCTION ledger_entries_append_only();
+
+CREATE TABLE IF NOT EXISTS ledger_snapshots (
+    account_number character varying(20) PRIMARY KEY,
+    balance numeric(15,2) NOT NULL,
+    horizon xid8 NOT NULL,
+    taken_at timestamp with time zone DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+COMMENT ON TABLE ledger_snapshots IS 'Снимки балансов: учтены проводки с tx < horizon';
+
+-- Начальные снимки - текущие балансы; все проводки появятся позже, поэтому граница 0
+INSERT INTO ledger_snapshots (account_number, balance, horizon)
+SELECT a.account_number,
+       COALESCE(a.balance, 0) + COALESCE((SELECT SUM(s.balance) FROM account_balance_shards s
+                                          WHERE s.account_number = a.account_number), 0),
+       '0'::xid8
+FROM company_accounts a
+ON CONFLICT (account_number) DO NOTHING;
@@ -0,0 +1,16 @@
+-- updated_at расстояний ставит база: граф станций подтягивает изменения по этой колонке,
+-- и UPDATE distance_km без updated_at (ручная правка, импорт) иначе остался бы незамеченным
+CREATE OR REPLACE FUNCTION touch_station_distances_updated_at()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at = CURRENT_TIMESTAMP;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+
+DROP TRIGGER IF EXISTS trg_station_distances_updated_at ON station_distances;
+CREATE TRIGGER trg_station_distances_updated_at
+    BEFORE INSERT OR UPDATE ON station_distances
+    FOR EACH ROW
+    EXECUTE FUNCTION touch_station_distances_updated_at();
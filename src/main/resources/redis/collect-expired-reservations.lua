@@ -0,0 +1,13 @@
+-- Резервы, срок которых прошёл, а ключ уже удалён (событие истечения могло потеряться).
+-- KEYS[1] - индекс сроков резервов (ZSET), ARGV[1] - текущее время (epoch ms),
+-- ARGV[2] - максимум записей, ARGV[3] - префикс ключа резерва
+-- Возвращает wagonId; из индекса они снимаются только после освобождения в БД
+-- (remove-expired-reservations.lua)
+local candidates = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+local expired = {}
+for _, wagonId in ipairs(candidates) do
+    if redis.call('EXISTS', ARGV[3] .. wagonId) == 0 then
+        table.insert(expired, wagonId)
+    end
+end
+return expired
@@ -0,0 +1,39 @@
+-- Запись платежей в индекс ИНН: ZSET id -> created_at и HASH id -> PaymentResponse (JSON).
+-- KEYS[1] - ZSET индекса, KEYS[2] - HASH проекций
+-- ARGV[1] - максимум платежей в индексе, ARGV[2] - TTL в секундах,
+-- ARGV[3] - источник: 'event' - событие после коммита (проекция перезаписывается),
+-- 'load' - загрузка из БД (индекс становится полным), 'db' - проекции, дочитанные из БД.
+-- Прочитанное из БД могло устареть, пока шел запрос: оно не затирает проекцию, уже
+-- записанную событием
+-- ARGV[4] - '1', если в БД платежей больше, чем загружено,
+-- далее тройки: id, score (epoch ms), json
+-- Лишние самые старые платежи вытесняются из обоих ключей; возвращает число вытесненных
+local fromEvent = ARGV[3] == 'event'
+for i = 5, #ARGV, 3 do
+    if fromEvent then
+        redis.call('ZADD', KEYS[1], ARGV[i + 1], ARGV[i])
+        redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 2])
+    else
+        redis.call('ZADD', KEYS[1], 'NX', ARGV[i + 1], ARGV[i])
+        redis.call('HSETNX', KEYS[2], ARGV[i], ARGV[i + 2])
+    end
+end
+if ARGV[3] == 'load' then
+    redis.call('HSET', KEYS[2], '_loaded', '1')
+end
+if ARGV[4] == '1' then
+    redis.call('HSET', KEYS[2], '_truncated', '1')
+end
+
+local evicted = 0
+local overflow = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[1])
+if overflow > 0 then
+    local oldest = redis.call('ZRANGE', KEYS[1], 0, overflow - 1)
+    redis.call('ZREMRANGEBYRANK', KEYS[1], 0, overflow - 1)
+    redis.call('HDEL', KEYS[2], unpack(oldest))
+    redis.call('HSET', KEYS[2], '_truncated', '1')
+    evicted = #oldest
+end
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+redis.call('EXPIRE', KEYS[2], ARGV[2])
+return evicted
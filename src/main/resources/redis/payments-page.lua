@@ -0,0 +1,33 @@
+-- Страница индекса платежей ИНН от новых к старым за одно обращение: ZREVRANGE и HMGET.
+-- KEYS[1] - ZSET индекса, KEYS[2] - HASH проекций
+-- ARGV[1] - id последнего платежа предыдущей страницы ('' - с начала),
+-- ARGV[2] - его score (epoch ms), ARGV[3] - число платежей
+-- Возвращает nil, если индекс не загружен из БД, иначе
+-- {флаг усечения (0/1), id1, json1, id2, json2, ...}; json вытесненной проекции - false
+if redis.call('HEXISTS', KEYS[2], '_loaded') == 0 then
+    return nil
+end
+
+local count = tonumber(ARGV[3])
+local ids
+if ARGV[1] == '' then
+    ids = redis.call('ZREVRANGE', KEYS[1], 0, count - 1)
+else
+    -- Продолжение от позиции платежа: новые платежи в начале индекса страницу не сдвигают
+    local rank = redis.call('ZREVRANK', KEYS[1], ARGV[1])
+    if rank then
+        ids = redis.call('ZREVRANGE', KEYS[1], rank + 1, rank + count)
+    else
+        ids = redis.call('ZREVRANGEBYSCORE', KEYS[1], '(' .. ARGV[2], '-inf', 'LIMIT', 0, count)
+    end
+end
+
+local result = { redis.call('HEXISTS', KEYS[2], '_truncated') }
+if #ids > 0 then
+    local values = redis.call('HMGET', KEYS[2], unpack(ids))
+    for i, id in ipairs(ids) do
+        table.insert(result, id)
+        table.insert(result, values[i])
+    end
+end
+return result
@@ -0,0 +1,7 @@
+-- Снятие блокировки ключа идемпотентности, только если она все еще принадлежит владельцу.
+-- KEYS[1] - ключ идемпотентности, ARGV[1] - значение, записанное владельцем
+-- Возвращает 1 - снята, 0 - ключ уже перезаписан или истек
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
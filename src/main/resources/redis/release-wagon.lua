@@ -0,0 +1,16 @@
+-- Снятие резерва с проверкой владельца (compare-and-delete).
+-- KEYS[1] - wagon:reserved:<wagonId>, KEYS[2] - индекс сроков резервов (ZSET)
+-- ARGV[1] - orderId владельца или пустая строка для безусловного снятия,
+-- ARGV[2] - wagonId, ARGV[3] - канал событий
+-- Возвращает 1 - резерв снят, 0 - ключ отсутствует или принадлежит другому заказу
+local current = redis.call('GET', KEYS[1])
+if ARGV[1] ~= '' and current ~= ARGV[1] then
+    return 0
+end
+redis.call('ZREM', KEYS[2], ARGV[2])
+if not current then
+    return 0
+end
+redis.call('DEL', KEYS[1])
+redis.call('PUBLISH', ARGV[3], 'released:' .. ARGV[2])
+return 1
@@ -0,0 +1,12 @@
+-- Снятие обработанных истекших резервов из индекса сроков.
+-- KEYS[1] - индекс сроков резервов (ZSET), ARGV[1] - время выборки (epoch ms),
+-- далее wagonId. Вагон, который успели зарезервировать заново, получил новый срок
+-- позже ARGV[1] и остаётся в индексе. Возвращает число снятых записей
+local removed = 0
+for i = 2, #ARGV do
+    local expiresAt = redis.call('ZSCORE', KEYS[1], ARGV[i])
+    if expiresAt and tonumber(expiresAt) <= tonumber(ARGV[1]) then
+        removed = removed + redis.call('ZREM', KEYS[1], ARGV[i])
+    end
+end
+return removed
@@ -0,0 +1,16 @@
+-- Захват вагона под заказ одной атомарной операцией.
+-- KEYS[1] - wagon:reserved:<wagonId>, KEYS[2] - индекс сроков резервов (ZSET)
+-- ARGV[1] - orderId, ARGV[2] - TTL в секундах, ARGV[3] - wagonId,
+-- ARGV[4] - момент истечения (epoch ms), ARGV[5] - канал событий
+-- Возвращает 1 - захвачен, 2 - уже принадлежит этому заказу, 0 - занят другим
+local current = redis.call('GET', KEYS[1])
+if current then
+    if current == ARGV[1] then
+        return 2
+    end
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])
+redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+redis.call('PUBLISH', ARGV[5], 'reserved:' .. ARGV[3] .. ':' .. ARGV[1])
+return 1
@@ -0,0 +1,155 @@
+package com.rzd.dispatcher.repository;
+
+import com.rzd.dispatcher.repository.AccountTransferRepository.TransferRow;
+import com.rzd.dispatcher.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Встречные переводы из многих потоков: единый порядок блокировок в
+ * AccountTransferRepository не должен давать взаимных блокировок, а сумма балансов
+ * счетов и шардов - меняться.
+ */
+class AccountTransferRepositoryConcurrencyTest {
+
+    private static final int ACCOUNTS = 4;
+    private static final int SHARDS = 8;
+    private static final int PAIRS = 2500;
+    private static final int THREADS = 24;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("100000.00");
+    private static final BigDecimal SHARD_BALANCE = new BigDecimal("5000.00");
+
+    private JdbcTemplate jdbcTemplate;
+    private AccountTransferRepository repository;
+
+    private final List<String> accounts = new ArrayList<>();
+    private String hotAccount;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.dataSource());
+        repository = new AccountTransferRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+
+        String prefix = String.format("%08d", ThreadLocalRandom.current().nextInt(100_000_000));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(createAccount(prefix + String.format("%012d", i), OPENING_BALANCE));
+        }
+        // Горячий счет как у РЖД: небольшой остаток в основной строке, остальное в шардах
+        hotAccount = createAccount(prefix + String.format("%012d", ACCOUNTS), new BigDecimal("1000.00"));
+        jdbcTemplate.update("INSERT INTO account_balance_shards (account_number, shard, balance) " +
+                "SELECT ?, s, ? FROM generate_series(0, ? - 1) s", hotAccount, SHARD_BALANCE, SHARDS);
+    }
+
+    @Test
+    void crossingTransfersDoNotDeadlockAndConserveMoney() throws Exception {
+        BigDecimal before = totalBalance();
+
+        List<Supplier<Optional<TransferRow>>> operations = new ArrayList<>(PAIRS * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < PAIRS; i++) {
+            int index = random.nextInt(ACCOUNTS);
+            String a = accounts.get(index);
+            String b = accounts.get((index + random.nextInt(1, ACCOUNTS)) % ACCOUNTS);
+            BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 500_00), 2);
+            int shard = random.nextInt(SHARDS);
+            switch (i % 3) {
+                case 0 -> {
+                    operations.add(() -> repository.transfer(a, b, amount));
+                    operations.add(() -> repository.transfer(b, a, amount));
+                }
+                // Оплата на горячий счет и возврат с него, как в PaymentService
+                case 1 -> {
+                    operations.add(() -> repository.transferToShard(a, hotAccount, shard, amount));
+                    operations.add(() -> repository.transferFromShards(hotAccount, a, amount));
+                }
+                default -> {
+                    operations.add(() -> repository.transferFromShards(hotAccount, b, amount));
+                    operations.add(() -> repository.transferToShard(b, hotAccount, shard, amount));
+                    operations.add(() -> repository.transfer(a, b, amount));
+                }
+            }
+        }
+
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicInteger deadlocks = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(operations.size());
+            for (Supplier<Optional<TransferRow>> operation : operations) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        if (operation.get().map(TransferRow::completed).orElse(false)) {
+                            completed.incrementAndGet();
+                        }
+                    } catch (PessimisticLockingFailureException e) {
+                        // Сюда Spring переводит deadlock (40P01) и отказ по блокировке
+                        deadlocks.incrementAndGet();
+                        failures.add(e);
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(deadlocks.get()).as("взаимные блокировки").isZero();
+        assertThat(failures).as("ошибки переводов").isEmpty();
+        assertThat(completed.get()).as("выполненные переводы").isGreaterThan(operations.size() / 2);
+        assertThat(totalBalance()).isEqualByComparingTo(before);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM company_accounts WHERE account_number = ANY (?::varchar[]) AND balance < 0",
+                Integer.class, allAccountsArray())).isZero();
+    }
+
+    private String createAccount(String accountNumber, BigDecimal balance) {
+        jdbcTemplate.update("INSERT INTO company_accounts " +
+                        "(inn, company_name, account_number, balance, bik, bank_name, is_main, is_rzd_account) " +
+                        "VALUES (?, ?, ?, ?, '044525225', 'Тестовый банк', false, false)",
+                accountNumber.substring(0, 10), "Компания " + accountNumber, accountNumber, balance);
+        return accountNumber;
+    }
+
+    // Основные строки всех счетов теста плюс шарды горячего счета
+    private BigDecimal totalBalance() {
+        return jdbcTemplate.queryForObject(
+                "SELECT (SELECT SUM(balance) FROM company_accounts WHERE account_number = ANY (?::varchar[])) + " +
+                "       (SELECT COALESCE(SUM(balance), 0) FROM account_balance_shards WHERE account_number = ?)",
+                BigDecimal.class, allAccountsArray(), hotAccount);
+    }
+
+    private String allAccountsArray() {
+        List<String> all = new ArrayList<>(accounts);
+        all.add(hotAccount);
+        return "{" + String.join(",", all) + "}";
+    }
+}
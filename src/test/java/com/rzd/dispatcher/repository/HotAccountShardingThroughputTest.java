@@ -0,0 +1,134 @@
+package com.rzd.dispatcher.repository;
+
+import com.rzd.dispatcher.repository.AccountTransferRepository.TransferRow;
+import com.rzd.dispatcher.support.TestDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сравнение пропускной способности оплат на горячий счёт: все платежи в одну строку
+ * company_accounts (account-sharding.shards=1) и в 16 шардов, как в AccountService.
+ * Тест печатает платежи в секунду для обоих вариантов и проверяет, что деньги не теряются.
+ */
+@Slf4j
+class HotAccountShardingThroughputTest {
+
+    private static final int PAYERS = 256;
+    private static final int PAYMENTS = 6000;
+    private static final int THREADS = 32;
+    private static final int SHARDS = 16;
+    private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+    private static final BigDecimal PAYER_BALANCE = new BigDecimal("1000000.00");
+
+    private JdbcTemplate jdbcTemplate;
+    private AccountTransferRepository repository;
+
+    private final List<String> payers = new ArrayList<>();
+    private String prefix;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.dataSource());
+        repository = new AccountTransferRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+
+        prefix = String.format("%08d", ThreadLocalRandom.current().nextInt(100_000_000));
+        for (int i = 0; i < PAYERS; i++) {
+            payers.add(createAccount(prefix + String.format("%012d", i), PAYER_BALANCE));
+        }
+    }
+
+    @Test
+    void shardedHotAccountKeepsUpWithConcurrentPayments() throws Exception {
+        String singleRow = createAccount(prefix + String.format("%012d", PAYERS), BigDecimal.ZERO);
+        String sharded = createAccount(prefix + String.format("%012d", PAYERS + 1), BigDecimal.ZERO);
+        jdbcTemplate.update("INSERT INTO account_balance_shards (account_number, shard) " +
+                "SELECT ?, s FROM generate_series(0, ? - 1) s", sharded, SHARDS);
+
+        // Прогрев пула соединений и планов запросов
+        run(200, payer -> () -> repository.transfer(payer, singleRow, AMOUNT));
+        run(200, payer -> () -> repository.transferToShard(payer, sharded,
+                ThreadLocalRandom.current().nextInt(SHARDS), AMOUNT));
+
+        double single = run(PAYMENTS, payer -> () -> repository.transfer(payer, singleRow, AMOUNT));
+        double spread = run(PAYMENTS, payer -> () -> repository.transferToShard(payer, sharded,
+                ThreadLocalRandom.current().nextInt(SHARDS), AMOUNT));
+        log.info("Оплаты на горячий счет, {} потоков: одна строка {} плат/с, {} шардов {} плат/с",
+                THREADS, Math.round(single), SHARDS, Math.round(spread));
+
+        BigDecimal received = AMOUNT.multiply(BigDecimal.valueOf(PAYMENTS + 200));
+        assertThat(balance(singleRow)).isEqualByComparingTo(received);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT SUM(balance) FROM account_balance_shards WHERE account_number = ?",
+                BigDecimal.class, sharded)).isEqualByComparingTo(received);
+    }
+
+    // Платежи в секунду; плательщики выбираются по кругу
+    private double run(int payments,
+                       Function<String, Supplier<Optional<TransferRow>>> payment)
+            throws Exception {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long elapsed;
+        try {
+            List<Future<?>> futures = new ArrayList<>(payments);
+            for (int i = 0; i < payments; i++) {
+                Supplier<Optional<TransferRow>> operation = payment.apply(payers.get(i % PAYERS));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        if (!operation.get().map(TransferRow::completed).orElse(false)) {
+                            failures.add(new IllegalStateException("Платеж не выполнен"));
+                        }
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+            elapsed = System.nanoTime() - started;
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(failures).as("ошибки платежей").isEmpty();
+        return payments / (elapsed / 1e9);
+    }
+
+    private String createAccount(String accountNumber, BigDecimal balance) {
+        jdbcTemplate.update("INSERT INTO company_accounts " +
+                        "(inn, company_name, account_number, balance, bik, bank_name, is_main, is_rzd_account) " +
+                        "VALUES (?, ?, ?, ?, '044525225', 'Тестовый банк', false, false)",
+                accountNumber.substring(0, 10), "Компания " + accountNumber, accountNumber, balance);
+        return accountNumber;
+    }
+
+    private BigDecimal balance(String accountNumber) {
+        return jdbcTemplate.queryForObject(
+                "SELECT balance FROM company_accounts WHERE account_number = ?", BigDecimal.class, accountNumber);
+    }
+}
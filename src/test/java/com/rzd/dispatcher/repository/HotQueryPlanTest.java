@@ -0,0 +1,150 @@
+package com.rzd.dispatcher.repository;
+
+import com.rzd.dispatcher.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Регрессионная проверка индексов: EXPLAIN горячих запросов с enable_seqscan = off на
+ * базе, мигрированной Flyway. План должен идти по индексу, созданному под этот запрос,
+ * а не по любому другому. Выбор индекса зависит от статистики, поэтому таблицы сначала
+ * заполняются данными рабочего масштаба и анализируются; всё это в одной транзакции,
+ * которая откатывается после тестов.
+ */
+class HotQueryPlanTest {
+
+    private static final String ANY_ID = "'00000000-0000-0000-0000-000000000000'";
+
+    private static final String[] FIXTURE = {
+            "SET LOCAL enable_seqscan = off",
+            "INSERT INTO stations (name) SELECT 'План-станция ' || g FROM generate_series(1, 5000) g " +
+            "ON CONFLICT (name) DO NOTHING",
+            "INSERT INTO wagons (wagon_number, wagon_type, max_weight_kg, max_volume_m3, current_station, status) " +
+            "SELECT 'PLAN-' || g, (ARRAY['крытый', 'полувагон', 'платформа', 'цистерна', 'рефрижератор'])[1 + g % 5], " +
+            "50000 + g % 20 * 1000, 80 + g % 5 * 10, 'План-станция ' || (1 + g % 1000), " +
+            "(ARRAY['свободен', 'забронирован', 'в_пути', 'на_ремонте'])[1 + g % 4] " +
+            "FROM generate_series(1, 20000) g",
+            "INSERT INTO wagon_schedule (wagon_id, departure_station, arrival_station, departure_date, arrival_date, status) " +
+            "SELECT w.id, w.current_station, 'Москва-Товарная', now() + (k * 10 - 15) * interval '1 day', " +
+            "now() + (k * 10 - 10) * interval '1 day', " +
+            "(ARRAY['запланирован', 'в_пути', 'завершен', 'отменен'])[1 + k % 4] " +
+            "FROM wagons w, generate_series(0, 3) k WHERE w.wagon_number LIKE 'PLAN-%'",
+            "INSERT INTO users (email, password_hash, company_name, inn, created_at) " +
+            "SELECT 'plan-' || g || '@test.local', 'x', 'План', '7700000000', now() - g * interval '1 minute' " +
+            "FROM generate_series(1, 20000) g",
+            "INSERT INTO orders (user_id, departure_station, destination_station, requested_wagon_type, status, created_at) " +
+            "SELECT u.id, 'Москва-Товарная', 'Казань-Товарная', 'крытый', " +
+            "(ARRAY['черновик', 'поиск_вагона', 'ожидает_оплаты', 'в_пути', 'доставлен'])[1 + k % 5], " +
+            "u.created_at + k * interval '1 second' " +
+            "FROM users u, generate_series(1, 3) k WHERE u.email LIKE 'plan-%@test.local'",
+            "INSERT INTO cargo (order_id, cargo_type, weight_kg, volume_m3, packaging_type) " +
+            "SELECT o.id, 'Металл', 42000, 60, 'Паллеты' FROM orders o JOIN users u ON u.id = o.user_id " +
+            "WHERE u.email LIKE 'plan-%@test.local'",
+            "INSERT INTO order_services (order_id, service_name, price) " +
+            "SELECT o.id, 'страхование', 1500 FROM orders o JOIN users u ON u.id = o.user_id " +
+            "WHERE u.email LIKE 'plan-%@test.local'",
+            "INSERT INTO payments (order_id, amount, status, inn, created_at) " +
+            "SELECT o.id, 1000, 'SUCCEEDED', '7700000000', o.created_at FROM orders o JOIN users u ON u.id = o.user_id " +
+            "WHERE u.email LIKE 'plan-%@test.local'",
+            // Вставленные строки ждут в pending list GIN, его бы разобрал autovacuum
+            "SELECT gin_clean_pending_list('idx_stations_name_trgm')",
+            "ANALYZE stations",
+            "ANALYZE wagons",
+            "ANALYZE wagon_schedule",
+            "ANALYZE users",
+            "ANALYZE orders",
+            "ANALYZE cargo",
+            "ANALYZE order_services",
+            "ANALYZE payments"
+    };
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void fillTables() throws SQLException {
+        connection = TestDatabase.dataSource().getConnection();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : FIXTURE) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    @AfterAll
+    static void rollback() throws SQLException {
+        if (connection != null) {
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                Arguments.of("Поиск свободных вагонов", "idx_wagons_free_station",
+                        "SELECT w.* FROM wagons w WHERE w.status = 'свободен' " +
+                        "AND w.current_station = 'Москва-Товарная' " +
+                        "AND w.max_weight_kg >= 1 AND w.max_volume_m3 >= 1"),
+                Arguments.of("Конфликты расписания вагона", "idx_schedule_wagon_status_dates",
+                        "SELECT ws.id FROM wagon_schedule ws WHERE ws.wagon_id = " + ANY_ID + " " +
+                        "AND ws.status IN ('запланирован', 'в_пути') " +
+                        "AND ws.departure_date <= now() AND ws.arrival_date >= now()"),
+                Arguments.of("Заявки пользователя", "idx_orders_user_created",
+                        "SELECT o.* FROM orders o WHERE o.user_id = " + ANY_ID + " ORDER BY o.created_at DESC"),
+                Arguments.of("Заявки по статусу", "idx_orders_status_created",
+                        "SELECT o.* FROM orders o WHERE o.status = 'в_пути' ORDER BY o.created_at DESC LIMIT 50"),
+                Arguments.of("Страница заявок (keyset)", "idx_orders_created_at_id",
+                        "SELECT o.id FROM orders o ORDER BY o.created_at DESC, o.id DESC LIMIT 51"),
+                Arguments.of("Груз заявки", "idx_cargo_order",
+                        "SELECT c.* FROM cargo c WHERE c.order_id = " + ANY_ID),
+                Arguments.of("Услуги страницы заявок", "idx_order_services_order",
+                        "SELECT os.* FROM order_services os WHERE os.order_id IN (" + ANY_ID + ", " +
+                        "'00000000-0000-0000-0000-000000000001')"),
+                Arguments.of("Поиск станций (триграммы)", "idx_stations_name_trgm",
+                        "SELECT s.name FROM stations s WHERE s.name ILIKE '%оскв%'")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    void hotQueryUsesIndex(String name, String index, String sql) throws SQLException {
+        String plan = explain(sql);
+        assertThat(plan).as("план запроса '%s'", name).contains(index);
+    }
+
+    // Курсор keyset-страницы должен быть границей скана индекса, а не фильтром:
+    // иначе страница N читает все строки предыдущих страниц
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {"orders", "users", "payments"})
+    void keysetCursorBoundsIndexScan(String table) throws SQLException {
+        String plan = explain("SELECT t.id FROM " + table + " t " +
+                "WHERE (t.created_at, t.id) < (now(), " + ANY_ID + ") " +
+                "ORDER BY t.created_at DESC, t.id DESC LIMIT 51");
+        assertThat(plan).as("план страницы %s после курсора", table)
+                .contains("idx_" + table + "_created_at_id")
+                .contains("Index Cond: (ROW(created_at, id) < ROW(");
+    }
+
+    private static String explain(String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * После отключения шардирования (account-sharding.shards=1) деньги, оставшиеся в
+ * шардах с прежней настройки, при старте переносятся на основную строку счёта.
+ */
+@TestPropertySource(properties = "account-sharding.shards=1")
+class AccountBalanceShardsDisabledTest extends IntegrationTest {
+
+    @Autowired
+    private AccountBalanceShards balanceShards;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void leftoverShardsAreConsolidatedWhenShardingIsOff() {
+        String accountNumber = String.format("%020d", ThreadLocalRandom.current().nextLong(1_000_000_000_000L));
+        jdbcTemplate.update("INSERT INTO company_accounts " +
+                "(inn, company_name, account_number, balance, bik, bank_name, is_main, is_rzd_account) " +
+                "VALUES ('7700000001', 'Бывший горячий счет', ?, 1000.00, '044525225', 'Тестовый банк', false, false)",
+                accountNumber);
+        jdbcTemplate.update("INSERT INTO account_balance_shards (account_number, shard, balance) " +
+                "SELECT ?, s, 250.50 FROM generate_series(0, 15) s", accountNumber);
+
+        // Тот же обработчик, что срабатывает на ApplicationReadyEvent
+        balanceShards.init();
+
+        assertThat(balanceShards.isSharded(accountNumber)).isFalse();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT balance FROM company_accounts WHERE account_number = ?", BigDecimal.class, accountNumber))
+                .isEqualByComparingTo("5008.00");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT SUM(balance) FROM account_balance_shards WHERE account_number = ?",
+                BigDecimal.class, accountNumber)).isEqualByComparingTo("0");
+    }
+}
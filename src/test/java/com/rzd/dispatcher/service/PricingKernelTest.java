@@ -0,0 +1,309 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.dto.response.PriceResponse.AdditionalServiceDto;
+import com.rzd.dispatcher.model.entity.WagonTariff;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Сравнение расчета в копейках (PricingKernel) с прежними цепочками BigDecimal на
+ * случайных весах, расстояниях, тарифах и наборах услуг: значения и scale должны совпадать.
+ * Legacy - формулы в том виде, в каком они были до перехода на копейки.
+ */
+class PricingKernelTest {
+
+    private static final int CASES = 100_000;
+    private static final long SEED = 20261017L;
+
+    private static final List<String> CARGO_TYPES = List.of(
+            "Электроника", "computer", "Оборудование", "станок", "Химикаты", "нефть", "кислота",
+            "Зерно", "продукты", "еда", "Металл", "сталь", "чугун", "Уголь", "руда", "Мебель", "");
+    private static final List<String> SERVICE_CODES = List.of(
+            "INSURANCE", "LIABILITY_INSURANCE", "ESCORT", "EXPRESS", "TERMINAL", "TRACKING",
+            "CUSTOMS", "CONSOLIDATION");
+    private static final List<String> STATIONS = List.of(
+            "Москва", "Санкт-Петербург", "Екатеринбург", "Брест", "Хасан", "Казань", "Выборг");
+
+    private final AdditionalServicesService services = new AdditionalServicesService();
+    private final Random random = new Random(SEED);
+
+    @Test
+    void freightMatchesBigDecimalFormula() {
+        for (int i = 0; i < CASES; i++) {
+            int weightKg = randomWeight();
+            int distanceKm = random.nextInt(15_000);
+            WagonTariff tariff = randomTariff(2);
+
+            assertSame(Legacy.freightPrice(weightKg, distanceKm, tariff),
+                    PricingKernel.freightPrice(weightKg, distanceKm, tariff),
+                    "freight", weightKg, distanceKm, tariff);
+            assertSame(Legacy.weightTons(weightKg), PricingKernel.weightTons(weightKg), "weight", weightKg);
+            assertThat(PricingKernel.carbonFootprintKg(weightKg, distanceKm))
+                    .as("CO2 %d кг, %d км", weightKg, distanceKm)
+                    .isEqualTo(Legacy.carbonFootprint(weightKg, distanceKm));
+        }
+    }
+
+    @Test
+    void freightFallsBackToBigDecimalOutsideKopeckPrecision() {
+        for (int i = 0; i < CASES / 10; i++) {
+            int weightKg = randomWeight();
+            int distanceKm = random.nextInt(15_000);
+            // Ставка с тысячными: hundredths бросает ArithmeticException
+            WagonTariff tariff = randomTariff(3 + random.nextInt(2));
+            assertThatThrownBy(() -> PricingKernel.hundredths(tariff.getBaseRatePerKm()))
+                    .isInstanceOf(ArithmeticException.class);
+
+            assertSame(Legacy.freightPrice(weightKg, distanceKm, tariff),
+                    PricingKernel.freightPrice(weightKg, distanceKm, tariff),
+                    "freight fallback (scale)", weightKg, distanceKm, tariff);
+        }
+    }
+
+    @Test
+    void freightFallsBackToBigDecimalOnLongOverflow() {
+        WagonTariff tariff = new WagonTariff();
+        tariff.setBaseRatePerKm(new BigDecimal("99999999.99"));
+        tariff.setCoefficient(new BigDecimal("999.99"));
+        int[] weights = {Integer.MAX_VALUE, 2_000_000_000, 150_000};
+        int[] distances = {Integer.MAX_VALUE, 1_000_000_000, 9_300};
+
+        for (int weightKg : weights) {
+            for (int distanceKm : distances) {
+                long centitons = PricingKernel.weightCentitons(weightKg);
+                if (weightKg != 150_000 || distanceKm != 9_300) {
+                    assertThatThrownBy(() -> PricingKernel.freightKopecks(centitons, distanceKm,
+                            PricingKernel.hundredths(tariff.getBaseRatePerKm()),
+                            PricingKernel.hundredths(tariff.getCoefficient())))
+                            .isInstanceOf(ArithmeticException.class);
+                }
+                assertSame(Legacy.freightPrice(weightKg, distanceKm, tariff),
+                        PricingKernel.freightPrice(weightKg, distanceKm, tariff),
+                        "freight overflow", weightKg, distanceKm, tariff);
+            }
+        }
+    }
+
+    @Test
+    void servicesMatchBigDecimalFormulas() {
+        for (int i = 0; i < CASES; i++) {
+            String cargoType = CARGO_TYPES.get(random.nextInt(CARGO_TYPES.size()));
+            int weightKg = randomWeight();
+            Integer distanceKm = random.nextInt(20) == 0 ? null : random.nextInt(-10, 15_000);
+            int freightDistance = distanceKm != null ? Math.max(distanceKm, 0) : 0;
+            BigDecimal basePrice = PricingKernel.freightPrice(weightKg, freightDistance, randomTariff(2));
+            String from = STATIONS.get(random.nextInt(STATIONS.size()));
+            String to = STATIONS.get(random.nextInt(STATIONS.size()));
+            Set<String> selected = randomServices();
+
+            assertSame(Legacy.insurance(cargoType, weightKg),
+                    services.calculateInsurancePrice(cargoType, weightKg), "insurance", cargoType, weightKg);
+            assertSame(Legacy.cargoValue(cargoType, weightKg),
+                    services.estimateCargoValue(cargoType, weightKg), "cargo value", cargoType, weightKg);
+            assertSame(Legacy.liability(basePrice),
+                    services.calculateLiabilityInsurance(basePrice), "liability", basePrice);
+            assertSame(Legacy.servicesTotal(selected, cargoType, weightKg, basePrice, distanceKm, from, to),
+                    services.calculateServicesPrice(selected, cargoType, weightKg, basePrice, distanceKm, from, to),
+                    "services total", selected, cargoType, weightKg, basePrice, distanceKm, from, to);
+
+            for (AdditionalServiceDto service : services.getAllAvailableServices(
+                    cargoType, weightKg, basePrice, distanceKm, from, to)) {
+                BigDecimal expected = switch (service.getCode()) {
+                    case "EXPRESS" -> Legacy.express(basePrice);
+                    case "TERMINAL" -> Legacy.terminal(weightKg);
+                    default -> service.getPrice();
+                };
+                assertSame(expected, service.getPrice(), service.getCode(), weightKg, basePrice);
+            }
+        }
+    }
+
+    private int randomWeight() {
+        return switch (random.nextInt(4)) {
+            // Границы округления до 0.01 т: ...4 и ...5 кг
+            case 0 -> random.nextInt(20_000) * 10 + (random.nextBoolean() ? 4 : 5);
+            case 1 -> random.nextInt(1_000);
+            default -> random.nextInt(200_000);
+        };
+    }
+
+    private WagonTariff randomTariff(int rateScale) {
+        WagonTariff tariff = new WagonTariff();
+        long rate = random.nextLong(1, 10_000_000);
+        if (rateScale > 2 && rate % 10 == 0) {
+            // Последняя цифра ненулевая, иначе ставка укладывается в копейки
+            rate += 1;
+        }
+        tariff.setBaseRatePerKm(BigDecimal.valueOf(rate, rateScale));
+        tariff.setCoefficient(random.nextInt(5) == 0
+                ? BigDecimal.ONE
+                : BigDecimal.valueOf(random.nextInt(1, 1_000), random.nextInt(3)));
+        tariff.setMinPrice(random.nextBoolean() ? null : BigDecimal.valueOf(random.nextLong(0, 1_000_000_00), 2));
+        return tariff;
+    }
+
+    private Set<String> randomServices() {
+        Set<String> selected = new HashSet<>();
+        for (String code : SERVICE_CODES) {
+            if (random.nextBoolean()) {
+                selected.add(code);
+            }
+        }
+        return selected;
+    }
+
+    // Описание строится только при расхождении: проверок сотни тысяч
+    private static void assertSame(BigDecimal expected, BigDecimal actual, String what, Object... context) {
+        if (actual == null || actual.compareTo(expected) != 0 || actual.scale() != expected.scale()) {
+            fail("%s %s: ожидалось %s, получено %s", what, Arrays.toString(context), expected, actual);
+        }
+    }
+
+    /**
+     * Расчеты до PricingKernel (PricingService, AdditionalServicesService)
+     */
+    private static final class Legacy {
+
+        private static final BigDecimal INSURANCE_RATE = new BigDecimal("0.02");
+        private static final BigDecimal MIN_INSURANCE = new BigDecimal("3000.00");
+        private static final BigDecimal BASE_CARGO_VALUE_PER_TON = new BigDecimal("100000");
+        private static final BigDecimal ESCORT_FIXED_PRICE = new BigDecimal("15000.00");
+        private static final BigDecimal EXPRESS_RATE = new BigDecimal("0.30");
+        private static final BigDecimal TERMINAL_RATE_PER_TON = new BigDecimal("500");
+        private static final BigDecimal GPS_RATE_PER_KM = new BigDecimal("10");
+        private static final BigDecimal MIN_GPS_PRICE = new BigDecimal("2000.00");
+        private static final BigDecimal CUSTOMS_FIXED_PRICE = new BigDecimal("25000.00");
+        private static final BigDecimal LIABILITY_INSURANCE_RATE = new BigDecimal("0.01");
+        private static final BigDecimal CO2_FACTOR = new BigDecimal("0.02");
+
+        static BigDecimal weightTons(int weightKg) {
+            return new BigDecimal(weightKg).divide(new BigDecimal(1000), 2, RoundingMode.HALF_UP);
+        }
+
+        static BigDecimal freightPrice(int weightKg, int distance, WagonTariff tariff) {
+            BigDecimal basePrice = weightTons(weightKg)
+                    .multiply(new BigDecimal(distance))
+                    .multiply(tariff.getBaseRatePerKm())
+                    .multiply(tariff.getCoefficient())
+                    .setScale(2, RoundingMode.HALF_UP);
+            if (tariff.getMinPrice() != null && basePrice.compareTo(tariff.getMinPrice()) < 0) {
+                basePrice = tariff.getMinPrice();
+            }
+            return basePrice;
+        }
+
+        static double carbonFootprint(int weightKg, int distanceKm) {
+            return weightTons(weightKg)
+                    .multiply(new BigDecimal(distanceKm))
+                    .multiply(CO2_FACTOR)
+                    .setScale(2, RoundingMode.HALF_UP)
+                    .doubleValue();
+        }
+
+        static BigDecimal cargoValue(String cargoType, int weightKg) {
+            return weightTons(weightKg)
+                    .multiply(BASE_CARGO_VALUE_PER_TON)
+                    .multiply(cargoCoefficient(cargoType))
+                    .setScale(2, RoundingMode.HALF_UP);
+        }
+
+        static BigDecimal insurance(String cargoType, int weightKg) {
+            BigDecimal insurancePrice = cargoValue(cargoType, weightKg)
+                    .multiply(INSURANCE_RATE)
+                    .setScale(2, RoundingMode.HALF_UP);
+            if (insurancePrice.compareTo(MIN_INSURANCE) < 0) {
+                insurancePrice = MIN_INSURANCE;
+            }
+            return insurancePrice;
+        }
+
+        static BigDecimal liability(BigDecimal freightPrice) {
+            return freightPrice.multiply(LIABILITY_INSURANCE_RATE).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        static BigDecimal express(BigDecimal basePrice) {
+            return basePrice.multiply(EXPRESS_RATE).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        static BigDecimal terminal(int weightKg) {
+            return weightTons(weightKg).multiply(TERMINAL_RATE_PER_TON).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        static BigDecimal servicesTotal(Set<String> selectedServiceCodes, String cargoType, Integer weightKg,
+                                        BigDecimal basePrice, Integer distanceKm,
+                                        String departureStation, String destinationStation) {
+            if (selectedServiceCodes == null || selectedServiceCodes.isEmpty()) {
+                return BigDecimal.ZERO;
+            }
+            BigDecimal total = BigDecimal.ZERO;
+            for (String code : selectedServiceCodes) {
+                switch (code) {
+                    case "INSURANCE" -> total = total.add(insurance(cargoType, weightKg));
+                    case "LIABILITY_INSURANCE" -> total = total.add(liability(basePrice));
+                    case "ESCORT" -> total = total.add(ESCORT_FIXED_PRICE);
+                    case "EXPRESS" -> total = total.add(basePrice.multiply(EXPRESS_RATE));
+                    case "TERMINAL" -> total = total.add(weightTons(weightKg).multiply(TERMINAL_RATE_PER_TON));
+                    case "TRACKING" -> {
+                        if (distanceKm != null && distanceKm > 0) {
+                            BigDecimal gpsPrice = new BigDecimal(distanceKm)
+                                    .multiply(GPS_RATE_PER_KM)
+                                    .setScale(2, RoundingMode.HALF_UP);
+                            if (gpsPrice.compareTo(MIN_GPS_PRICE) < 0) {
+                                gpsPrice = MIN_GPS_PRICE;
+                            }
+                            total = total.add(gpsPrice);
+                        } else {
+                            total = total.add(MIN_GPS_PRICE);
+                        }
+                    }
+                    case "CUSTOMS" -> {
+                        if (isInternationalRoute(departureStation, destinationStation)) {
+                            total = total.add(CUSTOMS_FIXED_PRICE);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            return total.setScale(2, RoundingMode.HALF_UP);
+        }
+
+        private static BigDecimal cargoCoefficient(String cargoType) {
+            if (cargoType == null) return BigDecimal.ONE;
+            String type = cargoType.toLowerCase();
+            if (type.contains("электроник") || type.contains("computer")) {
+                return new BigDecimal("2.0");
+            } else if (type.contains("оборуд") || type.contains("станок") || type.contains("machinery")) {
+                return new BigDecimal("1.8");
+            } else if (type.contains("хим") || type.contains("нефть") || type.contains("кислот")) {
+                return new BigDecimal("1.5");
+            } else if (type.contains("зерно") || type.contains("продукт") || type.contains("еда")) {
+                return new BigDecimal("1.3");
+            } else if (type.contains("метал") || type.contains("сталь") || type.contains("чугун")) {
+                return new BigDecimal("0.8");
+            } else if (type.contains("уголь") || type.contains("руда")) {
+                return new BigDecimal("0.7");
+            }
+            return BigDecimal.ONE;
+        }
+
+        private static boolean isInternationalRoute(String from, String to) {
+            if (from == null || to == null) return false;
+            List<String> borderStations = List.of(
+                    "Брест", "Гродно", "Смоленск", "Уссурийск", "Забайкальск",
+                    "Наушки", "Хасан", "Выборг", "Мурманск");
+            return borderStations.stream().anyMatch(station -> from.contains(station) || to.contains(station));
+        }
+    }
+}
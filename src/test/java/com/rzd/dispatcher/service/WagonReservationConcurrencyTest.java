@@ -0,0 +1,91 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тысячи заказов одновременно резервируют один вагон: выигрывает ровно один,
+ * двойного бронирования нет ни в Redis, ни в wagons / wagon_schedule.
+ */
+class WagonReservationConcurrencyTest extends IntegrationTest {
+
+    private static final int ORDERS = 2000;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private WagonSearchService wagonSearchService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentReservationsOfOneWagonHaveSingleWinner() throws Exception {
+        UUID wagonId = jdbcTemplate.queryForObject(
+                "INSERT INTO wagons (wagon_number, wagon_type, max_weight_kg, max_volume_m3, current_station, status) " +
+                "VALUES (?, 'крытый', 68000, 120, 'Москва', 'свободен') RETURNING id",
+                UUID.class, "T-" + UUID.randomUUID().toString().substring(0, 8));
+        List<UUID> orderIds = createOrders(ORDERS);
+
+        AtomicInteger winners = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(ORDERS);
+            for (UUID orderId : orderIds) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        if (wagonSearchService.reserveWagon(wagonId, orderId, 30)) {
+                            winners.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(failures).as("ошибки резервирования").isEmpty();
+        assertThat(winners.get()).as("успешные резервы").isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM wagon_schedule WHERE wagon_id = ? AND status = 'зарезервирован'",
+                Integer.class, wagonId)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM wagons WHERE id = ?", String.class, wagonId)).isEqualTo("забронирован");
+    }
+
+    private List<UUID> createOrders(int count) {
+        String email = "reservation-" + UUID.randomUUID() + "@test.local";
+        UUID userId = jdbcTemplate.queryForObject(
+                "INSERT INTO users (email, password_hash, company_name, inn) " +
+                "VALUES (?, 'x', 'Тест резервов', '7700000000') RETURNING id",
+                UUID.class, email);
+        return jdbcTemplate.queryForList(
+                "INSERT INTO orders (user_id, departure_station, destination_station, requested_wagon_type) " +
+                "SELECT ?, 'Москва', 'Казань', 'крытый' FROM generate_series(1, ?) RETURNING id",
+                UUID.class, userId, count);
+    }
+}
@@ -0,0 +1,150 @@
+package com.rzd.dispatcher.service;
+
+import com.rzd.dispatcher.model.dto.request.WagonSearchRequest;
+import com.rzd.dispatcher.model.entity.StationDistance;
+import com.rzd.dispatcher.model.entity.Wagon;
+import com.rzd.dispatcher.model.enums.WagonStatus;
+import com.rzd.dispatcher.model.enums.WagonType;
+import com.rzd.dispatcher.repository.WagonRepository;
+import com.rzd.dispatcher.repository.WagonScheduleRepository;
+import com.rzd.dispatcher.repository.WagonTariffRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+/**
+ * Поиск вагонов с соседними станциями делает постоянное число обращений к БД и Redis:
+ * кандидаты всех станций берутся одним запросом, резервы проверяются одним MGET на
+ * каждый набор. Одинаковое число вызовов на 10 и на 10 000 кандидатах означает, что
+ * в цикле по вагонам обращений нет.
+ */
+class WagonSearchRoundTripTest {
+
+    private static final String DEPARTURE = "Москва-Товарная";
+    private static final List<String> NEARBY = List.of("Москва-Сортировочная", "Люблино");
+    private static final int[] CANDIDATES = {10, 10_000};
+
+    record RoundTrips(int wagonRepository, int scheduleRepository, int redis) {
+    }
+
+    @ParameterizedTest(name = "дата={0}, индекс расписания={1}")
+    @CsvSource({"false, true", "true, true", "true, false"})
+    void roundTripsDoNotGrowWithCandidates(boolean dated, boolean scheduleIndexReady) {
+        List<RoundTrips> measured = new ArrayList<>();
+        for (int candidates : CANDIDATES) {
+            measured.add(search(candidates, dated, scheduleIndexReady));
+        }
+
+        // Станция отправления и соседние: по одному запросу вагонов и одному MGET
+        assertThat(measured).allSatisfy(roundTrips -> assertThat(roundTrips)
+                .as("обращения за поиск")
+                .isEqualTo(new RoundTrips(2, 0, 2)));
+    }
+
+    private static RoundTrips search(int candidates, boolean dated, boolean scheduleIndexReady) {
+        // На станции отправления меньше трёх вагонов, остальные - на соседних станциях
+        List<Wagon> onStation = new ArrayList<>();
+        List<Wagon> nearby = new ArrayList<>();
+        for (int i = 0; i < candidates; i++) {
+            if (i < 2) {
+                onStation.add(wagon(i, DEPARTURE));
+            } else {
+                nearby.add(wagon(i, NEARBY.get(i % NEARBY.size())));
+            }
+        }
+
+        WagonRepository wagonRepository = mock(WagonRepository.class);
+        when(wagonRepository.findAvailableWagons(anyString(), anyInt(), anyInt())).thenReturn(onStation);
+        when(wagonRepository.findAvailableWagonsWithoutConflicts(
+                anyString(), anyInt(), anyInt(), any(), any())).thenReturn(onStation);
+        when(wagonRepository.findAvailableWagonsAtStations(anyCollection(), anyInt(), anyInt())).thenReturn(nearby);
+        when(wagonRepository.findAvailableWagonsAtStationsWithoutConflicts(
+                anyCollection(), anyInt(), anyInt(), any(), any())).thenReturn(nearby);
+        WagonScheduleRepository scheduleRepository = mock(WagonScheduleRepository.class);
+
+        // Резервов нет: MGET возвращает null на каждый ключ
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(values.multiGet(anyList())).thenAnswer(invocation ->
+                Arrays.asList(new String[((Collection<?>) invocation.getArgument(0)).size()]));
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, String> redis = mock(RedisTemplate.class);
+        when(redis.opsForValue()).thenReturn(values);
+
+        ScheduleIntervalIndex scheduleIndex = new ScheduleIntervalIndex(null, new SimpleMeterRegistry());
+        if (scheduleIndexReady) {
+            scheduleIndex.replace(List.of());
+        }
+        StationGraph stationGraph = new StationGraph(null);
+        stationGraph.replace(List.of(
+                distance(DEPARTURE, NEARBY.get(0), 15),
+                distance(NEARBY.get(0), NEARBY.get(1), 20)));
+        TariffMatrix tariffMatrix = new TariffMatrix(mock(WagonTariffRepository.class), null,
+                new SimpleMeterRegistry());
+        tariffMatrix.replace(List.of(), "test");
+
+        WagonSearchService service = new WagonSearchService(wagonRepository, scheduleRepository, tariffMatrix,
+                stationGraph, redis, new WagonReservationEngine(redis), scheduleIndex, event -> {
+        });
+
+        WagonSearchRequest request = new WagonSearchRequest();
+        request.setDepartureStation(DEPARTURE);
+        request.setArrivalStation("Казань-Товарная");
+        request.setWeightKg(42000);
+        request.setVolumeM3(60);
+        request.setMaxDistanceKm(100);
+        request.setAllowAlternativeStations(true);
+        if (dated) {
+            request.setRequiredDepartureDate(LocalDateTime.now().plusDays(3));
+        }
+
+        assertThat(service.findAvailableWagons(request).getItems()).isNotEmpty();
+
+        return new RoundTrips(
+                mockingDetails(wagonRepository).getInvocations().size(),
+                mockingDetails(scheduleRepository).getInvocations().size(),
+                mockingDetails(values).getInvocations().size());
+    }
+
+    private static Wagon wagon(int index, String station) {
+        Wagon wagon = new Wagon();
+        wagon.setId(UUID.nameUUIDFromBytes(("wagon-" + index).getBytes()));
+        wagon.setWagonNumber(String.format("%08d", 50000000 + index));
+        wagon.setWagonType(WagonType.values()[index % WagonType.values().length]);
+        wagon.setMaxWeightKg(60000);
+        wagon.setMaxVolumeM3(90);
+        wagon.setCurrentStation(station);
+        wagon.setStatus(WagonStatus.свободен);
+        return wagon;
+    }
+
+    private static StationDistance distance(String from, String to, int km) {
+        StationDistance distance = new StationDistance();
+        distance.setId(UUID.randomUUID());
+        distance.setFromStation(from);
+        distance.setToStation(to);
+        distance.setDistanceKm(km);
+        distance.setUpdatedAt(OffsetDateTime.now());
+        return distance;
+    }
+}
@@ -0,0 +1,23 @@
+package com.rzd.dispatcher.support;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Полный контекст приложения на базе TestDatabase и Redis TestRedis. Схему уже
+ * мигрировал TestDatabase, Flyway приложения видит ее актуальной.
+ */
+@SpringBootTest
+public abstract class IntegrationTest {
+
+    @DynamicPropertySource
+    static void infrastructure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", TestDatabase::url);
+        registry.add("spring.datasource.username", TestDatabase::username);
+        registry.add("spring.datasource.password", TestDatabase::password);
+        registry.add("spring.data.redis.host", TestRedis::host);
+        registry.add("spring.data.redis.port", TestRedis::port);
+        registry.add("spring.jta.narayana.log-dir", () -> "build/narayana-test-logs");
+    }
+}
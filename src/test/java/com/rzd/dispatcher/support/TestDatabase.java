@@ -0,0 +1,89 @@
+package com.rzd.dispatcher.support;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.MountableFile;
+
+import javax.sql.DataSource;
+
+/**
+ * Postgres для интеграционных тестов: схема версии 1 из database/*.sql и миграции Flyway
+ * с теми же настройками, что у приложения. По умолчанию база поднимается в контейнере
+ * (нужен Docker); переменная TEST_DATABASE_URL подключает уже созданную базу со схемой
+ * версии 1 (TEST_DATABASE_USERNAME / TEST_DATABASE_PASSWORD, по умолчанию postgres).
+ * База одна на все тесты, поэтому тесты создают свои строки и не рассчитывают на пустые таблицы.
+ */
+public final class TestDatabase {
+
+    private static final String IMAGE = "postgres:17-alpine";
+
+    private static String url;
+    private static String username;
+    private static String password;
+    private static HikariDataSource dataSource;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized DataSource dataSource() {
+        if (dataSource == null) {
+            start();
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(url);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(32);
+            dataSource = new HikariDataSource(config);
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .locations("classpath:db/migration")
+                    .baselineOnMigrate(true)
+                    .baselineVersion("1")
+                    .load()
+                    .migrate();
+        }
+        return dataSource;
+    }
+
+    public static String url() {
+        dataSource();
+        return url;
+    }
+
+    public static String username() {
+        dataSource();
+        return username;
+    }
+
+    public static String password() {
+        dataSource();
+        return password;
+    }
+
+    private static void start() {
+        String externalUrl = System.getenv("TEST_DATABASE_URL");
+        if (externalUrl != null && !externalUrl.isBlank()) {
+            url = externalUrl;
+            username = System.getenv().getOrDefault("TEST_DATABASE_USERNAME", "postgres");
+            password = System.getenv().getOrDefault("TEST_DATABASE_PASSWORD", "postgres");
+            return;
+        }
+
+        // Дамп с COPY FROM stdin выполняет psql образа при первом запуске (docker-entrypoint-initdb.d).
+        // Контейнер живет до конца JVM тестов, его останавливает Testcontainers
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(IMAGE)
+                .withDatabaseName("gruzi_vezi")
+                .withUsername("postgres")
+                .withPassword("postgres")
+                .withCopyFileToContainer(MountableFile.forHostPath("database/gruzi_vezi.sql"),
+                        "/docker-entrypoint-initdb.d/01_gruzi_vezi.sql")
+                .withCopyFileToContainer(MountableFile.forHostPath("database/update_for_db.sql"),
+                        "/docker-entrypoint-initdb.d/02_update_for_db.sql");
+        container.start();
+        url = container.getJdbcUrl();
+        username = container.getUsername();
+        password = container.getPassword();
+    }
+}
@@ -0,0 +1,46 @@
+package com.rzd.dispatcher.support;
+
+import org.testcontainers.containers.GenericContainer;
+
+/**
+ * Redis для интеграционных тестов: контейнер либо внешний сервер из TEST_REDIS_HOST
+ * (и TEST_REDIS_PORT, по умолчанию 6379).
+ */
+public final class TestRedis {
+
+    private static final String IMAGE = "redis:7-alpine";
+    private static final int PORT = 6379;
+
+    private static String host;
+    private static int port;
+
+    private TestRedis() {
+    }
+
+    public static synchronized String host() {
+        start();
+        return host;
+    }
+
+    public static synchronized int port() {
+        start();
+        return port;
+    }
+
+    private static void start() {
+        if (host != null) {
+            return;
+        }
+        String externalHost = System.getenv("TEST_REDIS_HOST");
+        if (externalHost != null && !externalHost.isBlank()) {
+            host = externalHost;
+            port = Integer.parseInt(System.getenv().getOrDefault("TEST_REDIS_PORT", String.valueOf(PORT)));
+            return;
+        }
+
+        GenericContainer<?> container = new GenericContainer<>(IMAGE).withExposedPorts(PORT);
+        container.start();
+        host = container.getHost();
+        port = container.getMappedPort(PORT);
+    }
+}